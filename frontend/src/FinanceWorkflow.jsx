@@ -1,5 +1,6 @@
 import React, { useState, useRef } from 'react';
 import { useAI } from './AIContext';
+import { streamChat, useLatestStream } from './streamChat';
 
 function FinanceWorkflow() {
     const [data, setData] = useState(null);
@@ -11,6 +12,7 @@ function FinanceWorkflow() {
     const [balance, setBalance] = useState(1000); // Default balance for forecast
     const fileInputRef = useRef(null);
     const { startTask, endTask } = useAI();
+    const analysisStream = useLatestStream();
 
     const handleFileUpload = async (e) => {
         const file = e.target.files[0];
@@ -20,7 +22,8 @@ function FinanceWorkflow() {
         formData.append('file', file);
 
         try {
-            const res = await fetch('/api/finance/upload', {
+            // Descriptions no rule matches are categorized by the model, in batches
+            const res = await fetch('/api/finance/upload?aiCategorize=true', {
                 method: 'POST',
                 body: formData
             });
@@ -87,22 +90,21 @@ function FinanceWorkflow() {
 
     const RequestAnalysis = async () => {
         if (!data || !data.totals) return;
+        const signal = analysisStream.start();
         setIsAnalyzing(true);
         startTask("Analyzing Spending Habits", "Llama-3-Finance");
         try {
-            const res = await fetch('/api/finance/analyze', {
-                method: 'POST',
-                headers: { 'Content-Type': 'application/json' },
-                body: JSON.stringify({ totals: data.totals })
-            });
-            const result = await res.json();
-            setAnalysis(result.analysis);
+            await streamChat('/api/finance/analyze/stream', { totals: data.totals }, setAnalysis, signal);
         } catch (e) {
+            if (signal.aborted) return;
             console.error(e);
             setAnalysis("Failed to get analysis.");
         } finally {
-            setIsAnalyzing(false);
-            endTask();
+            // A newer analysis owns the spinner and the task
+            if (analysisStream.isLatest(signal)) {
+                setIsAnalyzing(false);
+                endTask();
+            }
         }
     };
 
@@ -161,6 +163,10 @@ function FinanceWorkflow() {
                         <button className="btn-icon" onClick={() => setData(null)} title="Clear" style={{ marginLeft: 'auto' }}>🗑️</button>
                     </div>
 
+                    {data.aiCategorized === false && (
+                        <p style={{ margin: 0, fontSize: '0.85rem', opacity: 0.7 }}>⚠️ {data.aiMessage || 'Some transactions were not categorized by AI.'}</p>
+                    )}
+
                     {/* Views */}
                     {view === 'transactions' && (
                         <div style={{ display: 'flex', gap: '20px', flex: 1, minHeight: 0 }}>
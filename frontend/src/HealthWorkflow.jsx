@@ -1,5 +1,6 @@
 import React, { useState, useRef, useEffect } from 'react';
 import { useAI } from './AIContext';
+import { streamChat, useLatestStream } from './streamChat';
 
 function HealthWorkflow() {
     const [isLocked, setIsLocked] = useState(true);
@@ -10,6 +11,7 @@ function HealthWorkflow() {
     const [chatResponse, setChatResponse] = useState('');
     const [mode, setMode] = useState('journal'); // 'journal' or 'chat'
     const { startTask, endTask } = useAI();
+    const chatStream = useLatestStream();
 
     const handleUnlock = async () => {
         try {
@@ -50,20 +52,16 @@ function HealthWorkflow() {
 
     const handleChat = async () => {
         if (!chatMessage.trim()) return;
+        const signal = chatStream.start();
         setChatResponse("Thinking...");
         startTask("Therapist Thinking...", "Llama-3-Health");
         try {
-            const res = await fetch('/api/health/chat', {
-                method: 'POST',
-                headers: { 'Content-Type': 'application/json' },
-                body: JSON.stringify({ message: chatMessage })
-            });
-            const data = await res.json();
-            setChatResponse(data.response);
+            await streamChat('/api/health/chat/stream', { message: chatMessage }, setChatResponse, signal);
         } catch (e) {
+            if (signal.aborted) return;
             setChatResponse("Error connecting to therapist.");
         } finally {
-            endTask();
+            if (chatStream.isLatest(signal)) endTask();
         }
     };
 
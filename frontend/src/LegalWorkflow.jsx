@@ -1,6 +1,7 @@
 import React, { useState, useEffect, useRef } from 'react';
 import UpgradeModal from './UpgradeModal';
 import { useAI } from './AIContext';
+import { streamChat, useLatestStream } from './streamChat';
 
 function LegalWorkflow() {
     const [messages, setMessages] = useState([
@@ -26,6 +27,7 @@ function LegalWorkflow() {
 
         const formData = new FormData();
         formData.append('file', file);
+        formData.append('namespace', 'legal');
 
         setMessages(prev => [...prev, { role: 'assistant', content: `Indexing ${file.name}...` }]);
         startTask(`Indexing ${file.name}`, "OCR-Engine");
@@ -36,20 +38,49 @@ function LegalWorkflow() {
                 body: formData
             });
             const data = await res.json();
-            if (data.status === 'success') {
-                setUploadedFile(file.name);
-                setDocMetadata(data.metadata);
-                if (data.metadata.extracted_text) {
-                    setExtractedText(data.metadata.extracted_text);
+            if (data.status === 'duplicate') {
+                // Already ingested: load its text, kept for as long as the document, like a fresh upload's
+                const text = await fetch(data.textUrl);
+                if (!text.ok) {
+                    setMessages(prev => [...prev, { role: 'assistant', content: `${data.message}, but its text could not be loaded.` }]);
+                    endTask();
+                    return;
                 }
-                setMessages(prev => [...prev, { role: 'assistant', content: `Document processed! I've read ${data.metadata.page_count} pages.` }]);
-            } else {
+                setExtractedText(await text.text());
+                setUploadedFile(file.name);
+                setDocMetadata({ document_id: data.documentId, namespace: data.namespace, filename: file.name, page_count: data.pageCount });
+                setMessages(prev => [...prev, { role: 'assistant', content: `${data.message} (${data.pageCount} pages), it is already searchable.` }]);
+                endTask();
+                return;
+            }
+            if (data.status !== 'accepted') {
                 setMessages(prev => [...prev, { role: 'assistant', content: `Failed to index document: ${data.message}` }]);
+                endTask();
+                return;
             }
+            // Progress is pushed over Server-Sent Events until the job finishes
+            const events = new EventSource(`/api/docs/events?jobIds=${data.jobId}`);
+            events.addEventListener('status', async (e) => {
+                const job = JSON.parse(e.data);
+                if (job.status === 'COMPLETED') {
+                    events.close();
+                    setUploadedFile(file.name);
+                    setDocMetadata(job.payload);
+                    const text = await fetch(job.payload.text_url);
+                    if (text.ok) {
+                        setExtractedText(await text.text());
+                    }
+                    setMessages(prev => [...prev, { role: 'assistant', content: `Document processed! I've read ${job.payload.page_count} pages.` }]);
+                    endTask();
+                } else if (job.status === 'ERROR' || job.status === 'UNKNOWN') {
+                    events.close();
+                    setMessages(prev => [...prev, { role: 'assistant', content: `Failed to index document: ${job.message || 'job was lost'}` }]);
+                    endTask();
+                }
+            });
         } catch (err) {
             console.error(err);
             setMessages(prev => [...prev, { role: 'assistant', content: 'Error uploading document.' }]);
-        } finally {
             endTask();
         }
     };
@@ -70,20 +101,32 @@ function LegalWorkflow() {
         } finally { endTask(); }
     };
 
+    // Risk analyses and chat answers both stream into the last message, so a
+    // new one of either kind aborts the one in progress
+    const answerStream = useLatestStream();
+
+    // The answer being streamed is the last message
+    const replaceLastMessage = (content) => {
+        setMessages(prev => [...prev.slice(0, -1), { role: 'assistant', content }]);
+    };
+
     const handleAnalyzeRisks = async () => {
         if (!extractedText) return alert("Upload a document first.");
+        const signal = answerStream.start();
         startTask("Analyzing Legal Risks...", "Mistral-Legal");
         try {
-            const res = await fetch('/api/legal/risks', {
-                method: 'POST',
-                headers: { 'Content-Type': 'application/json' },
-                body: JSON.stringify({ text: extractedText })
-            });
-            const data = await res.json();
-            setMessages(prev => [...prev, { role: 'assistant', content: `**⚠️ Risk Assessment (ELI5):**\n${data.risks}` }]);
+            const heading = '**⚠️ Risk Assessment (ELI5):**\n';
+            setMessages(prev => [...prev, { role: 'assistant', content: heading }]);
+            await streamChat('/api/legal/risks/stream', { text: extractedText },
+                text => replaceLastMessage(heading + text), signal);
         } catch (e) {
-            console.error(e);
-        } finally { endTask(); }
+            if (!signal.aborted) console.error(e);
+        } finally {
+            if (answerStream.isLatest(signal)) {
+                setIsLoading(false); // a chat answer this replaced no longer loads
+                endTask();
+            }
+        }
     };
 
     const handleAutoFill = async () => {
@@ -133,24 +176,24 @@ function LegalWorkflow() {
         const userMessage = { role: 'user', content: input };
         setMessages(prev => [...prev, userMessage]);
         setInput('');
+        const signal = answerStream.start();
         setIsLoading(true);
         startTask("Analyzing Query...", currentModel === 'Lite' ? "Qwen-Lite" : "Mistral-7B");
 
         try {
-            const response = await fetch('/api/chat', {
-                method: 'POST',
-                headers: { 'Content-Type': 'application/json' },
-                body: JSON.stringify({ message: userMessage.content })
-            });
-
-            const data = await response.json();
-            setMessages(prev => [...prev, { role: 'assistant', content: data.response }]);
+            setMessages(prev => [...prev, { role: 'assistant', content: '' }]);
+            // Only search documents uploaded in this workflow
+            await streamChat('/api/chat/stream', { message: userMessage.content, namespace: 'legal' },
+                text => replaceLastMessage(text), signal);
         } catch (error) {
+            if (signal.aborted) return;
             console.error('Error sending message:', error);
-            setMessages(prev => [...prev, { role: 'assistant', content: 'Connection error.' }]);
+            replaceLastMessage('Connection error.');
         } finally {
-            setIsLoading(false);
-            endTask();
+            if (answerStream.isLatest(signal)) {
+                setIsLoading(false);
+                endTask();
+            }
         }
     };
 
@@ -0,0 +1,67 @@
+import { useCallback, useEffect, useRef } from 'react';
+
+// POSTs to one of the /stream endpoints and reads the Server-Sent Events
+// (start, token, done, error) as they arrive. EventSource only does GET,
+// hence fetch + a stream reader. onText gets the whole answer so far.
+// Aborting the signal closes the connection, which stops generation.
+export async function streamChat(url, body, onText, signal) {
+    const res = await fetch(url, {
+        method: 'POST',
+        // JSON too, for errors such as 429 when the model is saturated
+        headers: { 'Content-Type': 'application/json', 'Accept': 'text/event-stream, application/json' },
+        body: JSON.stringify(body),
+        signal
+    });
+    if (!res.ok || !res.body) throw new Error(`HTTP ${res.status}`);
+
+    const reader = res.body.getReader();
+    const decoder = new TextDecoder();
+    let buffer = '';
+    let text = '';
+    let done = null;
+    for (;;) {
+        const { value, done: finished } = await reader.read();
+        if (finished) break;
+        buffer += decoder.decode(value, { stream: true });
+        // Events are separated by a blank line
+        let end;
+        while ((end = buffer.indexOf('\n\n')) >= 0) {
+            const event = parseEvent(buffer.slice(0, end));
+            buffer = buffer.slice(end + 2);
+            if (event.name === 'token') {
+                text += event.data.text;
+                onText(text);
+            } else if (event.name === 'done') {
+                done = event.data;
+            } else if (event.name === 'error') {
+                throw new Error(event.data.message);
+            }
+        }
+    }
+    return { text, ...done };
+}
+
+// One stream at a time per component: starting a stream aborts the one
+// before it, and so does unmounting. isLatest(signal) tells a finished or
+// aborted stream whether it still owns the loading state, or was replaced.
+export function useLatestStream() {
+    const controller = useRef(null);
+    useEffect(() => () => controller.current?.abort(), []);
+    const start = useCallback(() => {
+        controller.current?.abort();
+        controller.current = new AbortController();
+        return controller.current.signal;
+    }, []);
+    const isLatest = useCallback(signal => controller.current?.signal === signal, []);
+    return { start, isLatest };
+}
+
+function parseEvent(block) {
+    let name = 'message';
+    const data = [];
+    for (const line of block.split('\n')) {
+        if (line.startsWith('event:')) name = line.slice(6).trim();
+        else if (line.startsWith('data:')) data.push(line.slice(5).replace(/^ /, ''));
+    }
+    return { name, data: data.length ? JSON.parse(data.join('\n')) : null };
+}
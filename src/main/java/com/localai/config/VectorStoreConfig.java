@@ -1,29 +1,76 @@
 package com.localai.config;
 
-import org.springframework.ai.vectorstore.SimpleVectorStore;
+import com.localai.vectorstore.MappedVectorStore;
+import com.localai.vectorstore.VectorStoreOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 @Configuration
 public class VectorStoreConfig {
 
+    private static final Logger logger = LoggerFactory.getLogger(VectorStoreConfig.class);
+
+    // Snapshot written by the old SimpleVectorStore, imported once if present.
+    private static final String LEGACY_STORE_FILE = "vectorstore.json";
+
     @Bean
-    public SimpleVectorStore simpleVectorStore(EmbeddingClient embeddingClient) {
-        SimpleVectorStore simpleVectorStore = new SimpleVectorStore(embeddingClient);
+    public VectorStoreOptions vectorStoreOptions(
+            @Value("${app.vectorstore.index:hnsw}") String index,
+            @Value("${app.vectorstore.hnsw.m:16}") int m,
+            @Value("${app.vectorstore.hnsw.ef-construction:100}") int efConstruction,
+            @Value("${app.vectorstore.hnsw.ef-search:64}") int efSearch,
+            @Value("${app.vectorstore.quantization:none}") String quantization,
+            @Value("${app.vectorstore.rerank-factor:4}") int rerankFactor,
+            @Value("${app.vectorstore.compaction.interval-seconds:60}") long compactionInterval,
+            @Value("${app.vectorstore.compaction.max-segment-records:50000}") int compactionMaxRecords,
+            @Value("${app.vectorstore.compaction.reclaim-deleted-ratio:0.2}") double reclaimRatio,
+            @Value("${app.vectorstore.keyword-index:true}") boolean keywordIndex,
+            @Value("${app.vectorstore.scan.parallel-threshold:50000}") int scanParallelThreshold,
+            @Value("${app.vectorstore.scan.threads:0}") int scanThreads,
+            @Value("${app.vectorstore.load.async:true}") boolean asyncLoad,
+            @Value("${app.vectorstore.load.wait-ms:5000}") long loadWaitMillis) {
+        VectorStoreOptions options = new VectorStoreOptions();
+        options.setIndex(index);
+        options.setHnswM(m);
+        options.setHnswEfConstruction(efConstruction);
+        options.setHnswEfSearch(efSearch);
+        options.setQuantization(quantization);
+        options.setRerankFactor(rerankFactor);
+        options.setCompactionIntervalSeconds(compactionInterval);
+        options.setCompactionMaxSegmentRecords(compactionMaxRecords);
+        options.setCompactionReclaimRatio(reclaimRatio);
+        options.setKeywordIndex(keywordIndex);
+        options.setScanParallelThreshold(scanParallelThreshold);
+        options.setScanThreads(scanThreads);
+        options.setAsyncLoad(asyncLoad);
+        options.setLoadWaitMillis(loadWaitMillis);
+        return options;
+    }
 
-        // Define where the vector store will be saved.
-        // For a local app, a fixed location or relative to run dir is fine.
-        File vectorStoreFile = new File("vectorstore.json");
+    @Bean
+    public MappedVectorStore mappedVectorStore(EmbeddingClient embeddingClient, VectorStoreOptions options,
+            @Value("${app.vectorstore.path:vectorstore}") String storePath) throws IOException {
+        Path directory = Paths.get(storePath);
+        MappedVectorStore vectorStore = new MappedVectorStore(directory, embeddingClient, options);
 
-        if (vectorStoreFile.exists()) {
-            simpleVectorStore.load(vectorStoreFile);
+        File legacyFile = new File(LEGACY_STORE_FILE);
+        if (legacyFile.exists() && vectorStore.size() == 0) {
+            int imported = vectorStore.importSimpleVectorStore(legacyFile);
+            File migrated = new File(LEGACY_STORE_FILE + ".migrated");
+            if (legacyFile.renameTo(migrated)) {
+                logger.info("Imported {} chunks from {} (kept as {}).", imported, legacyFile, migrated);
+            }
         }
 
-        return simpleVectorStore;
+        return vectorStore;
     }
 }
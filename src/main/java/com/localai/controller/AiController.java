@@ -1,20 +1,35 @@
 package com.localai.controller;
 
 import com.localai.service.ModelManagerService;
+import com.localai.exception.IngestionQueueFullException;
+import com.localai.exception.UploadException;
+import com.localai.service.BulkIngestionService;
+import com.localai.service.ChatStreamService;
+import com.localai.service.ClassificationBatcher;
 import com.localai.service.DocumentService;
+import com.localai.service.InferenceScheduler;
+import com.localai.service.IngestionScheduler;
+import com.localai.service.JobEventService;
 import com.localai.service.SettingsService;
 import com.localai.service.PrivacyService;
-import org.springframework.ai.chat.ChatClient;
+import com.localai.service.ResponseCache;
+import com.localai.service.RetrievalService;
+import com.localai.vectorstore.VectorStoreLoadingException;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.ollama.api.OllamaOptions;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
-import org.springframework.ai.vectorstore.VectorStore;
-import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -22,49 +37,224 @@ import java.util.Map;
 @RequestMapping("/api")
 public class AiController {
 
-    private final ChatClient chatClient;
+    private static final int MAX_CLASSIFY_TEXTS = 5000;
+
+    private final InferenceScheduler inferenceScheduler;
     private final ModelManagerService modelManager;
     private final DocumentService documentService;
-    private final VectorStore vectorStore;
     private final SettingsService settingsService;
     private final PrivacyService privacyService;
 
     private final com.localai.service.ProcessingStatusService statusService;
+    private final IngestionScheduler ingestionScheduler;
+    private final JobEventService jobEventService;
+    private final BulkIngestionService bulkIngestionService;
+    private final RetrievalService retrievalService;
+    private final ChatStreamService chatStreamService;
+    private final ResponseCache responseCache;
+    private final ClassificationBatcher classificationBatcher;
 
     // Added statusService to constructor
-    public AiController(ChatClient chatClient, ModelManagerService modelManager, DocumentService documentService,
-            VectorStore vectorStore, SettingsService settingsService, PrivacyService privacyService,
-            com.localai.service.ProcessingStatusService statusService) {
-        this.chatClient = chatClient;
+    public AiController(InferenceScheduler inferenceScheduler, ModelManagerService modelManager,
+            DocumentService documentService, SettingsService settingsService,
+            PrivacyService privacyService, com.localai.service.ProcessingStatusService statusService,
+            IngestionScheduler ingestionScheduler,
+            JobEventService jobEventService, BulkIngestionService bulkIngestionService,
+            RetrievalService retrievalService, ChatStreamService chatStreamService, ResponseCache responseCache,
+            ClassificationBatcher classificationBatcher) {
+        this.inferenceScheduler = inferenceScheduler;
         this.modelManager = modelManager;
         this.documentService = documentService;
-        this.vectorStore = vectorStore;
         this.settingsService = settingsService;
         this.privacyService = privacyService;
         this.statusService = statusService;
+        this.ingestionScheduler = ingestionScheduler;
+        this.jobEventService = jobEventService;
+        this.bulkIngestionService = bulkIngestionService;
+        this.retrievalService = retrievalService;
+        this.chatStreamService = chatStreamService;
+        this.responseCache = responseCache;
+        this.classificationBatcher = classificationBatcher;
     }
 
     @PostMapping("/docs/upload")
-    public Map<String, Object> uploadDocument(@RequestParam("file") MultipartFile file) {
+    public Map<String, Object> uploadDocument(@RequestParam("file") MultipartFile file,
+            @RequestParam(value = "force", defaultValue = "false") boolean force,
+            @RequestParam(value = "namespace", required = false) String namespace) {
         try {
             // New Async Flow
-            String jobId = documentService.initProcess(file);
-            return Map.of(
-                    "status", "accepted",
-                    "message", "Document ingestion started",
-                    "jobId", jobId);
+            return uploadResponse(documentService.initProcess(file, force, namespace), ingestionScheduler);
+        } catch (IngestionQueueFullException | UploadException e) {
+            throw e; // 429 + Retry-After, or 409 while the document is being deleted, via GlobalExceptionHandler
         } catch (Throwable e) {
             return Map.of("status", "error", "message", "Failed to start document ingestion: " + e.getMessage());
         }
     }
 
+    @PostMapping("/docs/bulk")
+    public Map<String, Object> bulkUpload(@RequestParam("files") List<MultipartFile> files,
+            @RequestParam(value = "force", defaultValue = "false") boolean force,
+            @RequestParam(value = "namespace", required = false) String namespace) {
+        try {
+            return bulkResponse(bulkIngestionService.submitUploads(files, force, namespace));
+        } catch (IngestionQueueFullException e) {
+            throw e;
+        } catch (Throwable e) {
+            return Map.of("status", "error", "message", "Failed to start bulk ingestion: " + e.getMessage());
+        }
+    }
+
+    // Ingests the PDFs in a directory on this machine, in place; only under app.ingestion.bulk.allowed-roots
+    @PostMapping("/docs/bulk/directory")
+    public Map<String, Object> bulkDirectory(@RequestBody Map<String, Object> request) {
+        try {
+            return bulkResponse(bulkIngestionService.submitDirectory((String) request.get("path"),
+                    Boolean.TRUE.equals(request.get("recursive")), Boolean.TRUE.equals(request.get("force")),
+                    (String) request.get("namespace")));
+        } catch (IngestionQueueFullException | UploadException e) {
+            throw e; // 429, or 400/403 for a path outside the allowed roots
+        } catch (Throwable e) {
+            return Map.of("status", "error", "message", "Failed to start bulk ingestion: " + e.getMessage());
+        }
+    }
+
+    private Map<String, Object> bulkResponse(BulkIngestionService.BulkJob job) {
+        return Map.of(
+                "status", "accepted",
+                "message", "Bulk ingestion of " + job.fileCount() + " files queued",
+                "jobId", job.jobId(),
+                "fileCount", job.fileCount(),
+                "queuePosition", ingestionScheduler.queuePosition(job.jobId()));
+    }
+
+    // Shared with the resumable upload API
+    static Map<String, Object> uploadResponse(DocumentService.Upload upload, IngestionScheduler ingestionScheduler) {
+        if (upload.existing() != null) {
+            // Same content ingested before: nothing to do
+            return Map.of(
+                    "status", "duplicate",
+                    "message", "Document already ingested as " + upload.existing().filename(),
+                    "documentId", upload.documentId(),
+                    "namespace", upload.existing().namespace(),
+                    "pageCount", upload.existing().pageCount(),
+                    "chunkCount", upload.existing().chunkCount(),
+                    "textUrl", "/api/docs/" + upload.documentId() + "/text");
+        }
+        return Map.of(
+                "status", "accepted",
+                "message", upload.duplicate() ? "Identical document is already being ingested"
+                        : "Document ingestion queued",
+                "jobId", upload.jobId(),
+                "documentId", upload.documentId(),
+                "queuePosition", ingestionScheduler.queuePosition(upload.jobId()));
+    }
+
     @GetMapping("/docs/status/{jobId}")
     public com.localai.service.ProcessingStatusService.JobStatus getJobStatus(@PathVariable String jobId) {
-        return statusService.getStatus(jobId);
+        com.localai.service.ProcessingStatusService.JobStatus status = statusService.getStatus(jobId);
+        if (status != null && "QUEUED".equals(status.status)) {
+            status.queuePosition = ingestionScheduler.queuePosition(jobId);
+        }
+        return status;
+    }
+
+    // Server-Sent Events for the given jobs (repeat the parameter or comma-separate), or all jobs
+    @GetMapping(value = "/docs/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamJobEvents(@RequestParam(value = "jobIds", required = false) List<String> jobIds) {
+        return jobEventService.subscribe(jobIds != null ? jobIds : List.of());
+    }
+
+    @GetMapping("/docs/text/{jobId}")
+    public ResponseEntity<Resource> getExtractedText(@PathVariable String jobId) {
+        java.nio.file.Path text = statusService.getTextFile(jobId);
+        if (text == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(new MediaType(MediaType.TEXT_PLAIN, java.nio.charset.StandardCharsets.UTF_8))
+                .body(new FileSystemResource(text));
+    }
+
+    // Text of an ingested document, for as long as it is registered; the job text above expires with the job
+    @GetMapping("/docs/{documentId}/text")
+    public ResponseEntity<String> getDocumentText(@PathVariable String documentId) {
+        String text = documentService.documentText(documentId);
+        if (text == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(new MediaType(MediaType.TEXT_PLAIN, java.nio.charset.StandardCharsets.UTF_8))
+                .body(text);
+    }
+
+    @GetMapping("/docs")
+    public Map<String, Object> listDocuments(@RequestParam(value = "namespace", required = false) String namespace) {
+        return Map.of("documents", documentService.listDocuments(namespace));
+    }
+
+    // Removes the document and its chunks from the store and the registry
+    @DeleteMapping("/docs/{documentId}")
+    public ResponseEntity<Map<String, Object>> deleteDocument(@PathVariable String documentId) throws IOException {
+        try {
+            if (!documentService.deleteDocument(documentId)) {
+                return ResponseEntity.notFound().build();
+            }
+        } catch (VectorStoreLoadingException e) {
+            throw e; // 503 via GlobalExceptionHandler
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("status", "error", "message", e.getMessage()));
+        }
+        return ResponseEntity.ok(Map.of("status", "success", "message", "Document " + documentId + " deleted"));
+    }
+
+    @GetMapping("/docs/queue")
+    public Map<String, Object> getIngestionQueue() {
+        return ingestionScheduler.stats();
     }
 
     @PostMapping("/chat")
     public Map<String, String> chat(@RequestBody Map<String, String> request) {
+        ChatCall call = prepareChat(request);
+        String response = inferenceScheduler.call(call.prompt(), InferenceScheduler.Lane.INTERACTIVE)
+                .getResult().getOutput().getContent();
+        return Map.of("response", response, "model", call.model());
+    }
+
+    // Same as /chat, but the answer arrives as SSE token events while it is generated
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(@RequestBody Map<String, String> request) {
+        ChatCall call = prepareChat(request);
+        return chatStreamService.stream(call.prompt(), call.model(), InferenceScheduler.Lane.INTERACTIVE);
+    }
+
+    // LLM admission: running and queued requests per model, waits per priority lane
+    @GetMapping("/chat/queue")
+    public Map<String, Object> getInferenceQueue() {
+        return inferenceScheduler.stats();
+    }
+
+    // Hits, misses and inference time saved by the cache of deterministic answers
+    @GetMapping("/chat/cache")
+    public Map<String, Object> getResponseCacheStats() {
+        return responseCache.stats();
+    }
+
+    @DeleteMapping("/chat/cache")
+    public Map<String, Object> clearResponseCache() {
+        responseCache.clear();
+        return responseCache.stats();
+    }
+
+    @GetMapping("/chat/stream/stats")
+    public Map<String, Object> getChatStreamStats() {
+        return chatStreamService.stats();
+    }
+
+    private record ChatCall(Prompt prompt, String model) {
+    }
+
+    // Redacts the message, retrieves context and builds the prompt for the current model
+    private ChatCall prepareChat(Map<String, String> request) {
         String userMessage = request.get("message");
 
         // --- Privacy Layer ---
@@ -87,9 +277,11 @@ public class AiController {
         String modelName = modelManager.getCurrentModel();
 
         // RAG: Retrieval Augmented Generation
-        // 1. Search for relevant context
-        List<Document> similarDocuments = vectorStore.similaritySearch(
-                SearchRequest.query(userMessage).withTopK(2));
+        // 1. Search for relevant context (hybrid BM25 + vector unless "retrieval" says otherwise),
+        // limited to one namespace and/or document when the chat asks for it
+        List<Document> similarDocuments = retrievalService.retrieve(userMessage, 2,
+                RetrievalService.parseMode(request.get("retrieval")),
+                RetrievalService.scope(request.get("namespace"), request.get("documentId")));
 
         StringBuilder context = new StringBuilder();
         if (!similarDocuments.isEmpty()) {
@@ -126,22 +318,30 @@ public class AiController {
             // options.withNumGpu(perfConfig.getGpuLayers());
         }
 
-        Prompt prompt = new Prompt(List.of(systemMessage, userMsg), options);
-
-        String response = chatClient.call(prompt).getResult().getOutput().getContent();
-        return Map.of("response", response, "model", modelName);
+        return new ChatCall(new Prompt(List.of(systemMessage, userMsg), options), modelName);
     }
 
+    // Concurrent calls are answered together, many texts per inference
     @PostMapping("/chat/classify")
     public Map<String, String> classify(@RequestBody Map<String, String> request) {
-        String text = request.get("text");
-        String promptText = "Classify the following text into a simple category (e.g. Food, Transport, Health, Work, Other). Respond with ONLY the category name.\nText: "
-                + text;
+        return Map.of("category", classificationBatcher.classify(request.get("text")));
+    }
 
-        Prompt prompt = new Prompt(promptText, OllamaOptions.create().withModel(ModelManagerService.LITE_MODEL));
-        String category = chatClient.call(prompt).getResult().getOutput().getContent();
+    // {"texts": [...]} -> {"categories": [...]} in the same order
+    @PostMapping("/chat/classify/batch")
+    public ResponseEntity<Map<String, Object>> classifyBatch(@RequestBody Map<String, List<String>> request) {
+        List<String> texts = request.get("texts");
+        if (texts == null || texts.size() > MAX_CLASSIFY_TEXTS) {
+            return ResponseEntity.badRequest().body(Map.of("status", "error",
+                    "message", "Send 'texts' with at most " + MAX_CLASSIFY_TEXTS + " entries"));
+        }
+        List<String> categories = classificationBatcher.classifyAll(texts);
+        return ResponseEntity.ok(Map.of("categories", categories, "count", categories.size()));
+    }
 
-        return Map.of("category", category.trim());
+    @GetMapping("/chat/classify/stats")
+    public Map<String, Object> getClassificationStats() {
+        return classificationBatcher.stats();
     }
 
     @PostMapping("/chat/complexity")
@@ -179,7 +379,8 @@ public class AiController {
         com.localai.model.settings.AppSettings settings = settingsService.getSettings();
         com.localai.model.settings.PerfConfig perfConfig = settings.getPerfConfig();
 
-        OllamaOptions options = OllamaOptions.create().withModel(ModelManagerService.LITE_MODEL);
+        // Deterministic, so the same request is answered from the response cache
+        OllamaOptions options = OllamaOptions.create().withModel(ModelManagerService.LITE_MODEL).withTemperature(0f);
 
         if (perfConfig != null) {
             // Use same settings but maybe lighter context for classification?
@@ -190,7 +391,7 @@ public class AiController {
         }
 
         Prompt prompt = new Prompt(promptText, options);
-        String response = chatClient.call(prompt).getResult().getOutput().getContent().trim().toUpperCase();
+        String response = responseCache.call(prompt, InferenceScheduler.Lane.INTERACTIVE).trim().toUpperCase();
 
         boolean isComplex = response.contains("YES");
         return Map.of("isComplex", isComplex, "reason", "AI Decision");
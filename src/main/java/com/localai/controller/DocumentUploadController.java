@@ -0,0 +1,73 @@
+package com.localai.controller;
+
+import com.localai.service.ChunkedUploadService;
+import com.localai.service.IngestionScheduler;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Resumable uploads for large documents:
+ * POST /api/docs/uploads {filename, size, namespace?}, then PUT /api/docs/uploads/{id}?offset=N
+ * with the raw part bytes and an X-Part-SHA256 header, then
+ * POST /api/docs/uploads/{id}/complete. GET /api/docs/uploads/{id} shows
+ * which byte ranges have arrived, so a client can resume after a dropped connection.
+ */
+@RestController
+@RequestMapping("/api/docs/uploads")
+public class DocumentUploadController {
+
+    private final ChunkedUploadService uploadService;
+    private final IngestionScheduler ingestionScheduler;
+
+    public DocumentUploadController(ChunkedUploadService uploadService, IngestionScheduler ingestionScheduler) {
+        this.uploadService = uploadService;
+        this.ingestionScheduler = ingestionScheduler;
+    }
+
+    @PostMapping
+    public Map<String, Object> initUpload(@RequestBody Map<String, Object> request) throws IOException {
+        Object size = request.get("size");
+        return describe(uploadService.init((String) request.get("filename"),
+                size instanceof Number number ? number.longValue() : -1, (String) request.get("namespace")));
+    }
+
+    // The part is streamed from the request body to disk, never buffered whole
+    @PutMapping("/{uploadId}")
+    public Map<String, Object> uploadPart(@PathVariable String uploadId, @RequestParam long offset,
+            @RequestHeader("X-Part-SHA256") String sha256, InputStream body) throws IOException {
+        return describe(uploadService.writePart(uploadId, offset, sha256, body));
+    }
+
+    @GetMapping("/{uploadId}")
+    public Map<String, Object> getUpload(@PathVariable String uploadId) {
+        return describe(uploadService.status(uploadId));
+    }
+
+    @PostMapping("/{uploadId}/complete")
+    public Map<String, Object> completeUpload(@PathVariable String uploadId,
+            @RequestParam(value = "force", defaultValue = "false") boolean force) throws IOException {
+        return AiController.uploadResponse(uploadService.complete(uploadId, force), ingestionScheduler);
+    }
+
+    @DeleteMapping("/{uploadId}")
+    public Map<String, Object> abortUpload(@PathVariable String uploadId) {
+        uploadService.abort(uploadId);
+        return Map.of("status", "success", "message", "Upload " + uploadId + " aborted");
+    }
+
+    private static Map<String, Object> describe(ChunkedUploadService.Session session) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("uploadId", session.uploadId);
+        response.put("filename", session.filename);
+        response.put("namespace", session.namespace);
+        response.put("size", session.size);
+        response.put("received", session.received());
+        response.put("nextOffset", session.nextOffset());
+        response.put("ranges", session.ranges);
+        return response;
+    }
+}
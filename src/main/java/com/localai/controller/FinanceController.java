@@ -1,14 +1,23 @@
 package com.localai.controller;
 
 import com.localai.model.Transaction;
+import com.localai.service.ChatStreamService;
+import com.localai.service.ClassificationBatcher;
+import com.localai.service.InferenceScheduler;
 import com.localai.service.FinanceService;
 import com.localai.service.ModelManagerService;
-import org.springframework.ai.chat.ChatClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.ollama.api.OllamaOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -17,35 +26,116 @@ import java.util.stream.Collectors;
 @RequestMapping("/api/finance")
 public class FinanceController {
 
+    private static final Logger logger = LoggerFactory.getLogger(FinanceController.class);
+
     private final FinanceService financeService;
-    private final ChatClient chatClient;
+    private final InferenceScheduler inferenceScheduler;
     private final ModelManagerService modelManager;
-
-    public FinanceController(FinanceService financeService, ChatClient chatClient, ModelManagerService modelManager) {
+    private final ChatStreamService chatStreamService;
+    private final ClassificationBatcher classificationBatcher;
+    private final int maxAiDescriptions;
+
+    public FinanceController(FinanceService financeService, InferenceScheduler inferenceScheduler,
+            ModelManagerService modelManager, ChatStreamService chatStreamService,
+            ClassificationBatcher classificationBatcher,
+            @Value("${app.finance.ai-categorize.max-descriptions:200}") int maxAiDescriptions) {
         this.financeService = financeService;
-        this.chatClient = chatClient;
+        this.inferenceScheduler = inferenceScheduler;
         this.modelManager = modelManager;
+        this.chatStreamService = chatStreamService;
+        this.classificationBatcher = classificationBatcher;
+        this.maxAiDescriptions = Math.max(0, maxAiDescriptions);
     }
 
     @PostMapping("/upload")
-    public Map<String, Object> uploadStatement(@RequestParam("file") MultipartFile file) {
+    public Map<String, Object> uploadStatement(@RequestParam("file") MultipartFile file,
+            @RequestParam(value = "aiCategorize", defaultValue = "false") boolean aiCategorize) {
         try {
             List<Transaction> transactions = financeService.parseCsv(file);
+            Categorized categorized = null;
+            if (aiCategorize) {
+                categorized = categorizeWithModel(transactions);
+                transactions = categorized.transactions();
+            }
             Map<String, Double> totals = financeService.calculateCategoryTotals(transactions);
 
-            return Map.of(
-                    "status", "success",
-                    "transactions", transactions.stream().limit(50).collect(Collectors.toList()), // Limit for UI
-                                                                                                  // performance
-                    "totals", totals,
-                    "count", transactions.size());
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("status", "success");
+            // Limit for UI performance
+            response.put("transactions", transactions.stream().limit(50).collect(Collectors.toList()));
+            response.put("totals", totals);
+            response.put("count", transactions.size());
+            if (categorized != null) {
+                response.put("aiCategorized", categorized.complete());
+                if (categorized.message() != null) {
+                    response.put("aiMessage", categorized.message());
+                }
+            }
+            return response;
         } catch (Exception e) {
             return Map.of("status", "error", "message", "Failed to process CSV: " + e.getMessage());
         }
     }
 
+    // complete: every description no rule matched got a category from the model
+    private record Categorized(List<Transaction> transactions, boolean complete, String message) {
+    }
+
+    // Transactions no keyword rule matched get a category from the Lite model, batched. The model is optional:
+    // at most maxAiDescriptions descriptions are classified while the upload waits, and when classification
+    // fails (e.g. 429 from a full queue) the transactions stay Uncategorized instead of failing the upload
+    private Categorized categorizeWithModel(List<Transaction> transactions) {
+        List<String> descriptions = transactions.stream()
+                .filter(t -> FinanceService.UNCATEGORIZED.equals(t.category()))
+                .map(Transaction::description).distinct().toList();
+        if (descriptions.isEmpty()) {
+            return new Categorized(transactions, true, null);
+        }
+        List<String> classified = descriptions.subList(0, Math.min(descriptions.size(), maxAiDescriptions));
+        List<String> categories;
+        try {
+            categories = classificationBatcher.classifyAll(classified);
+        } catch (RuntimeException e) {
+            logger.warn("AI categorization of {} descriptions failed, leaving them uncategorized: {}",
+                    classified.size(), e.getMessage());
+            return new Categorized(transactions, false, "AI categorization unavailable: " + e.getMessage());
+        }
+        Map<String, String> byDescription = new HashMap<>();
+        for (int i = 0; i < classified.size(); i++) {
+            byDescription.put(classified.get(i), categories.get(i));
+        }
+        List<Transaction> result = transactions.stream()
+                .map(t -> byDescription.containsKey(t.description())
+                        && FinanceService.UNCATEGORIZED.equals(t.category())
+                        ? new Transaction(t.date(), t.description(), t.amount(), byDescription.get(t.description()))
+                        : t)
+                .collect(Collectors.toList());
+        int skipped = descriptions.size() - classified.size();
+        return skipped == 0 ? new Categorized(result, true, null)
+                : new Categorized(result, false, skipped + " descriptions left uncategorized (at most "
+                        + maxAiDescriptions + " are categorized by AI per upload)");
+    }
+
     @PostMapping("/analyze")
     public Map<String, String> analyzeFinances(@RequestBody Map<String, Object> request) {
+        String modelName = modelManager.getCurrentModel();
+
+        Prompt prompt = analysisPrompt(request, modelName);
+        String response = inferenceScheduler.call(prompt, InferenceScheduler.Lane.STANDARD)
+                .getResult().getOutput().getContent();
+
+        return Map.of("analysis", response);
+    }
+
+    // Same as /analyze, streamed as SSE token events
+    @PostMapping(value = "/analyze/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter analyzeFinancesStream(@RequestBody Map<String, Object> request) {
+        String modelName = modelManager.getCurrentModel();
+        return chatStreamService.stream(analysisPrompt(request, modelName), modelName,
+                InferenceScheduler.Lane.STANDARD);
+    }
+
+    private static Prompt analysisPrompt(Map<String, Object> request, String modelName) {
         // Pro Task: Send summarized data to LLM
         Map<String, Number> totals = (Map<String, Number>) request.get("totals");
 
@@ -56,12 +146,7 @@ public class FinanceController {
         promptBuilder.append(
                 "\nAnalyze this spending. Identify the largest expense category. Provide 3 actionable tips to save money based on these categories. Be concise and friendly.");
 
-        String modelName = modelManager.getCurrentModel();
-
-        Prompt prompt = new Prompt(promptBuilder.toString(), OllamaOptions.create().withModel(modelName));
-        String response = chatClient.call(prompt).getResult().getOutput().getContent();
-
-        return Map.of("analysis", response);
+        return new Prompt(promptBuilder.toString(), OllamaOptions.create().withModel(modelName));
     }
 
     @PostMapping("/category/update")
@@ -117,8 +202,8 @@ public class FinanceController {
 
         String commentary = "Calculated.";
         try {
-            commentary = chatClient.call(new Prompt(promptText, OllamaOptions.create().withModel(modelName)))
-                    .getResult().getOutput().getContent();
+            commentary = inferenceScheduler.call(new Prompt(promptText, OllamaOptions.create().withModel(modelName)),
+                    InferenceScheduler.Lane.BACKGROUND).getResult().getOutput().getContent();
         } catch (Exception e) {
             commentary = "Runway calculated.";
         }
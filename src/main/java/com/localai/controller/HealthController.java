@@ -1,12 +1,15 @@
 package com.localai.controller;
 
 import com.localai.model.JournalEntry;
+import com.localai.service.ChatStreamService;
+import com.localai.service.InferenceScheduler;
 import com.localai.service.HealthService;
 import com.localai.service.ModelManagerService;
-import org.springframework.ai.chat.ChatClient;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.ollama.api.OllamaOptions;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.Map;
@@ -16,13 +19,23 @@ import java.util.Map;
 public class HealthController {
 
     private final HealthService healthService;
-    private final ChatClient chatClient;
+    private final InferenceScheduler inferenceScheduler;
     private final ModelManagerService modelManager;
+    private final ChatStreamService chatStreamService;
 
-    public HealthController(HealthService healthService, ChatClient chatClient, ModelManagerService modelManager) {
+    private static final String CRISIS_RESPONSE =
+            "PLEASE STOP. If you are in danger, please call emergency services immediately.\n\n" +
+                    "🇺🇸 USA: 988 (Suicide & Crisis Lifeline)\n" +
+                    "🇬🇧 UK: 111 or 999\n" +
+                    "🇨🇦 Canada: 988\n\n" +
+                    "You are not alone. Please reach out to a professional.";
+
+    public HealthController(HealthService healthService, InferenceScheduler inferenceScheduler,
+            ModelManagerService modelManager, ChatStreamService chatStreamService) {
         this.healthService = healthService;
-        this.chatClient = chatClient;
+        this.inferenceScheduler = inferenceScheduler;
         this.modelManager = modelManager;
+        this.chatStreamService = chatStreamService;
     }
 
     @PostMapping("/journal")
@@ -58,29 +71,42 @@ public class HealthController {
         String message = request.get("message");
 
         // CRITICAL SAFETY GUARDRAIL
-        String lowerMsg = message.toLowerCase();
-        if (lowerMsg.contains("suicide") || lowerMsg.contains("kill myself") || lowerMsg.contains("want to die")
-                || lowerMsg.contains("end it all") || lowerMsg.contains("self-harm")) {
-            return Map.of("response",
-                    "PLEASE STOP. If you are in danger, please call emergency services immediately.\n\n" +
-                            "🇺🇸 USA: 988 (Suicide & Crisis Lifeline)\n" +
-                            "🇬🇧 UK: 111 or 999\n" +
-                            "🇨🇦 Canada: 988\n\n" +
-                            "You are not alone. Please reach out to a professional.");
+        if (isCrisis(message)) {
+            return Map.of("response", CRISIS_RESPONSE);
         }
 
-        // Pro Task: Therapist Persona
-        String systemPrompt = "You are a compassionate, licensed therapist. Your goal is to listen effectively and identify cognitive distortions (like catastrophizing, black-and-white thinking). Respond with empathy. Keep responses concise.";
-
         // Dynamic Model Selection (Pro preferred)
         String model = modelManager.getCurrentModel();
+        String response = inferenceScheduler.call(therapistPrompt(message, model), InferenceScheduler.Lane.INTERACTIVE)
+                .getResult().getOutput().getContent();
+
+        return Map.of("response", response);
+    }
+
+    // Same as /chat, streamed as SSE token events; the guardrail answers without generating
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter therapyChatStream(@RequestBody Map<String, String> request) {
+        String message = request.get("message");
+        String model = modelManager.getCurrentModel();
+        if (isCrisis(message)) {
+            return chatStreamService.reply(CRISIS_RESPONSE, model);
+        }
+        return chatStreamService.stream(therapistPrompt(message, model), model, InferenceScheduler.Lane.INTERACTIVE);
+    }
+
+    private static boolean isCrisis(String message) {
+        String lowerMsg = message.toLowerCase();
+        return lowerMsg.contains("suicide") || lowerMsg.contains("kill myself") || lowerMsg.contains("want to die")
+                || lowerMsg.contains("end it all") || lowerMsg.contains("self-harm");
+    }
+
+    private static Prompt therapistPrompt(String message, String model) {
+        // Pro Task: Therapist Persona
+        String systemPrompt = "You are a compassionate, licensed therapist. Your goal is to listen effectively and identify cognitive distortions (like catastrophizing, black-and-white thinking). Respond with empathy. Keep responses concise.";
 
         // Assuming a simple chat call for now. In a full app, we'd pass history.
         String fullPrompt = systemPrompt + "\nUser: " + message + "\nTherapist:";
 
-        Prompt prompt = new Prompt(fullPrompt, OllamaOptions.create().withModel(model));
-        String response = chatClient.call(prompt).getResult().getOutput().getContent();
-
-        return Map.of("response", response);
+        return new Prompt(fullPrompt, OllamaOptions.create().withModel(model));
     }
 }
@@ -1,13 +1,16 @@
 package com.localai.controller;
 
+import com.localai.service.ChatStreamService;
+import com.localai.service.InferenceScheduler;
 import com.localai.service.LegalService;
 import com.localai.service.ModelManagerService;
 import com.localai.service.DocumentService;
-import org.springframework.ai.chat.ChatClient;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.ollama.api.OllamaOptions;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile; // For consistency if needed
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.Map;
 
@@ -16,15 +19,18 @@ import java.util.Map;
 public class LegalController {
 
     private final LegalService legalService;
-    private final ChatClient chatClient;
+    private final InferenceScheduler inferenceScheduler;
     private final ModelManagerService modelManager;
+    private final ChatStreamService chatStreamService;
     // We might need DocumentService if we want to fetch text by ID later,
     // but for now we'll accept text from frontend.
 
-    public LegalController(LegalService legalService, ChatClient chatClient, ModelManagerService modelManager) {
+    public LegalController(LegalService legalService, InferenceScheduler inferenceScheduler,
+            ModelManagerService modelManager, ChatStreamService chatStreamService) {
         this.legalService = legalService;
-        this.chatClient = chatClient;
+        this.inferenceScheduler = inferenceScheduler;
         this.modelManager = modelManager;
+        this.chatStreamService = chatStreamService;
     }
 
     @PostMapping("/sanitize")
@@ -42,11 +48,21 @@ public class LegalController {
         String model = modelManager.getCurrentModel();
 
         Prompt prompt = new Prompt(promptText, OllamaOptions.create().withModel(model));
-        String response = chatClient.call(prompt).getResult().getOutput().getContent();
+        String response = inferenceScheduler.call(prompt, InferenceScheduler.Lane.STANDARD)
+                .getResult().getOutput().getContent();
 
         return Map.of("risks", response);
     }
 
+    // Same as /risks, streamed as SSE token events
+    @PostMapping(value = "/risks/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter analyzeRisksStream(@RequestBody Map<String, String> request) {
+        String promptText = legalService.prepareRiskAnalysisPrompt(request.get("text"));
+        String model = modelManager.getCurrentModel();
+        return chatStreamService.stream(new Prompt(promptText, OllamaOptions.create().withModel(model)), model,
+                InferenceScheduler.Lane.STANDARD);
+    }
+
     @PostMapping("/fill")
     public Map<String, String> autoFill(@RequestBody Map<String, String> request) {
         String profile = request.get("profile");
@@ -56,7 +72,8 @@ public class LegalController {
         String model = modelManager.getCurrentModel();
 
         Prompt prompt = new Prompt(promptText, OllamaOptions.create().withModel(model));
-        String response = chatClient.call(prompt).getResult().getOutput().getContent();
+        String response = inferenceScheduler.call(prompt, InferenceScheduler.Lane.STANDARD)
+                .getResult().getOutput().getContent();
 
         return Map.of("suggestions", response);
     }
@@ -70,8 +70,7 @@ public class SettingsController {
 
     @PostMapping("/nuke")
     public Map<String, Object> nukeContext() {
-        documentService.clearStore();
-        return Map.of("status", "success", "message",
-                "Context Nuked (Persistence Cleared). Restart for full memory wipe.");
+        Map<String, Object> stats = documentService.clearStore();
+        return Map.of("status", "success", "message", "Context Nuked (store and memory cleared).", "stats", stats);
     }
 }
@@ -0,0 +1,71 @@
+package com.localai.controller;
+
+import com.localai.service.EmbeddingService;
+import com.localai.vectorstore.MappedVectorStore;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/vectorstore")
+public class VectorStoreController {
+
+    private final MappedVectorStore vectorStore;
+    private final EmbeddingService embeddingService;
+
+    public VectorStoreController(MappedVectorStore vectorStore, EmbeddingService embeddingService) {
+        this.vectorStore = vectorStore;
+        this.embeddingService = embeddingService;
+    }
+
+    @GetMapping("/stats")
+    public Map<String, Object> getStats() {
+        return vectorStore.stats();
+    }
+
+    // Rewrites the store without its deleted chunks now, instead of waiting
+    // for the background compaction to find enough of them.
+    @PostMapping("/reclaim")
+    public Map<String, Object> reclaim() throws IOException {
+        boolean reclaimed = vectorStore.reclaim(true);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("reclaimed", reclaimed);
+        response.put("stats", vectorStore.stats());
+        return response;
+    }
+
+    // Readiness: 200 once the store's indexes are loaded, 503 while they are
+    // still loading in the background (or failed to load)
+    @GetMapping("/health")
+    public ResponseEntity<Map<String, Object>> health() {
+        return ResponseEntity.status(vectorStore.isLoaded() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE)
+                .body(vectorStore.loadStatus());
+    }
+
+    // Samples stored vectors as queries and compares the configured search path
+    // (graph, quantized scoring, re-rank) against the exact float32 scan.
+    // Pass efSearch to try a different setting without restarting.
+    @GetMapping("/recall")
+    public Map<String, Object> measureRecall(@RequestParam(defaultValue = "100") int samples,
+            @RequestParam(defaultValue = "10") int k,
+            @RequestParam(required = false) Integer efSearch) {
+        return vectorStore.measureRecall(samples, k, efSearch);
+    }
+
+    // Hit/miss counters of the content-hash embedding cache used during ingestion,
+    // and of the query embedding LRU used by chat retrieval (under "queryCache").
+    @GetMapping("/embedding-cache")
+    public Map<String, Object> getEmbeddingCacheStats() {
+        return embeddingService.stats();
+    }
+
+    @DeleteMapping("/embedding-cache/queries")
+    public Map<String, Object> clearQueryEmbeddingCache() {
+        embeddingService.invalidateQueryCache();
+        return Map.of("status", "cleared");
+    }
+}
@@ -0,0 +1,20 @@
+package com.localai.exception;
+
+/**
+ * Thrown when an LLM request cannot be admitted: the model's queue is full,
+ * or the request waited longer than the queue timeout. Mapped to 429 with a
+ * Retry-After header by {@link GlobalExceptionHandler}.
+ */
+public class InferenceBusyException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public InferenceBusyException(String message, long retryAfterSeconds) {
+        super(message + ", retry in " + retryAfterSeconds + "s");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,19 @@
+package com.localai.exception;
+
+/**
+ * Thrown when the ingestion queue is at capacity. Mapped to 429 with a
+ * Retry-After header by {@link GlobalExceptionHandler}.
+ */
+public class IngestionQueueFullException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public IngestionQueueFullException(int capacity, long retryAfterSeconds) {
+        super("Ingestion queue is full (" + capacity + " jobs waiting), retry in " + retryAfterSeconds + "s");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
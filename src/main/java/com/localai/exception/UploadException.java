@@ -0,0 +1,21 @@
+package com.localai.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * An upload request that cannot be served: unknown upload, bad part,
+ * incomplete file, or a bulk directory outside the allowed roots. Mapped to {@link #getStatus()} by {@link GlobalExceptionHandler}.
+ */
+public class UploadException extends RuntimeException {
+
+    private final HttpStatus status;
+
+    public UploadException(HttpStatus status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+}
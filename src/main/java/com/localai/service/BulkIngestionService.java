@@ -0,0 +1,344 @@
+package com.localai.service;
+
+import com.localai.exception.UploadException;
+import com.localai.vectorstore.MappedVectorStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ingests many PDFs as one job: a set of uploaded files, or every PDF in a
+ * server-local directory. All files go through the streaming pipeline into a
+ * single vector store bulk write that is committed once at the end, so a
+ * folder of statements costs one segment and one manifest write instead of
+ * one per chunk batch.
+ *
+ * A file that fails is reported and the batch carries on; any of its chunks
+ * that were already written are deleted right after the commit. Files whose
+ * content was ingested before are skipped unless forced; forcing replaces
+ * the earlier chunks of that content at the commit. Like a single upload,
+ * each file's content is claimed as in flight with {@link DocumentService}
+ * until the job ends, so an upload of the same content meanwhile is reported
+ * as a duplicate instead of being ingested twice. The finished job reports
+ * per-file results and aggregate throughput.
+ *
+ * Directory ingestion reads server files on behalf of an HTTP caller, so it
+ * is limited to the directories listed in
+ * {@code app.ingestion.bulk.allowed-roots} and is off when none are listed.
+ */
+@Service
+public class BulkIngestionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkIngestionService.class);
+
+    public record BulkJob(String jobId, int fileCount) {
+    }
+
+    // documentId is null until the file has been hashed
+    private record Source(Path path, String filename, boolean temporary, String documentId) {
+    }
+
+    private final MappedVectorStore vectorStore;
+    private final ProcessingStatusService statusService;
+    private final IngestionScheduler ingestionScheduler;
+    private final PdfIngestionPipeline ingestionPipeline;
+    private final DocumentRegistry documentRegistry;
+    private final DocumentService documentService;
+    // Real paths; a directory is ingested only from within one of them
+    private final List<Path> allowedRoots;
+
+    public BulkIngestionService(MappedVectorStore vectorStore, ProcessingStatusService statusService,
+            IngestionScheduler ingestionScheduler, PdfIngestionPipeline ingestionPipeline,
+            DocumentRegistry documentRegistry, DocumentService documentService,
+            @Value("${app.ingestion.bulk.allowed-roots:}") String allowedRoots) {
+        this.vectorStore = vectorStore;
+        this.statusService = statusService;
+        this.ingestionScheduler = ingestionScheduler;
+        this.ingestionPipeline = ingestionPipeline;
+        this.documentRegistry = documentRegistry;
+        this.documentService = documentService;
+        this.allowedRoots = parseRoots(allowedRoots);
+    }
+
+    // Comma-separated directories; ones that do not exist are left out
+    private static List<Path> parseRoots(String value) {
+        List<Path> roots = new ArrayList<>();
+        if (value == null) {
+            return roots;
+        }
+        for (String entry : value.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            try {
+                roots.add(Paths.get(entry.strip()).toRealPath());
+            } catch (IOException e) {
+                logger.warn("Ignoring app.ingestion.bulk.allowed-roots entry '{}': {}", entry.strip(), e.toString());
+            }
+        }
+        return List.copyOf(roots);
+    }
+
+    public BulkJob submitUploads(List<MultipartFile> files, boolean force, String namespace) throws IOException {
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("No files uploaded");
+        }
+        String target = DocumentService.namespace(namespace);
+        ingestionScheduler.checkCapacity();
+        List<Source> sources = new ArrayList<>();
+        try {
+            for (MultipartFile file : files) {
+                Path tempFile = Files.createTempFile("bulk-", ".pdf");
+                try (InputStream in = file.getInputStream(); OutputStream out = Files.newOutputStream(tempFile)) {
+                    String documentId = DocumentService.copyAndHash(in, out);
+                    sources.add(new Source(tempFile, file.getOriginalFilename(), true, documentId));
+                } catch (IOException | RuntimeException e) {
+                    Files.deleteIfExists(tempFile);
+                    throw e;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteTemporary(sources);
+            throw e;
+        }
+        return submit(sources, force, target);
+    }
+
+    /**
+     * Queues every {@code .pdf} file in {@code directory}, which must lie
+     * within one of the allowed roots. The files are read in place and left
+     * untouched; symbolic links and unreadable subdirectories are skipped.
+     */
+    public BulkJob submitDirectory(String directory, boolean recursive, boolean force, String namespace)
+            throws IOException {
+        String target = DocumentService.namespace(namespace);
+        if (allowedRoots.isEmpty()) {
+            throw new UploadException(HttpStatus.FORBIDDEN,
+                    "Directory ingestion is disabled; set app.ingestion.bulk.allowed-roots to enable it");
+        }
+        if (directory == null || directory.isBlank()) {
+            throw new UploadException(HttpStatus.BAD_REQUEST, "path is required");
+        }
+        Path root;
+        try {
+            // Resolves "..", and symbolic links that would lead out of the allowed roots
+            root = Paths.get(directory).toRealPath();
+        } catch (IOException | RuntimeException e) {
+            throw new UploadException(HttpStatus.BAD_REQUEST, "Not a directory: " + directory);
+        }
+        if (allowedRoots.stream().noneMatch(root::startsWith)) {
+            throw new UploadException(HttpStatus.FORBIDDEN, "Not within an allowed directory: " + directory);
+        }
+        if (!Files.isDirectory(root)) {
+            throw new UploadException(HttpStatus.BAD_REQUEST, "Not a directory: " + directory);
+        }
+        List<Path> pdfs = new ArrayList<>();
+        // Unlike Files.walk, a subdirectory that cannot be read is skipped instead of ending the walk
+        Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class), recursive ? Integer.MAX_VALUE : 1,
+                new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        if (attributes.isRegularFile()
+                                && file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".pdf")) {
+                            pdfs.add(file);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        logger.warn("Skipping {}: {}", file, e.toString());
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+        if (pdfs.isEmpty()) {
+            throw new IllegalArgumentException("No PDF files in " + directory);
+        }
+        List<Source> sources = pdfs.stream()
+                .sorted()
+                .map(path -> new Source(path, root.relativize(path).toString(), false, null))
+                .toList();
+        return submit(sources, force, target);
+    }
+
+    private BulkJob submit(List<Source> sources, boolean force, String namespace) throws IOException {
+        long totalSize = 0;
+        for (Source source : sources) {
+            totalSize += Files.size(source.path());
+        }
+        String jobId = statusService.createJob();
+        try {
+            // Scheduled by total size, like a single upload of that size
+            ingestionScheduler.submit(jobId, totalSize, () -> process(jobId, sources, force, namespace));
+        } catch (RuntimeException e) {
+            statusService.removeJob(jobId);
+            deleteTemporary(sources);
+            throw e;
+        }
+        logger.info("Queued bulk ingestion job {} for {} files", jobId, sources.size());
+        return new BulkJob(jobId, sources.size());
+    }
+
+    // Runs on an IngestionScheduler worker
+    private void process(String jobId, List<Source> sources, boolean force, String namespace) {
+        int fileCount = sources.size();
+        statusService.updateStatus(jobId, "PROCESSING", "Starting bulk ingestion of " + fileCount + " files");
+        long start = System.nanoTime();
+        MappedVectorStore.Bulk bulk = vectorStore.openBulk();
+        List<Map<String, Object>> files = new ArrayList<>();
+        List<DocumentRegistry.Entry> ingested = new ArrayList<>();
+        List<String> orphanedChunks = new ArrayList<>(); // written by files that then failed
+        List<String> replacedChunks = new ArrayList<>(); // of earlier ingestions of force-ingested files
+        Set<String> seen = new HashSet<>();
+        List<String> claimed = new ArrayList<>(); // in flight until the commit is done
+        int pages = 0;
+        int chunks = 0;
+        int duplicates = 0;
+        int failed = 0;
+        try {
+            for (int i = 0; i < fileCount; i++) {
+                Source source = sources.get(i);
+                Map<String, Object> report = new LinkedHashMap<>();
+                report.put("filename", source.filename());
+                files.add(report);
+                List<String> fileChunks = new ArrayList<>();
+                // A store write failure leaves the bulk segment unusable and ends the batch
+                IOException[] storeFailure = new IOException[1];
+                try {
+                    String documentId = source.documentId() != null ? source.documentId() : hash(source.path());
+                    report.put("documentId", documentId);
+                    if (!seen.add(documentId) || !documentService.claim(documentId, jobId, force)) {
+                        report.put("status", "duplicate");
+                        duplicates++;
+                        continue;
+                    }
+                    claimed.add(documentId);
+                    // Read before any of this file's chunks are written; replaced at the commit
+                    List<String> previousChunks = vectorStore.chunkIds(documentId);
+                    int fileNumber = i + 1;
+                    int chunksBefore = chunks;
+                    PdfIngestionPipeline.Result result = ingestionPipeline.ingest(source.path().toFile(),
+                            source.filename(), Map.of("document_id", documentId, "namespace", namespace),
+                            Writer.nullWriter(),
+                            (step, done, total, embedded) -> statusService.updateProgress(jobId,
+                                    "file " + fileNumber + "/" + fileCount + " " + source.filename() + ": " + step
+                                            + " " + done + "/" + total,
+                                    fileNumber - 1, fileCount, chunksBefore + embedded),
+                            batch -> {
+                                try {
+                                    bulk.add(batch);
+                                } catch (IOException e) {
+                                    storeFailure[0] = e;
+                                    throw e;
+                                }
+                                batch.forEach(chunk -> fileChunks.add(chunk.getId()));
+                            });
+                    pages += result.pageCount();
+                    chunks += result.chunkCount();
+                    ingested.add(new DocumentRegistry.Entry(documentId, source.filename(), result.pageCount(),
+                            result.chunkCount(), 0, namespace));
+                    replacedChunks.addAll(previousChunks);
+                    report.put("status", "ingested");
+                    report.put("pageCount", result.pageCount());
+                    report.put("chunkCount", result.chunkCount());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                } catch (Exception e) {
+                    if (storeFailure[0] != null) {
+                        throw storeFailure[0];
+                    }
+                    logger.warn("Bulk job {}: failed to ingest {}", jobId, source.filename(), e);
+                    report.put("status", "failed");
+                    report.put("error", String.valueOf(e.getMessage()));
+                    orphanedChunks.addAll(fileChunks);
+                    failed++;
+                } finally {
+                    if (source.temporary()) {
+                        Files.deleteIfExists(source.path());
+                    }
+                }
+            }
+
+            // The single persistence commit for the whole batch
+            statusService.updateProgress(jobId, "committing", fileCount, fileCount, chunks);
+            bulk.commit();
+            orphanedChunks.addAll(replacedChunks);
+            if (!orphanedChunks.isEmpty()) {
+                vectorStore.delete(orphanedChunks);
+            }
+            long now = System.currentTimeMillis();
+            documentRegistry.registerAll(ingested.stream()
+                    .map(entry -> new DocumentRegistry.Entry(entry.documentId(), entry.filename(),
+                            entry.pageCount(), entry.chunkCount(), now, namespace))
+                    .toList());
+
+            double seconds = Math.max(1e-3, (System.nanoTime() - start) / 1e9);
+            Map<String, Object> payload = new LinkedHashMap<>();
+            payload.put("namespace", namespace);
+            payload.put("fileCount", fileCount);
+            payload.put("ingested", ingested.size());
+            payload.put("duplicates", duplicates);
+            payload.put("failed", failed);
+            payload.put("pages", pages);
+            payload.put("chunks", chunks);
+            payload.put("seconds", Math.round(seconds * 10) / 10.0);
+            payload.put("pagesPerSecond", Math.round(pages / seconds * 10) / 10.0);
+            payload.put("chunksPerSecond", Math.round(chunks / seconds * 10) / 10.0);
+            payload.put("files", files);
+            logger.info("Bulk job {}: {} of {} files, {} pages, {} chunks in {}s ({} pages/s, {} chunks/s)", jobId,
+                    ingested.size(), fileCount, pages, chunks, payload.get("seconds"), payload.get("pagesPerSecond"),
+                    payload.get("chunksPerSecond"));
+            statusService.updateStatus(jobId, "COMPLETED", "Ingested " + ingested.size() + " of " + fileCount
+                    + " files (" + duplicates + " duplicates, " + failed + " failed)", payload);
+        } catch (Exception e) {
+            bulk.abort();
+            logger.error("Bulk ingestion job {} failed", jobId, e);
+            statusService.updateStatus(jobId, "ERROR", e.getMessage());
+        } finally {
+            claimed.forEach(documentId -> documentService.release(documentId, jobId));
+            deleteTemporary(sources);
+        }
+    }
+
+    private static String hash(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return DocumentService.copyAndHash(in, OutputStream.nullOutputStream());
+        }
+    }
+
+    private static void deleteTemporary(List<Source> sources) {
+        for (Source source : sources) {
+            if (source.temporary()) {
+                try {
+                    Files.deleteIfExists(source.path());
+                } catch (IOException e) {
+                    logger.debug("Could not delete {}", source.path(), e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.localai.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.StreamingChatClient;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams LLM answers to the client over Server-Sent Events while Ollama
+ * generates them, instead of one blocking call. A stream sends a
+ * {@code start} event (model), one {@code token} event per piece of text,
+ * then {@code done} with the time to first token and the total time, or
+ * {@code error}.
+ *
+ * Streams are admitted by the {@link InferenceScheduler} before the first
+ * event, so a saturated model answers 429 rather than an empty stream, and
+ * hold their slot until they end.
+ *
+ * Identical concurrent requests (same model, options and messages) share
+ * one generation: later ones replay the tokens sent so far and then follow
+ * along live, and the generation holds a single slot.
+ *
+ * When the last client of a generation goes away (disconnect, failed write
+ * or timeout) the subscription to the Ollama response is disposed. That
+ * closes the HTTP request to Ollama, which then stops generating.
+ */
+@Service
+public class ChatStreamService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatStreamService.class);
+
+    private final StreamingChatClient streamingChatClient;
+    private final InferenceScheduler inferenceScheduler;
+    private final long timeoutMillis;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong firstTokens = new AtomicLong();
+    private final AtomicLong firstTokenNanos = new AtomicLong();
+    // Prompt key -> generation being streamed; guards the SharedGeneration fields too
+    private final Map<String, SharedGeneration> generations = new HashMap<>();
+
+    public ChatStreamService(StreamingChatClient streamingChatClient, InferenceScheduler inferenceScheduler,
+            @Value("${app.chat.stream.timeout-minutes:10}") long timeoutMinutes) {
+        this.streamingChatClient = streamingChatClient;
+        this.inferenceScheduler = inferenceScheduler;
+        this.timeoutMillis = TimeUnit.MINUTES.toMillis(Math.max(1, timeoutMinutes));
+    }
+
+    /**
+     * Generates the answer to {@code prompt} once admitted in {@code lane} and
+     * streams it as it arrives, or joins the identical generation in progress.
+     */
+    public SseEmitter stream(Prompt prompt, String model, InferenceScheduler.Lane lane) {
+        String key = inferenceScheduler.key(prompt);
+        SharedGeneration generation;
+        boolean leader;
+        synchronized (generations) {
+            generation = generations.get(key);
+            leader = generation == null;
+            if (leader) {
+                generation = new SharedGeneration(key);
+                generations.put(key, generation);
+            } else {
+                generation.subscribers++;
+            }
+        }
+        ChatStream stream = new ChatStream(newEmitter(), model);
+        stream.generation = generation;
+        stream.shared = !leader;
+        Flux<ChatResponse> answer;
+        if (leader) {
+            answer = startGeneration(generation, prompt, model, lane);
+        } else {
+            inferenceScheduler.recordCoalesced();
+            try {
+                answer = InferenceScheduler.await(generation.answer);
+            } catch (RuntimeException e) {
+                leave(generation);
+                throw e;
+            }
+        }
+        stream.start();
+        if (answer == null) {
+            stream.onError(generation.failure);
+            return stream.emitter;
+        }
+        if (!stream.ended.get()) {
+            // Assigned after subscribing; checked again below in case the client left meanwhile
+            stream.subscription = answer.subscribe(stream::onResponse, stream::onError, stream::onComplete);
+            if (stream.ended.get()) {
+                stream.subscription.dispose();
+            }
+        }
+        return stream.emitter;
+    }
+
+    /**
+     * Admits the generation and makes its replaying answer available to the
+     * clients that joined meanwhile. Throws when it is not admitted; returns
+     * null when Ollama could not be asked ({@code failure} says why).
+     */
+    private Flux<ChatResponse> startGeneration(SharedGeneration generation, Prompt prompt, String model,
+            InferenceScheduler.Lane lane) {
+        try {
+            generation.permit = inferenceScheduler.acquire(model, lane);
+        } catch (RuntimeException e) {
+            synchronized (generations) {
+                generations.remove(generation.key, generation);
+            }
+            generation.answer.completeExceptionally(e);
+            throw e;
+        }
+        try {
+            Flux<ChatResponse> answer = streamingChatClient.stream(prompt)
+                    .doFinally(signal -> finish(generation))
+                    .replay()
+                    .autoConnect(1, connection -> connected(generation, connection));
+            generation.answer.complete(answer);
+            return answer;
+        } catch (RuntimeException e) {
+            finish(generation);
+            generation.failure = e;
+            generation.answer.complete(null);
+            return null;
+        }
+    }
+
+    private void connected(SharedGeneration generation, Disposable connection) {
+        boolean abandoned;
+        synchronized (generations) {
+            generation.connection = connection;
+            abandoned = generation.abandoned;
+        }
+        if (abandoned) {
+            connection.dispose();
+        }
+    }
+
+    // The generation ended: new identical requests start their own
+    private void finish(SharedGeneration generation) {
+        synchronized (generations) {
+            generations.remove(generation.key, generation);
+        }
+        if (generation.permit != null) {
+            generation.permit.close();
+        }
+    }
+
+    // A client of the generation ended; the last one stops it
+    private void leave(SharedGeneration generation) {
+        Disposable connection;
+        synchronized (generations) {
+            if (--generation.subscribers > 0) {
+                return;
+            }
+            generations.remove(generation.key, generation);
+            generation.abandoned = true;
+            connection = generation.connection;
+        }
+        if (connection != null) {
+            connection.dispose(); // a no-op once the answer is complete
+        } else if (generation.permit != null) {
+            generation.permit.close(); // never subscribed to
+        }
+    }
+
+    /** Streams a fixed answer that needs no generation, e.g. a safety message. */
+    public SseEmitter reply(String text, String model) {
+        ChatStream stream = new ChatStream(newEmitter(), model);
+        stream.start();
+        stream.onResponseText(text);
+        stream.onComplete();
+        return stream.emitter;
+    }
+
+    // Overridden in tests to see the events a client receives
+    SseEmitter newEmitter() {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("active", active.get());
+        stats.put("completed", completed.get());
+        stats.put("cancelled", cancelled.get());
+        stats.put("failed", failed.get());
+        long count = firstTokens.get();
+        stats.put("avgTimeToFirstTokenMillis", count == 0 ? 0 : firstTokenNanos.get() / count / 1_000_000);
+        return stats;
+    }
+
+    private final class ChatStream {
+
+        final SseEmitter emitter;
+        final String model;
+        final long started = System.nanoTime();
+        final AtomicBoolean ended = new AtomicBoolean();
+        volatile Disposable subscription;
+        volatile SharedGeneration generation; // null for fixed replies
+        volatile boolean shared; // joined a generation already in progress
+        volatile long firstTokenAt; // System.nanoTime() of the first token, 0 before
+        int pieces;
+
+        ChatStream(SseEmitter emitter, String model) {
+            this.emitter = emitter;
+            this.model = model;
+        }
+
+        void start() {
+            active.incrementAndGet();
+            emitter.onCompletion(this::cancel);
+            emitter.onTimeout(() -> {
+                cancel();
+                emitter.complete();
+            });
+            emitter.onError(e -> cancel());
+            send("start", Map.of("model", model));
+        }
+
+        void onResponse(ChatResponse response) {
+            if (response.getResult() != null && response.getResult().getOutput() != null) {
+                onResponseText(response.getResult().getOutput().getContent());
+            }
+        }
+
+        void onResponseText(String text) {
+            if (text == null || text.isEmpty() || ended.get()) {
+                return;
+            }
+            if (firstTokenAt == 0) {
+                firstTokenAt = System.nanoTime();
+                firstTokens.incrementAndGet();
+                firstTokenNanos.addAndGet(firstTokenAt - started);
+            }
+            pieces++;
+            send("token", Map.of("text", text));
+        }
+
+        void onComplete() {
+            if (!ended.compareAndSet(false, true)) {
+                return;
+            }
+            end();
+            completed.incrementAndGet();
+            Map<String, Object> done = new LinkedHashMap<>();
+            done.put("model", model);
+            done.put("timeToFirstTokenMillis", firstTokenAt == 0 ? null : millisSince(started, firstTokenAt));
+            done.put("totalMillis", millisSince(started, System.nanoTime()));
+            done.put("chunks", pieces);
+            done.put("shared", shared);
+            logger.info("Streamed {} answer: first token after {} ms, {} ms total.", model,
+                    done.get("timeToFirstTokenMillis"), done.get("totalMillis"));
+            send("done", done);
+            emitter.complete();
+        }
+
+        void onError(Throwable error) {
+            if (!ended.compareAndSet(false, true)) {
+                return;
+            }
+            end();
+            failed.incrementAndGet();
+            logger.warn("Streaming {} answer failed: {}", model, error.getMessage());
+            send("error", Map.of("message", String.valueOf(error.getMessage())));
+            emitter.complete();
+        }
+
+        // The client is gone: stop generating, unless others share the generation
+        void cancel() {
+            if (!ended.compareAndSet(false, true)) {
+                return;
+            }
+            end();
+            cancelled.incrementAndGet();
+            Disposable current = subscription;
+            if (current != null) {
+                current.dispose();
+            }
+            logger.info("Client left a {} stream after {} ms.", model, millisSince(started, System.nanoTime()));
+        }
+
+        private void end() {
+            active.decrementAndGet();
+            if (generation != null) {
+                leave(generation);
+            }
+        }
+
+        private void send(String name, Object data) {
+            try {
+                emitter.send(SseEmitter.event().name(name).data(data));
+            } catch (IOException | IllegalStateException e) {
+                cancel();
+            }
+        }
+    }
+
+    private static final class SharedGeneration {
+
+        final String key;
+        // The replaying answer once admitted; null if Ollama could not be asked
+        final CompletableFuture<Flux<ChatResponse>> answer = new CompletableFuture<>();
+        volatile InferenceScheduler.Permit permit;
+        volatile RuntimeException failure;
+        int subscribers = 1;
+        boolean abandoned;
+        Disposable connection;
+
+        SharedGeneration(String key) {
+            this.key = key;
+        }
+    }
+
+    private static long millisSince(long start, long end) {
+        return (end - start) / 1_000_000;
+    }
+}
@@ -0,0 +1,386 @@
+package com.localai.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.localai.exception.UploadException;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resumable uploads in parts: init, PUT each part at its byte offset, complete.
+ * Parts are streamed straight into the target file with positional writes, so
+ * memory use does not depend on part or file size, and parts may arrive in any
+ * order, in parallel, or again after a failure. Every part carries its SHA-256;
+ * a part that does not match is rejected and not counted as received. Bytes
+ * are only counted while they hold a verified part: writing over a received
+ * range un-counts it first, so a bad resend cannot leave corrupt bytes that
+ * {@link #complete} would accept.
+ *
+ * The received byte ranges of a session are saved next to its data file after
+ * every part, so an interrupted upload can be resumed, also across restarts.
+ * Completing an upload hands the file to {@link DocumentService#submit}.
+ * Sessions idle for {@code app.uploads.expiry-hours} are deleted.
+ *
+ * Completing, aborting and expiring close the session under its lock, and
+ * none of them proceeds while a part is being written: complete answers 409,
+ * expiry waits for the next sweep. A part that started before an abort stops
+ * at its next write and never saves the closed session again.
+ */
+@Service
+public class ChunkedUploadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedUploadService.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static class Session {
+        public String uploadId;
+        public String filename;
+        public String namespace;
+        public long size;
+        public long createdAt;
+        public long updatedAt;
+        public List<long[]> ranges = new ArrayList<>(); // received [start, end), sorted and merged
+        // Guarded by the session; not saved
+        private int writers; // parts being written
+        private boolean closed; // completed, aborted or expired: no more writes or saves
+
+        public long received() {
+            long received = 0;
+            for (long[] range : ranges) {
+                received += range[1] - range[0];
+            }
+            return received;
+        }
+
+        /** Start of the first missing byte range, or {@code size} when nothing is missing. */
+        public long nextOffset() {
+            return !ranges.isEmpty() && ranges.get(0)[0] == 0 ? ranges.get(0)[1] : 0;
+        }
+
+        void addRange(long start, long end) {
+            List<long[]> merged = new ArrayList<>(ranges.size() + 1);
+            for (long[] range : ranges) {
+                if (range[1] < start || range[0] > end) {
+                    merged.add(range);
+                } else {
+                    start = Math.min(start, range[0]);
+                    end = Math.max(end, range[1]);
+                }
+            }
+            merged.add(new long[] { start, end });
+            merged.sort((a, b) -> Long.compare(a[0], b[0]));
+            ranges = merged;
+        }
+
+        /** Un-counts [start, end); returns whether any of it had been received. */
+        boolean removeRange(long start, long end) {
+            List<long[]> kept = new ArrayList<>(ranges.size() + 1);
+            boolean removed = false;
+            for (long[] range : ranges) {
+                if (range[1] <= start || range[0] >= end) {
+                    kept.add(range);
+                    continue;
+                }
+                removed = true;
+                if (range[0] < start) {
+                    kept.add(new long[] { range[0], start });
+                }
+                if (range[1] > end) {
+                    kept.add(new long[] { end, range[1] });
+                }
+            }
+            ranges = kept;
+            return removed;
+        }
+    }
+
+    private final DocumentService documentService;
+    private final IngestionScheduler ingestionScheduler;
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final long maxBytes;
+    private final long expiryMillis;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper;
+
+    public ChunkedUploadService(DocumentService documentService, IngestionScheduler ingestionScheduler,
+            ObjectMapper objectMapper,
+            @Value("${app.uploads.dir:uploads}") String directory,
+            @Value("${app.uploads.max-bytes:2147483648}") long maxBytes,
+            @Value("${app.uploads.expiry-hours:24}") long expiryHours) throws IOException {
+        this.documentService = documentService;
+        this.ingestionScheduler = ingestionScheduler;
+        this.objectMapper = objectMapper;
+        this.directory = Paths.get(directory);
+        this.maxBytes = maxBytes;
+        this.expiryMillis = TimeUnit.HOURS.toMillis(Math.max(1, expiryHours));
+        Files.createDirectories(this.directory);
+        loadSessions();
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upload-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::expireInBackground, 10, 10, TimeUnit.MINUTES);
+    }
+
+    public Session init(String filename, long size, String namespace) throws IOException {
+        if (filename == null || filename.isBlank()) {
+            throw new UploadException(HttpStatus.BAD_REQUEST, "filename is required");
+        }
+        if (size <= 0 || size > maxBytes) {
+            throw new UploadException(HttpStatus.BAD_REQUEST,
+                    "size must be between 1 and " + maxBytes + " bytes, was " + size);
+        }
+        Session session = new Session();
+        session.uploadId = UUID.randomUUID().toString();
+        session.filename = Paths.get(filename).getFileName().toString();
+        try {
+            session.namespace = DocumentService.namespace(namespace);
+        } catch (IllegalArgumentException e) {
+            throw new UploadException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        session.size = size;
+        session.createdAt = System.currentTimeMillis();
+        session.updatedAt = session.createdAt;
+        Files.createFile(dataFile(session.uploadId));
+        save(session);
+        sessions.put(session.uploadId, session);
+        logger.info("Started upload {} of {} ({} bytes)", session.uploadId, session.filename, size);
+        return session;
+    }
+
+    /**
+     * Writes one part at {@code offset}, streaming from {@code body}, and
+     * records it once its SHA-256 matches {@code sha256} (hex).
+     */
+    public Session writePart(String uploadId, long offset, String sha256, InputStream body) throws IOException {
+        Session session = session(uploadId);
+        if (offset < 0 || offset >= session.size) {
+            throw new UploadException(HttpStatus.BAD_REQUEST,
+                    "offset " + offset + " is outside the upload (" + session.size + " bytes)");
+        }
+        synchronized (session) {
+            checkOpen(session);
+            session.writers++;
+        }
+        try {
+            return write(session, offset, sha256, body);
+        } finally {
+            synchronized (session) {
+                session.writers--;
+            }
+        }
+    }
+
+    private Session write(Session session, long offset, String sha256, InputStream body) throws IOException {
+        String uploadId = session.uploadId;
+        MessageDigest digest = DocumentService.sha256();
+        long written = 0;
+        try (FileChannel channel = FileChannel.open(dataFile(uploadId), StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                if (offset + written + read > session.size) {
+                    throw new UploadException(HttpStatus.BAD_REQUEST,
+                            "part at offset " + offset + " runs past the end of the upload");
+                }
+                digest.update(buffer, 0, read);
+                unreceive(session, offset + written, offset + written + read);
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                while (chunk.hasRemaining()) {
+                    written += channel.write(chunk, offset + written);
+                }
+            }
+        }
+        if (written == 0) {
+            throw new UploadException(HttpStatus.BAD_REQUEST, "empty part at offset " + offset);
+        }
+        String actual = HexFormat.of().formatHex(digest.digest());
+        if (!actual.equalsIgnoreCase(sha256)) {
+            // The bytes stay in the file but the range is not counted (any more), so the part must be sent again
+            throw new UploadException(HttpStatus.BAD_REQUEST, "checksum mismatch for part at offset " + offset
+                    + ": expected " + sha256 + ", received " + actual);
+        }
+        synchronized (session) {
+            checkOpen(session);
+            session.addRange(offset, offset + written);
+            session.updatedAt = System.currentTimeMillis();
+            save(session);
+        }
+        return session;
+    }
+
+    // Before bytes of a received range are overwritten, so it only counts again once the new part verifies
+    private void unreceive(Session session, long start, long end) throws IOException {
+        synchronized (session) {
+            // Aborted meanwhile: stop writing into a file that is gone
+            checkOpen(session);
+            if (session.removeRange(start, end)) {
+                save(session);
+            }
+        }
+    }
+
+    public Session status(String uploadId) {
+        return session(uploadId);
+    }
+
+    /**
+     * Hands a fully received upload to ingestion. Rejected with 409 while
+     * bytes are missing or a part is still being written; the session stays
+     * open so the gaps can be sent, or completion retried.
+     */
+    public DocumentService.Upload complete(String uploadId, boolean force) throws IOException {
+        Session session = session(uploadId);
+        synchronized (session) {
+            checkOpen(session);
+            if (session.writers > 0) {
+                throw new UploadException(HttpStatus.CONFLICT, "upload " + uploadId + " has "
+                        + session.writers + " parts still being written");
+            }
+            if (session.received() != session.size) {
+                throw new UploadException(HttpStatus.CONFLICT, "upload " + uploadId + " is incomplete: "
+                        + session.received() + " of " + session.size + " bytes received");
+            }
+            // Fail while the session can still be completed again later
+            ingestionScheduler.checkCapacity();
+            session.closed = true;
+            sessions.remove(uploadId, session);
+        }
+        Path data = dataFile(uploadId);
+        String documentId;
+        try (InputStream in = Files.newInputStream(data)) {
+            documentId = DocumentService.copyAndHash(in, OutputStream.nullOutputStream());
+        }
+        Files.deleteIfExists(sessionFile(uploadId));
+        Path file = Files.move(data, directory.resolve(uploadId + ".pdf"), StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Completed upload {} of {} as document {}", uploadId, session.filename, documentId);
+        return documentService.submit(file, session.filename, documentId, force,
+                DocumentService.namespace(session.namespace));
+    }
+
+    public void abort(String uploadId) {
+        Session session = session(uploadId);
+        synchronized (session) {
+            checkOpen(session);
+            session.closed = true;
+            sessions.remove(uploadId, session);
+        }
+        delete(uploadId);
+    }
+
+    private Session session(String uploadId) {
+        Session session = sessions.get(uploadId);
+        if (session == null) {
+            throw new UploadException(HttpStatus.NOT_FOUND, "unknown upload " + uploadId);
+        }
+        return session;
+    }
+
+    // Needs the session lock
+    private static void checkOpen(Session session) {
+        if (session.closed) {
+            throw new UploadException(HttpStatus.NOT_FOUND, "unknown upload " + session.uploadId);
+        }
+    }
+
+    private Path dataFile(String uploadId) {
+        return directory.resolve(uploadId + ".data");
+    }
+
+    private Path sessionFile(String uploadId) {
+        return directory.resolve(uploadId + ".json");
+    }
+
+    // Needs the session lock; a closed session is not written back, so it cannot reappear after a restart
+    private void save(Session session) throws IOException {
+        if (session.closed) {
+            return;
+        }
+        Path tmp = directory.resolve(session.uploadId + ".json.tmp");
+        objectMapper.writeValue(tmp.toFile(), session);
+        Files.move(tmp, sessionFile(session.uploadId), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void delete(String uploadId) {
+        try {
+            Files.deleteIfExists(sessionFile(uploadId));
+            Files.deleteIfExists(dataFile(uploadId));
+        } catch (IOException e) {
+            logger.warn("Could not delete files of upload {}", uploadId, e);
+        }
+    }
+
+    private void loadSessions() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.json")) {
+            for (Path file : files) {
+                Session session = objectMapper.readValue(file.toFile(), Session.class);
+                if (Files.exists(dataFile(session.uploadId))) {
+                    sessions.put(session.uploadId, session);
+                } else {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        // Data without a session (crash during init or complete) cannot be resumed
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.{data,pdf,tmp}")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!sessions.containsKey(name.substring(0, name.indexOf('.')))) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        if (!sessions.isEmpty()) {
+            logger.info("Resumable uploads: {} open sessions in {}", sessions.size(), directory);
+        }
+    }
+
+    private void expireInBackground() {
+        long expiredBefore = System.currentTimeMillis() - expiryMillis;
+        for (Session session : sessions.values()) {
+            synchronized (session) {
+                if (session.closed || session.writers > 0 || session.updatedAt >= expiredBefore) {
+                    continue;
+                }
+                session.closed = true;
+                sessions.remove(session.uploadId, session);
+            }
+            delete(session.uploadId);
+            logger.info("Expired idle upload {} of {}", session.uploadId, session.filename);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+}
@@ -0,0 +1,316 @@
+package com.localai.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.localai.exception.InferenceBusyException;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.ollama.api.OllamaOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Classifies short texts into a category with the Lite model, many per
+ * inference. Texts submitted within {@code app.classify.batch.window-ms} of
+ * each other, up to {@code app.classify.batch.max-items}, are numbered into
+ * one prompt that asks for a JSON object of number to category; the answer
+ * is split back onto the callers. Identical texts in a batch share a number.
+ *
+ * An item the answer leaves out or garbles is classified on its own with
+ * the single-text prompt, as a separate task in the scheduler's
+ * {@link InferenceScheduler.Lane#BACKGROUND BACKGROUND} lane, so repairing a
+ * bad answer neither holds up its batch thread nor crowds out other work.
+ * Batch and single prompts run at temperature 0 through the
+ * {@link ResponseCache}, so repeats cost no inference. At most
+ * {@code app.classify.batch.parallelism} batches are in flight at once.
+ *
+ * At most {@code app.classify.batch.queue-capacity} texts may be waiting or
+ * in flight; a submission that does not fit is refused with
+ * {@link InferenceBusyException} (429 + Retry-After), like a full
+ * {@link InferenceScheduler} queue. {@link #classifyAll} admits a list as a
+ * whole, in slices of at most that many texts.
+ */
+@Service
+public class ClassificationBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClassificationBatcher.class);
+
+    private static final String CATEGORIES = "a simple category (e.g. Food, Transport, Health, Work, Other)";
+    private static final int MAX_CATEGORY_LENGTH = 40;
+    private static final InferenceScheduler.Lane FALLBACK_LANE = InferenceScheduler.Lane.BACKGROUND;
+
+    private final ResponseCache responseCache;
+    private final ObjectMapper objectMapper;
+    private final int maxItems;
+    private final long windowNanos;
+    private final int parallelism;
+    private final int queueCapacity;
+    // One permit per text waiting or in flight; both queues below hold at most that many
+    private final Semaphore slots;
+    private final BlockingQueue<Item> pending;
+    private final ThreadPoolExecutor batches;
+    private final Thread collector;
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong itemCount = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong malformedBatches = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile double averageBatchMillis = 10_000; // seeded guess for Retry-After; racy updates are fine
+
+    public ClassificationBatcher(ResponseCache responseCache, ObjectMapper objectMapper,
+            @Value("${app.classify.batch.max-items:32}") int maxItems,
+            @Value("${app.classify.batch.window-ms:25}") long windowMillis,
+            @Value("${app.classify.batch.parallelism:2}") int parallelism,
+            @Value("${app.classify.batch.queue-capacity:10000}") int queueCapacity) {
+        this.responseCache = responseCache;
+        this.objectMapper = objectMapper;
+        this.maxItems = Math.max(1, maxItems);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, windowMillis));
+        this.parallelism = Math.max(1, parallelism);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.slots = new Semaphore(this.queueCapacity);
+        this.pending = new LinkedBlockingQueue<>(this.queueCapacity);
+        AtomicInteger threads = new AtomicInteger();
+        // A text is in at most one queued task (its batch, or later its fallback), so this queue never overflows
+        this.batches = new ThreadPoolExecutor(this.parallelism, this.parallelism, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(this.queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "classify-batch-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.collector = new Thread(this::collect, "classify-collector");
+        this.collector.setDaemon(true);
+        this.collector.start();
+    }
+
+    /**
+     * The category of {@code text}, once its batch has been answered.
+     * Throws {@link InferenceBusyException} when the queue is full.
+     */
+    public CompletableFuture<String> submit(String text) {
+        admit(1);
+        return enqueue(text);
+    }
+
+    /**
+     * Categories of {@code texts}, in order; waits for all of them. Throws
+     * {@link InferenceBusyException} when a slice does not fit in the queue.
+     */
+    public List<String> classifyAll(List<String> texts) {
+        List<String> result = new ArrayList<>(texts.size());
+        for (int start = 0; start < texts.size(); start += queueCapacity) {
+            List<String> slice = texts.subList(start, Math.min(texts.size(), start + queueCapacity));
+            admit(slice.size());
+            List<CompletableFuture<String>> categories = slice.stream().map(this::enqueue).toList();
+            for (CompletableFuture<String> category : categories) {
+                result.add(InferenceScheduler.await(category));
+            }
+        }
+        return result;
+    }
+
+    public String classify(String text) {
+        return InferenceScheduler.await(submit(text));
+    }
+
+    // Takes count slots, all or none
+    private void admit(int count) {
+        if (!slots.tryAcquire(count)) {
+            rejected.incrementAndGet();
+            throw new InferenceBusyException("Too many texts waiting for classification (" + queueCapacity
+                    + " at most)", retryAfterSeconds());
+        }
+    }
+
+    // Needs a slot already taken; the slot is returned once the text's category is settled
+    private CompletableFuture<String> enqueue(String text) {
+        Item item = new Item(text == null ? "" : text.strip());
+        item.category.whenComplete((category, failure) -> slots.release());
+        pending.add(item);
+        return item.category;
+    }
+
+    // Rough time until the queue ahead has been worked off: its batches spread over the batch threads
+    private long retryAfterSeconds() {
+        long waitingBatches = (queueCapacity - slots.availablePermits() + maxItems - 1) / maxItems;
+        return Math.max(1, Math.round(averageBatchMillis * waitingBatches / parallelism / 1000));
+    }
+
+    // Gathers a batch: the first waiting item, then whatever arrives within the window, up to maxItems
+    private void collect() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Item> batch = new ArrayList<>();
+                batch.add(pending.take());
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxItems) {
+                    pending.drainTo(batch, maxItems - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxItems || remaining <= 0) {
+                        break;
+                    }
+                    Item next = pending.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                try {
+                    batches.execute(() -> run(batch));
+                } catch (RejectedExecutionException e) {
+                    // Shutting down
+                    batch.forEach(item -> item.category.completeExceptionally(e));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(List<Item> batch) {
+        // Identical texts get one number
+        Map<String, List<Item>> byText = new LinkedHashMap<>();
+        for (Item item : batch) {
+            byText.computeIfAbsent(item.text, text -> new ArrayList<>()).add(item);
+        }
+        List<String> texts = new ArrayList<>(byText.keySet());
+        batchCount.incrementAndGet();
+        itemCount.addAndGet(batch.size());
+        long start = System.nanoTime();
+        try {
+            if (texts.size() == 1) {
+                complete(byText.get(texts.get(0)), classifyOne(texts.get(0), InferenceScheduler.Lane.STANDARD));
+                return;
+            }
+            String[] categories = classifyBatch(texts);
+            for (int i = 0; i < texts.size(); i++) {
+                List<Item> items = byText.get(texts.get(i));
+                if (categories[i] != null) {
+                    complete(items, categories[i]);
+                } else {
+                    fallbacks.incrementAndGet();
+                    String text = texts.get(i);
+                    batches.execute(() -> fallback(text, items));
+                }
+            }
+        } catch (RuntimeException e) {
+            batch.forEach(item -> item.category.completeExceptionally(e));
+        } finally {
+            averageBatchMillis = 0.8 * averageBatchMillis + 0.2 * (System.nanoTime() - start) / 1e6;
+        }
+    }
+
+    private void fallback(String text, List<Item> items) {
+        try {
+            complete(items, classifyOne(text, FALLBACK_LANE));
+        } catch (RuntimeException e) {
+            items.forEach(item -> item.category.completeExceptionally(e));
+        }
+    }
+
+    private static void complete(List<Item> items, String category) {
+        items.forEach(item -> item.category.complete(category));
+    }
+
+    // The category of each text, or null where the answer left it out or garbled it
+    private String[] classifyBatch(List<String> texts) {
+        StringBuilder prompt = new StringBuilder("Classify each numbered text below into ").append(CATEGORIES)
+                .append(". Respond with ONLY a JSON object that maps every number to its category name, e.g. ")
+                .append("{\"1\": \"Food\", \"2\": \"Other\"}.\n");
+        for (int i = 0; i < texts.size(); i++) {
+            // One line per text, so a newline inside it cannot start a fake item
+            prompt.append(i + 1).append(". ").append(texts.get(i).replaceAll("\\s+", " ")).append('\n');
+        }
+        String answer = responseCache.call(new Prompt(prompt.toString(), OllamaOptions.create()
+                .withModel(ModelManagerService.LITE_MODEL).withTemperature(0f).withFormat("json")),
+                InferenceScheduler.Lane.STANDARD);
+
+        JsonNode parsed = null;
+        try {
+            parsed = objectMapper.readTree(answer);
+        } catch (IOException e) {
+            // handled below like any other unusable answer
+        }
+        if (parsed == null || !parsed.isObject()) {
+            malformedBatches.incrementAndGet();
+            logger.warn("Unusable answer for a batch of {} texts, classifying them one by one", texts.size());
+        }
+        String[] categories = new String[texts.size()];
+        for (int i = 0; i < texts.size(); i++) {
+            JsonNode value = parsed != null && parsed.isObject() ? parsed.get(String.valueOf(i + 1)) : null;
+            categories[i] = value != null && value.isTextual() ? clean(value.asText()) : null;
+        }
+        return categories;
+    }
+
+    // The single-text prompt, also used for items a batch answer did not cover
+    private String classifyOne(String text, InferenceScheduler.Lane lane) {
+        String promptText = "Classify the following text into " + CATEGORIES
+                + ". Respond with ONLY the category name.\nText: " + text;
+        // Temperature 0 makes the answer repeatable, so repeats come from the response cache
+        Prompt prompt = new Prompt(promptText,
+                OllamaOptions.create().withModel(ModelManagerService.LITE_MODEL).withTemperature(0f));
+        String category = clean(responseCache.call(prompt, lane));
+        return category != null ? category : "Other";
+    }
+
+    // A usable category name, or null
+    private static String clean(String category) {
+        if (category == null) {
+            return null;
+        }
+        String cleaned = category.strip().replaceAll("^[\"'*\\s]+|[\"'*.\\s]+$", "");
+        return cleaned.isEmpty() || cleaned.length() > MAX_CATEGORY_LENGTH || cleaned.contains("\n") ? null : cleaned;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long batchesRun = batchCount.get();
+        stats.put("maxItems", maxItems);
+        stats.put("windowMillis", TimeUnit.NANOSECONDS.toMillis(windowNanos));
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("queued", queueCapacity - slots.availablePermits());
+        stats.put("pending", pending.size());
+        stats.put("batches", batchesRun);
+        stats.put("items", itemCount.get());
+        stats.put("averageBatchSize", batchesRun == 0 ? 0.0 : (double) itemCount.get() / batchesRun);
+        stats.put("malformedBatches", malformedBatches.get());
+        stats.put("fallbacks", fallbacks.get());
+        stats.put("rejected", rejected.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        collector.interrupt();
+        batches.shutdownNow();
+    }
+
+    private static final class Item {
+
+        private final String text;
+        private final CompletableFuture<String> category = new CompletableFuture<>();
+
+        private Item(String text) {
+            this.text = text;
+        }
+    }
+}
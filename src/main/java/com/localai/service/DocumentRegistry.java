@@ -0,0 +1,100 @@
+package com.localai.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.localai.vectorstore.MappedVectorStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent registry of ingested documents. A document's id is the SHA-256
+ * of its file content, so an identical upload finds the earlier ingestion and
+ * is not embedded again. Every chunk of a document carries the id as
+ * {@code document_id} metadata, and the namespace it was ingested into as
+ * {@code namespace}.
+ *
+ * Kept in memory and rewritten as JSON to {@code app.documents.registry-path}
+ * (temp file + atomic rename) on every change.
+ */
+@Service
+public class DocumentRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentRegistry.class);
+
+    public record Entry(String documentId, String filename, int pageCount, int chunkCount, long ingestedAt,
+            String namespace) {
+    }
+
+    private final ObjectMapper objectMapper;
+    private final Path file;
+    private final Map<String, Entry> documents = new LinkedHashMap<>();
+
+    public DocumentRegistry(ObjectMapper objectMapper,
+            @Value("${app.documents.registry-path:documents.json}") String path) throws IOException {
+        this.objectMapper = objectMapper;
+        this.file = Paths.get(path);
+        if (Files.exists(file)) {
+            for (Entry entry : objectMapper.readValue(file.toFile(), Entry[].class)) {
+                if (entry.namespace() == null) {
+                    // Ingested before namespaces existed
+                    entry = new Entry(entry.documentId(), entry.filename(), entry.pageCount(), entry.chunkCount(),
+                            entry.ingestedAt(), MappedVectorStore.DEFAULT_NAMESPACE);
+                }
+                documents.put(entry.documentId(), entry);
+            }
+            logger.info("Loaded {} ingested documents from {}", documents.size(), file);
+        }
+    }
+
+    public synchronized Entry find(String documentId) {
+        return documents.get(documentId);
+    }
+
+    public synchronized List<Entry> list() {
+        return new ArrayList<>(documents.values());
+    }
+
+    public synchronized void register(Entry entry) throws IOException {
+        documents.put(entry.documentId(), entry);
+        save();
+    }
+
+    public synchronized void registerAll(List<Entry> entries) throws IOException {
+        for (Entry entry : entries) {
+            documents.put(entry.documentId(), entry);
+        }
+        save();
+    }
+
+    public synchronized boolean remove(String documentId) throws IOException {
+        if (documents.remove(documentId) == null) {
+            return false;
+        }
+        save();
+        return true;
+    }
+
+    public synchronized void clear() throws IOException {
+        documents.clear();
+        save();
+    }
+
+    private void save() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = parent.resolve(file.getFileName() + ".tmp");
+        objectMapper.writeValue(tmp.toFile(), new ArrayList<>(documents.values()));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -1,13 +1,10 @@
 package com.localai.service;
 
+import com.localai.exception.UploadException;
+import com.localai.vectorstore.MappedVectorStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.ai.document.Document;
-import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
-import org.springframework.ai.transformer.splitter.TokenTextSplitter;
-import org.springframework.ai.vectorstore.SimpleVectorStore;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -16,84 +13,164 @@ import org.apache.pdfbox.pdmodel.PDDocumentInformation;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 @Service
 public class DocumentService {
 
     private static final Logger logger = LoggerFactory.getLogger(DocumentService.class);
-    private final SimpleVectorStore vectorStore;
+    private static final Pattern NAMESPACE = Pattern.compile("[a-z0-9][a-z0-9_-]{0,63}");
+    private final MappedVectorStore vectorStore;
     private final ProcessingStatusService statusService;
+    private final IngestionScheduler ingestionScheduler;
+    private final PdfIngestionPipeline ingestionPipeline;
+    private final DocumentRegistry documentRegistry;
+    // Content hash -> job currently ingesting it, or DELETING
+    private final Map<String, String> inFlight = new HashMap<>();
+    // Marks a document whose chunks are being deleted; job ids are UUIDs, so it cannot clash with one
+    private static final String DELETING = "deleting";
 
-    public DocumentService(SimpleVectorStore vectorStore, ProcessingStatusService statusService) {
+    public DocumentService(MappedVectorStore vectorStore, ProcessingStatusService statusService,
+            IngestionScheduler ingestionScheduler, PdfIngestionPipeline ingestionPipeline,
+            DocumentRegistry documentRegistry) {
         this.vectorStore = vectorStore;
         this.statusService = statusService;
+        this.ingestionScheduler = ingestionScheduler;
+        this.ingestionPipeline = ingestionPipeline;
+        this.documentRegistry = documentRegistry;
     }
 
-    public String initProcess(MultipartFile file) throws IOException {
-        String jobId = statusService.createJob();
+    /**
+     * The outcome of an upload. {@code existing} is set when the same content
+     * was ingested before; {@code jobId} is set when a job was queued, or when
+     * an identical upload is still being ingested ({@code duplicate}).
+     */
+    public record Upload(String documentId, String jobId, boolean duplicate, DocumentRegistry.Entry existing) {
+    }
 
-        // Save to temp file strictly for the async process to pick up
+    public Upload initProcess(MultipartFile file, boolean force, String namespace) throws IOException {
+        namespace = namespace(namespace);
+        // Save to temp file strictly for the ingestion worker to pick up,
+        // hashing on the way so repeat uploads are recognised without another pass
         Path tempFile = Files.createTempFile("upload-", file.getOriginalFilename());
-        file.transferTo(tempFile.toFile());
-
-        // Trigger Async
-        processInBackground(jobId, tempFile.toFile(), file.getOriginalFilename());
+        String documentId;
+        try (InputStream in = file.getInputStream(); OutputStream out = Files.newOutputStream(tempFile)) {
+            documentId = copyAndHash(in, out);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        return submit(tempFile, file.getOriginalFilename(), documentId, force, namespace);
+    }
 
-        return jobId;
+    /**
+     * Queues ingestion of a file whose content hash is {@code documentId},
+     * unless that content was already ingested or is being ingested and
+     * {@code force} is false. Its chunks go into {@code namespace}. Takes
+     * ownership of {@code tempFile}.
+     */
+    public Upload submit(Path tempFile, String filename, String documentId, boolean force, String namespace)
+            throws IOException {
+        String jobId;
+        synchronized (inFlight) {
+            DocumentRegistry.Entry existing = documentRegistry.find(documentId);
+            String running = inFlight.get(documentId);
+            if (DELETING.equals(running)) {
+                Files.deleteIfExists(tempFile);
+                throw new UploadException(HttpStatus.CONFLICT, "Document " + documentId + " is being deleted");
+            }
+            if (!force && (existing != null || running != null)) {
+                Files.deleteIfExists(tempFile);
+                logger.info("Skipping ingestion of {}: identical content already {} as document {}", filename,
+                        existing != null ? "ingested" : "queued", documentId);
+                return new Upload(documentId, running, true, existing);
+            }
+            try {
+                ingestionScheduler.checkCapacity();
+            } catch (RuntimeException e) {
+                Files.deleteIfExists(tempFile);
+                throw e;
+            }
+            jobId = statusService.createJob();
+            inFlight.put(documentId, jobId);
+        }
+        try {
+            // Smaller files are scheduled first
+            ingestionScheduler.submit(jobId, Files.size(tempFile),
+                    () -> processInBackground(jobId, tempFile.toFile(), filename, documentId, namespace));
+        } catch (IOException | RuntimeException e) {
+            release(documentId, jobId);
+            statusService.removeJob(jobId);
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        return new Upload(documentId, jobId, false, null);
     }
 
-    @org.springframework.scheduling.annotation.Async
-    public void processInBackground(String jobId, File tempFile, String originalFilename) {
+    // Runs on an IngestionScheduler worker
+    public void processInBackground(String jobId, File tempFile, String originalFilename, String documentId,
+            String namespace) {
         statusService.updateStatus(jobId, "PROCESSING", "Starting ingestion for " + originalFilename);
+        // Chunks of an earlier ingestion of the same content (forced re-ingest), replaced on success;
+        // null until read, which waits for the store to load and fails if that load failed
+        List<String> previousChunks = null;
 
         try {
-            logger.info("Processing PDF Async: {}", originalFilename);
+            previousChunks = vectorStore.chunkIds(documentId);
+            logger.info("Processing PDF: {}", originalFilename);
             Map<String, Object> metadata = new HashMap<>();
 
-            Resource pdfResource = new FileSystemResource(tempFile);
-
-            // 1. Read PDF
+            // Read -> split -> embed -> index as overlapping stages; chunks are
+            // searchable batch by batch while the rest of the file is still read.
             statusService.updateStatus(jobId, "PROCESSING", "reading_pdf");
-            PagePdfDocumentReader pdfReader = new PagePdfDocumentReader(pdfResource);
-            List<Document> documents = pdfReader.get();
-            logger.info("Extracted {} pages/documents from PDF.", documents.size());
-
-            // Collect full text - Optional/Lite logic
-            StringBuilder fullText = new StringBuilder();
-            for (Document doc : documents) {
-                fullText.append(doc.getContent()).append("\n\n");
+            PdfIngestionPipeline.Result result;
+            // The extracted text goes to a spill file, not into the job status
+            try (Writer text = statusService.openTextWriter(jobId)) {
+                result = ingestionPipeline.ingest(tempFile, originalFilename,
+                        Map.of("document_id", documentId, "namespace", namespace), text,
+                        (step, done, total, chunks) -> statusService.updateProgress(jobId, step, done, total, chunks));
+            }
+            logger.info("Added {} chunks from {} pages to Vector Store.", result.chunkCount(), result.pageCount());
+            documentRegistry.register(new DocumentRegistry.Entry(documentId, originalFilename, result.pageCount(),
+                    result.chunkCount(), System.currentTimeMillis(), namespace));
+            if (!previousChunks.isEmpty()) {
+                vectorStore.delete(previousChunks);
+                logger.info("Replaced {} chunks of the previous ingestion of {}", previousChunks.size(), documentId);
             }
-            metadata.put("extracted_text", fullText.toString());
-            metadata.put("filename", originalFilename);
-            metadata.put("page_count", documents.size());
-
-            // 3. Split into tokens
-            statusService.updateStatus(jobId, "PROCESSING", "splitting_text");
-            TokenTextSplitter splitter = new TokenTextSplitter();
-            List<Document> chunks = splitter.apply(documents);
-            logger.info("Split into {} chunks.", chunks.size());
-
-            // 4. Add to Vector Store
-            statusService.updateStatus(jobId, "PROCESSING", "embedding_chunks");
-            vectorStore.add(chunks);
-            logger.info("Added chunks to Vector Store.");
 
-            // 5. Persist
-            File storeFile = new File("vectorstore.json");
-            vectorStore.save(storeFile);
-            logger.info("Vector store saved.");
+            metadata.put("document_id", documentId);
+            metadata.put("namespace", namespace);
+            metadata.put("filename", originalFilename);
+            metadata.put("page_count", result.pageCount());
+            metadata.put("text_length", result.textLength());
+            metadata.put("text_url", "/api/docs/text/" + jobId);
 
             statusService.updateStatus(jobId, "COMPLETED", "Document ingested successfully", metadata);
 
         } catch (Exception e) {
-            logger.error("Async Processing Failed", e);
+            logger.error("Ingestion Failed", e);
+            if (previousChunks != null) {
+                removePartialChunks(documentId, previousChunks);
+            }
+            statusService.deleteText(jobId);
             statusService.updateStatus(jobId, "ERROR", e.getMessage());
         } finally {
+            release(documentId, jobId);
             // Cleanup
             try {
                 Files.deleteIfExists(tempFile.toPath());
@@ -102,45 +179,139 @@ public class DocumentService {
         }
     }
 
-    public void clearStore() {
+    /**
+     * Marks {@code documentId} as being ingested by {@code jobId}, for a job
+     * that ingests it itself, e.g. a bulk job. Applies the same rule as
+     * {@link #submit}: unless {@code force}, content that was already
+     * ingested or is being ingested is not claimed and false is returned.
+     * A claim blocks uploads of the same content and deletes of the document
+     * until it is {@link #release released}. Fails while the document is
+     * being deleted.
+     */
+    public boolean claim(String documentId, String jobId, boolean force) {
+        synchronized (inFlight) {
+            if (DELETING.equals(inFlight.get(documentId))) {
+                throw new IllegalStateException("Document " + documentId + " is being deleted");
+            }
+            if (!force && (documentRegistry.find(documentId) != null || inFlight.containsKey(documentId))) {
+                return false;
+            }
+            inFlight.put(documentId, jobId);
+            return true;
+        }
+    }
+
+    public void release(String documentId, String jobId) {
+        synchronized (inFlight) {
+            inFlight.remove(documentId, jobId);
+        }
+    }
+
+    // Chunks a failed ingestion already indexed would otherwise stay searchable
+    private void removePartialChunks(String documentId, List<String> previousChunks) {
+        try {
+            List<String> partial = new ArrayList<>(vectorStore.chunkIds(documentId));
+            partial.removeAll(new HashSet<>(previousChunks));
+            if (!partial.isEmpty()) {
+                vectorStore.delete(partial);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Could not remove partial chunks of {}", documentId, e);
+        }
+    }
+
+    /**
+     * Removes a document and its chunks from the store. Returns false when no
+     * such document is known; fails while it is being ingested or deleted,
+     * and with {@link com.localai.vectorstore.VectorStoreLoadingException}
+     * while the store is still loading. The document is only marked under
+     * the in-flight lock; the chunks are deleted outside it, and the registry
+     * entry is removed once they are gone, so a failed delete leaves the
+     * document listed and can be retried.
+     */
+    public boolean deleteDocument(String documentId) throws IOException {
+        synchronized (inFlight) {
+            String running = inFlight.get(documentId);
+            if (running != null) {
+                throw new IllegalStateException("Document " + documentId + " is being "
+                        + (DELETING.equals(running) ? "deleted" : "ingested"));
+            }
+            inFlight.put(documentId, DELETING);
+        }
         try {
-            File storeFile = new File("vectorstore.json");
-
-            // 1. Delete existing file
-            if (storeFile.exists()) {
-                if (storeFile.delete()) {
-                    logger.info("Vector Store persistence file deleted (Nuked).");
-                } else {
-                    logger.error("Failed to delete Vector Store file.");
-                }
+            int chunks = vectorStore.deleteDocument(documentId);
+            boolean registered = documentRegistry.remove(documentId);
+            if (registered || chunks > 0) {
+                logger.info("Deleted document {} ({} chunks)", documentId, chunks);
             }
+            return registered || chunks > 0;
+        } finally {
+            release(documentId, DELETING);
+        }
+    }
 
-            // 2. Clear In-Memory Store
-            // SimpleVectorStore loads from file. If we load an empty file, it might clear
-            // it?
-            // Or we just rely on restarting. Ideally we want runtime clearing.
-            // Since SimpleVectorStore.load() typically replaces or adds, we need to be
-            // careful.
-            // If it adds, we are stuck. But assuming standard serialization
-            // deserialization...
+    /**
+     * The text of an ingested document, rebuilt from its chunks in order, or
+     * null when no such document is registered. Unlike the text of the job
+     * that ingested it, this lasts as long as the document, so a duplicate
+     * upload can be worked with like a fresh one.
+     */
+    public String documentText(String documentId) {
+        if (documentRegistry.find(documentId) == null) {
+            return null;
+        }
+        return String.join("\n", vectorStore.chunkTexts(documentId));
+    }
 
-            // Workaround: We cannot easily access the internal map to clear it without
-            // reflection
-            // or an API update.
-            // BEST EFFORT: Create a valid empty JSON file and load it.
-            // Spring AI SimpleVectorStore expects a JSON map or list.
-            // Let's try writing an empty map JSON.
+    /** Every ingested document, or those of one namespace when {@code namespace} is not blank. */
+    public List<DocumentRegistry.Entry> listDocuments(String namespace) {
+        if (namespace == null || namespace.isBlank()) {
+            return documentRegistry.list();
+        }
+        String wanted = namespace(namespace);
+        return documentRegistry.list().stream().filter(entry -> wanted.equals(entry.namespace())).toList();
+    }
 
-            com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-            mapper.writeValue(storeFile, new java.util.HashMap<>()); // write {}
+    /**
+     * Validates a namespace name (lower-case letters, digits, '-' and '_');
+     * blank means {@link MappedVectorStore#DEFAULT_NAMESPACE}.
+     */
+    public static String namespace(String name) {
+        if (name == null || name.isBlank()) {
+            return MappedVectorStore.DEFAULT_NAMESPACE;
+        }
+        String normalized = name.trim().toLowerCase(Locale.ROOT);
+        if (!NAMESPACE.matcher(normalized).matches()) {
+            throw new IllegalArgumentException("Invalid namespace '" + name
+                    + "': use up to 64 letters, digits, '-' or '_'");
+        }
+        return normalized;
+    }
 
-            // 3. Reload from the empty file
-            vectorStore.load(storeFile);
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
 
-            logger.info("Vector Store in-memory state reset (attempted).");
+    /** Copies {@code in} to {@code out} and returns the SHA-256 (hex) of what was copied. */
+    static String copyAndHash(InputStream in, OutputStream out) throws IOException {
+        MessageDigest digest = sha256();
+        new DigestInputStream(in, digest).transferTo(out);
+        return HexFormat.of().formatHex(digest.digest());
+    }
 
+    /** Wipes every document and returns the (now empty) store's stats. */
+    public Map<String, Object> clearStore() {
+        try {
+            vectorStore.clear();
+            documentRegistry.clear();
+            logger.info("Vector Store wiped (Nuked).");
         } catch (Exception e) {
             logger.error("Error clearing vector store", e);
         }
+        return vectorStore.stats();
     }
 }
@@ -0,0 +1,264 @@
+package com.localai.service;
+
+import com.localai.vectorstore.EmbeddingCache;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Embeds chunks before they are added to the vector store. Embeddings are
+ * looked up in a persistent cache keyed by model and content hash first, so
+ * re-ingesting an unchanged document makes no calls to Ollama.
+ *
+ * Cache misses are sent in batches of {@code app.embedding.batch-size} on a
+ * shared pool of {@code app.embedding.parallelism} threads, so concurrent
+ * ingestion jobs together never have more requests in flight than that.
+ * A failed batch is retried on its own with a linear backoff.
+ *
+ * Query embeddings for retrieval go through a separate in-heap LRU of
+ * {@code app.embedding.query-cache.max-entries} query texts, so a repeated
+ * chat question skips the Ollama round-trip. It is emptied whenever the
+ * embedding model is pulled again, since the tag may now point at other
+ * weights; a different model name means a restart and a fresh cache anyway.
+ */
+@Service
+public class EmbeddingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingService.class);
+
+    private final EmbeddingClient embeddingClient;
+    private final String model;
+    private final EmbeddingCache cache; // null when disabled
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+    private final ExecutorService executor;
+    private final int queryCacheMaxEntries; // 0 disables the query cache
+    private final LinkedHashMap<String, float[]> queryCache;
+    private long queryHits;
+    private long queryMisses;
+    private long queryInvalidations;
+    private long queryGeneration; // bumped on invalidation; embeddings started earlier are not cached
+
+    public EmbeddingService(EmbeddingClient embeddingClient,
+            @Value("${spring.ai.ollama.embedding.model:nomic-embed-text}") String model,
+            @Value("${app.embedding.cache.enabled:true}") boolean cacheEnabled,
+            @Value("${app.embedding.cache.path:embedding-cache.bin}") String cachePath,
+            @Value("${app.embedding.cache.max-entries:50000}") int cacheMaxEntries,
+            @Value("${app.embedding.batch-size:16}") int batchSize,
+            @Value("${app.embedding.parallelism:4}") int parallelism,
+            @Value("${app.embedding.max-attempts:3}") int maxAttempts,
+            @Value("${app.embedding.retry-backoff-ms:500}") long retryBackoffMillis,
+            @Value("${app.embedding.query-cache.max-entries:1000}") int queryCacheMaxEntries) throws IOException {
+        this.embeddingClient = embeddingClient;
+        this.model = model;
+        this.cache = cacheEnabled ? new EmbeddingCache(Paths.get(cachePath), cacheMaxEntries) : null;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.queryCacheMaxEntries = Math.max(0, queryCacheMaxEntries);
+        this.queryCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > EmbeddingService.this.queryCacheMaxEntries;
+            }
+        };
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+            Thread thread = new Thread(runnable, "embedding-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets the embedding on every document that does not have one yet.
+     */
+    public void embed(List<Document> documents) throws IOException {
+        embed(documents, (done, total) -> {
+        });
+    }
+
+    /**
+     * Sets the embedding on every document that does not have one yet,
+     * reporting (chunks done, total chunks) after the cache lookup and after
+     * every completed batch.
+     */
+    public void embed(List<Document> documents, BiConsumer<Integer, Integer> progress) throws IOException {
+        List<Document> pending = new ArrayList<>();
+        for (Document document : documents) {
+            if (document.getEmbedding() != null && !document.getEmbedding().isEmpty()) {
+                continue;
+            }
+            List<Double> embedding = cache != null ? cache.get(model, document.getContent()) : null;
+            if (embedding != null) {
+                document.setEmbedding(embedding);
+            } else {
+                pending.add(document);
+            }
+        }
+        int total = documents.size();
+        AtomicInteger done = new AtomicInteger(total - pending.size());
+        progress.accept(done.get(), total);
+
+        List<Future<?>> batches = new ArrayList<>();
+        for (int start = 0; start < pending.size(); start += batchSize) {
+            List<Document> batch = pending.subList(start, Math.min(start + batchSize, pending.size()));
+            batches.add(executor.submit(() -> {
+                embedBatch(batch);
+                progress.accept(done.addAndGet(batch.size()), total);
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> batch : batches) {
+                batch.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while embedding chunks", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Embedding failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            batches.forEach(batch -> batch.cancel(true));
+        }
+        logger.info("Embedded {} chunks ({} from cache, {} batches).", total, total - pending.size(),
+                batches.size());
+    }
+
+    /**
+     * Embedding of a search query, served from the query LRU when the same
+     * text was embedded before. Always rounded to float precision, as the
+     * LRU stores it and as the vector store scores it.
+     */
+    public List<Double> embedQuery(String text) {
+        long generation;
+        synchronized (queryCache) {
+            float[] cached = queryCache.get(text);
+            if (cached != null) {
+                queryHits++;
+                return toList(cached);
+            }
+            queryMisses++;
+            generation = queryGeneration;
+        }
+        List<Double> embedding = embeddingClient.embed(text);
+        float[] vector = new float[embedding.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = embedding.get(i).floatValue();
+        }
+        if (queryCacheMaxEntries > 0) {
+            synchronized (queryCache) {
+                if (generation == queryGeneration) {
+                    queryCache.put(text, vector);
+                }
+            }
+        }
+        // Rounded like a cached hit, so a question scores the same whether it was cached or not
+        return toList(vector);
+    }
+
+    /**
+     * Drops all cached query embeddings, e.g. because the embedding model
+     * was replaced.
+     */
+    public void invalidateQueryCache() {
+        synchronized (queryCache) {
+            queryCache.clear();
+            queryGeneration++;
+            queryInvalidations++;
+        }
+        logger.info("Query embedding cache cleared.");
+    }
+
+    /** Whether {@code name} (as pulled from Ollama) is the configured embedding model. */
+    public boolean isEmbeddingModel(String name) {
+        return withTag(model).equals(withTag(name));
+    }
+
+    private static String withTag(String name) {
+        return name.contains(":") ? name : name + ":latest";
+    }
+
+    private static List<Double> toList(float[] vector) {
+        List<Double> embedding = new ArrayList<>(vector.length);
+        for (float value : vector) {
+            embedding.add((double) value);
+        }
+        return embedding;
+    }
+
+    private void embedBatch(List<Document> batch) throws Exception {
+        List<String> texts = batch.stream().map(Document::getContent).toList();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                List<List<Double>> embeddings = embeddingClient.embed(texts);
+                if (embeddings.size() != texts.size()) {
+                    throw new IllegalStateException("Expected " + texts.size() + " embeddings but got "
+                            + embeddings.size());
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).setEmbedding(embeddings.get(i));
+                    if (cache != null) {
+                        cache.put(model, texts.get(i), embeddings.get(i));
+                    }
+                }
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                logger.warn("Embedding batch of {} failed (attempt {}/{}): {}", batch.size(), attempt,
+                        maxAttempts, e.getMessage());
+                Thread.sleep(retryBackoffMillis * attempt);
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("model", model);
+        stats.put("batchSize", batchSize);
+        stats.put("cacheEnabled", cache != null);
+        if (cache != null) {
+            stats.putAll(cache.stats());
+        }
+        Map<String, Object> query = new LinkedHashMap<>();
+        synchronized (queryCache) {
+            query.put("entries", queryCache.size());
+            query.put("maxEntries", queryCacheMaxEntries);
+            query.put("hits", queryHits);
+            query.put("misses", queryMisses);
+            long lookups = queryHits + queryMisses;
+            query.put("hitRate", lookups == 0 ? 0.0 : (double) queryHits / lookups);
+            query.put("invalidations", queryInvalidations);
+        }
+        stats.put("queryCache", query);
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        executor.shutdownNow();
+        if (cache != null) {
+            cache.close();
+        }
+    }
+}
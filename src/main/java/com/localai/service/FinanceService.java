@@ -26,6 +26,9 @@ public class FinanceService {
 
     private static final Logger logger = LoggerFactory.getLogger(FinanceService.class);
 
+    /** Category of a transaction no keyword rule matched. */
+    public static final String UNCATEGORIZED = "Uncategorized";
+
     // Dynamic Categorization Rules
     private final Map<String, List<String>> categoryRules = new HashMap<>();
 
@@ -172,7 +175,7 @@ public class FinanceService {
                 }
             }
         }
-        return "Uncategorized";
+        return UNCATEGORIZED;
     }
 
     private LocalDate parseDate(String dateStr) {
@@ -0,0 +1,380 @@
+package com.localai.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.localai.exception.InferenceBusyException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.ChatClient;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.ollama.api.OllamaOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control for LLM requests. Each model runs at most
+ * {@code app.inference.concurrency} generations at once (overridable per
+ * model); further requests wait in a queue ordered by {@link Lane}, so
+ * interactive chat goes ahead of analysis and background work, and FIFO
+ * within a lane.
+ *
+ * The queue is bounded. A request that finds it full, or waits longer than
+ * {@code app.inference.queue-timeout-seconds}, fails with
+ * {@link InferenceBusyException} (429 + Retry-After). When the queue is full
+ * a request displaces the newest waiter of a lower lane, if there is one.
+ *
+ * Callers wait on their own thread: {@link #call} for blocking calls,
+ * {@link #acquire} for streams, which hold their permit until they end.
+ *
+ * {@link #call} is single-flight: a call whose model, options and messages
+ * match one already queued or running waits for that one and gets its
+ * answer (or its failure, e.g. a 429) instead of generating again.
+ */
+@Service
+public class InferenceScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(InferenceScheduler.class);
+
+    /** Priority of a request; earlier constants are served first. */
+    public enum Lane {
+        /** Chat the user is waiting on. */
+        INTERACTIVE,
+        /** One-off analyses and classification. */
+        STANDARD,
+        /** Nice-to-have work, e.g. commentary next to computed results. */
+        BACKGROUND
+    }
+
+    private static final Comparator<Waiter> BY_LANE = Comparator
+            .comparingInt((Waiter waiter) -> waiter.lane.ordinal())
+            .thenComparingLong(waiter -> waiter.sequence);
+
+    private final ChatClient chatClient;
+    private final ObjectMapper objectMapper;
+    private final int concurrency;
+    private final Map<String, Integer> modelConcurrency;
+    private final int capacity;
+    private final long queueTimeoutNanos;
+    private final Map<String, ModelGate> gates = new ConcurrentHashMap<>();
+    private final Map<Lane, LaneStats> laneStats = new LinkedHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    // Prompt key -> answer of the identical call in progress
+    private final Map<String, CompletableFuture<ChatResponse>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public InferenceScheduler(ChatClient chatClient, ObjectMapper objectMapper,
+            @Value("${app.inference.concurrency:1}") int concurrency,
+            @Value("${app.inference.model-concurrency:}") String modelConcurrency,
+            @Value("${app.inference.queue-capacity:16}") int capacity,
+            @Value("${app.inference.queue-timeout-seconds:60}") long queueTimeoutSeconds) {
+        this.chatClient = chatClient;
+        this.objectMapper = objectMapper;
+        this.concurrency = Math.max(1, concurrency);
+        this.modelConcurrency = parseModelConcurrency(modelConcurrency);
+        this.capacity = Math.max(1, capacity);
+        this.queueTimeoutNanos = TimeUnit.SECONDS.toNanos(Math.max(1, queueTimeoutSeconds));
+        for (Lane lane : Lane.values()) {
+            laneStats.put(lane, new LaneStats());
+        }
+    }
+
+    // "model=limit,model=limit"
+    private static Map<String, Integer> parseModelConcurrency(String value) {
+        Map<String, Integer> limits = new HashMap<>();
+        if (value == null || value.isBlank()) {
+            return limits;
+        }
+        for (String entry : value.split(",")) {
+            int separator = entry.lastIndexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Invalid app.inference.model-concurrency entry '" + entry
+                        + "': expected model=limit");
+            }
+            limits.put(entry.substring(0, separator).trim(),
+                    Math.max(1, Integer.parseInt(entry.substring(separator + 1).trim())));
+        }
+        return limits;
+    }
+
+    /**
+     * Waits for a slot on the prompt's model, then runs the call; or, when an
+     * identical call is already in progress, waits for its answer.
+     */
+    public ChatResponse call(Prompt prompt, Lane lane) {
+        String key = key(prompt);
+        CompletableFuture<ChatResponse> answer = new CompletableFuture<>();
+        CompletableFuture<ChatResponse> running = inFlight.putIfAbsent(key, answer);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            return await(running);
+        }
+        try (Permit permit = acquire(modelOf(prompt), lane)) {
+            ChatResponse response = chatClient.call(prompt);
+            answer.complete(response);
+            return response;
+        } catch (RuntimeException | Error e) {
+            answer.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, answer);
+        }
+    }
+
+    /** Counts a request that was served by an identical one in progress. */
+    void recordCoalesced() {
+        coalesced.incrementAndGet();
+    }
+
+    // Rethrows the failure of the call waited for as is, so a follower gets the same status
+    static <T> T await(CompletableFuture<T> answer) {
+        try {
+            return answer.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an identical request", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Identity of a prompt: the model and the SHA-256 of its options (as
+     * JSON) and messages. Equal keys mean the same request to Ollama.
+     */
+    public String key(Prompt prompt) {
+        try {
+            MessageDigest digest = DocumentService.sha256();
+            digest.update(objectMapper.writeValueAsBytes(prompt.getOptions()));
+            for (Message message : prompt.getInstructions()) {
+                digest.update(("\n" + message.getMessageType() + "\n").getBytes(StandardCharsets.UTF_8));
+                digest.update(String.valueOf(message.getContent()).getBytes(StandardCharsets.UTF_8));
+            }
+            return modelOf(prompt) + "/" + HexFormat.of().formatHex(digest.digest());
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot serialize prompt options", e);
+        }
+    }
+
+    /**
+     * Waits for a slot on {@code model}. The slot is held until the permit is
+     * closed; closing it again has no effect.
+     */
+    public Permit acquire(String model, Lane lane) {
+        ModelGate gate = gates.computeIfAbsent(model, name -> new ModelGate(name,
+                modelConcurrency.getOrDefault(name, concurrency)));
+        LaneStats stats = laneStats.get(lane);
+        stats.submitted.incrementAndGet();
+        Waiter waiter = new Waiter(lane, sequence.incrementAndGet());
+        synchronized (gate) {
+            if (gate.running < gate.limit && gate.waiting.isEmpty()) {
+                gate.running++;
+                stats.admitted(0);
+                return new Permit(gate);
+            }
+            if (gate.waiting.size() >= capacity && !gate.displaceBelow(lane)) {
+                stats.rejected.incrementAndGet();
+                throw new InferenceBusyException("Too many requests for " + model + " (" + capacity
+                        + " waiting)", gate.retryAfterSeconds());
+            }
+            gate.waiting.add(waiter);
+            try {
+                long deadline = waiter.queuedAt + queueTimeoutNanos;
+                while (!waiter.granted && !waiter.displaced) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        gate.waiting.remove(waiter);
+                        stats.timedOut.incrementAndGet();
+                        throw new InferenceBusyException("Waited "
+                                + TimeUnit.NANOSECONDS.toSeconds(queueTimeoutNanos) + "s for " + model,
+                                gate.retryAfterSeconds());
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(gate, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (waiter.granted) {
+                    gate.release(); // handed over just before the interrupt
+                } else {
+                    gate.waiting.remove(waiter);
+                }
+                throw new IllegalStateException("Interrupted while waiting for " + model, e);
+            }
+            if (waiter.displaced) {
+                stats.rejected.incrementAndGet();
+                throw new InferenceBusyException("Too many requests for " + model
+                        + " (displaced by higher-priority work)", gate.retryAfterSeconds());
+            }
+            stats.admitted(System.nanoTime() - waiter.queuedAt);
+            return new Permit(gate);
+        }
+    }
+
+    /** The model named in the prompt's Ollama options. */
+    static String modelOf(Prompt prompt) {
+        if (prompt.getOptions() instanceof OllamaOptions options && options.getModel() != null) {
+            return options.getModel();
+        }
+        return "default";
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> models = new LinkedHashMap<>();
+        gates.forEach((model, gate) -> {
+            synchronized (gate) {
+                Map<String, Object> stats = new LinkedHashMap<>();
+                stats.put("limit", gate.limit);
+                stats.put("running", gate.running);
+                stats.put("queued", gate.waiting.size());
+                stats.put("averageInferenceMillis", Math.round(gate.averageMillis));
+                models.put(model, stats);
+            }
+        });
+        Map<String, Object> lanes = new LinkedHashMap<>();
+        laneStats.forEach((lane, stats) -> lanes.put(lane.name().toLowerCase(), stats.describe()));
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queueCapacity", capacity);
+        stats.put("queueTimeoutSeconds", TimeUnit.NANOSECONDS.toSeconds(queueTimeoutNanos));
+        stats.put("coalesced", coalesced.get());
+        stats.put("models", models);
+        stats.put("lanes", lanes);
+        return stats;
+    }
+
+    /** A slot on one model, held from admission until {@link #close}. */
+    public static final class Permit implements AutoCloseable {
+
+        private final ModelGate gate;
+        private final long started = System.nanoTime();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Permit(ModelGate gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                synchronized (gate) {
+                    gate.averageMillis = 0.8 * gate.averageMillis + 0.2 * (System.nanoTime() - started) / 1e6;
+                    gate.release();
+                }
+            }
+        }
+    }
+
+    // Guarded by its own monitor
+    private static final class ModelGate {
+
+        private final String model;
+        private final int limit;
+        private final PriorityQueue<Waiter> waiting = new PriorityQueue<>(BY_LANE);
+        private int running;
+        private double averageMillis = 10_000; // seeded guess, replaced by measured durations
+
+        private ModelGate(String model, int limit) {
+            this.model = model;
+            this.limit = limit;
+        }
+
+        // Hands the slot to the first waiter, if any
+        private void release() {
+            Waiter next = waiting.poll();
+            if (next != null) {
+                next.granted = true;
+                notifyAll();
+            } else {
+                running--;
+            }
+        }
+
+        // Makes room for a request of lane by turning away the newest waiter of the lowest lower lane
+        private boolean displaceBelow(Lane lane) {
+            Waiter victim = null;
+            for (Waiter waiter : waiting) {
+                if (waiter.lane.compareTo(lane) > 0 && (victim == null || BY_LANE.compare(waiter, victim) > 0)) {
+                    victim = waiter;
+                }
+            }
+            if (victim == null) {
+                return false;
+            }
+            waiting.remove(victim);
+            victim.displaced = true;
+            notifyAll();
+            logger.info("Queue for {} is full: turned away the newest {} waiter to admit {} work",
+                    model, victim.lane, lane);
+            return true;
+        }
+
+        // Rough time until this request would run: the queue ahead of it spread over the slots
+        private long retryAfterSeconds() {
+            return Math.max(1, Math.round(averageMillis * (waiting.size() + running) / limit / 1000));
+        }
+    }
+
+    private static final class Waiter {
+
+        private final Lane lane;
+        private final long sequence;
+        private final long queuedAt = System.nanoTime();
+        private boolean granted;
+        private boolean displaced;
+
+        private Waiter(Lane lane, long sequence) {
+            this.lane = lane;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final class LaneStats {
+
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong admitted = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong timedOut = new AtomicLong();
+        private final AtomicLong waitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+
+        private void admitted(long waited) {
+            admitted.incrementAndGet();
+            waitNanos.addAndGet(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+        }
+
+        private Map<String, Object> describe() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            long count = admitted.get();
+            stats.put("submitted", submitted.get());
+            stats.put("admitted", count);
+            stats.put("rejected", rejected.get());
+            stats.put("timedOut", timedOut.get());
+            stats.put("averageWaitMillis", count == 0 ? 0 : waitNanos.get() / count / 1_000_000);
+            stats.put("maxWaitMillis", maxWaitNanos.get() / 1_000_000);
+            return stats;
+        }
+    }
+}
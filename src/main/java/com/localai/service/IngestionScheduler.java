@@ -0,0 +1,149 @@
+package com.localai.service;
+
+import com.localai.exception.IngestionQueueFullException;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs document ingestion jobs on a fixed pool of workers, off the HTTP
+ * threads. Waiting jobs are ordered by size, smallest first, and FIFO among
+ * equal sizes, with aging: each minute a job waits takes
+ * {@code app.ingestion.aging-mb-per-minute} off its size, so a large file is
+ * not starved by a stream of small ones. All waiting jobs age at the same
+ * rate, so their order is fixed on arrival: by size plus that rate times the
+ * arrival time. The queue is bounded: once {@code app.ingestion.queue-capacity}
+ * jobs are waiting, {@link #submit} throws {@link IngestionQueueFullException}
+ * with a Retry-After estimate instead of accepting more work.
+ */
+@Service
+public class IngestionScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionScheduler.class);
+
+    // The executor queue holds Runnables; every one of them is an IngestionTask.
+    private static final Comparator<Runnable> SMALLEST_FIRST = Comparator
+            .comparingLong((Runnable task) -> ((IngestionTask) task).rank)
+            .thenComparingLong(task -> ((IngestionTask) task).sequence);
+
+    private final int workers;
+    private final int capacity;
+    private final double agingBytesPerMilli;
+    private final long startedAt = System.nanoTime();
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private volatile double averageJobMillis = 30_000; // seeded guess, replaced by measured durations
+
+    public IngestionScheduler(@Value("${app.ingestion.workers:2}") int workers,
+            @Value("${app.ingestion.queue-capacity:20}") int capacity,
+            @Value("${app.ingestion.aging-mb-per-minute:10}") double agingMbPerMinute) {
+        this.workers = Math.max(1, workers);
+        this.capacity = Math.max(1, capacity);
+        this.agingBytesPerMilli = Math.max(0, agingMbPerMinute) * 1024 * 1024 / TimeUnit.MINUTES.toMillis(1);
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(this.workers, this.workers, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(this.capacity, SMALLEST_FIRST),
+                runnable -> new Thread(runnable, "ingestion-" + threads.incrementAndGet()));
+    }
+
+    /**
+     * Fails fast when a job would be rejected, so callers can skip work such
+     * as buffering an upload before calling {@link #submit}.
+     */
+    public void checkCapacity() {
+        if (executor.getQueue().size() >= capacity) {
+            throw new IngestionQueueFullException(capacity, retryAfterSeconds());
+        }
+    }
+
+    /**
+     * Queues a job. {@code size} is the priority: smaller runs first, less
+     * the aging credit of jobs that have waited longer.
+     */
+    public synchronized void submit(String jobId, long size, Runnable job) {
+        checkCapacity();
+        long arrival = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        long rank = size + Math.round(agingBytesPerMilli * arrival);
+        executor.execute(new IngestionTask(jobId, rank, sequence.incrementAndGet(), job));
+    }
+
+    /**
+     * 1-based position of a waiting job in run order, or 0 if it is not
+     * waiting (running, finished or unknown).
+     */
+    public int queuePosition(String jobId) {
+        Runnable[] waiting = executor.getQueue().toArray(new Runnable[0]);
+        Arrays.sort(waiting, SMALLEST_FIRST);
+        for (int i = 0; i < waiting.length; i++) {
+            if (((IngestionTask) waiting[i]).jobId.equals(jobId)) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Rough time until a worker frees up: the mean job duration spread over the workers.
+     */
+    private long retryAfterSeconds() {
+        return Math.max(1, Math.round(averageJobMillis / workers / 1000));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("workers", workers);
+        stats.put("active", executor.getActiveCount());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("capacity", capacity);
+        stats.put("completed", completed.get());
+        stats.put("averageJobMillis", Math.round(averageJobMillis));
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private final class IngestionTask implements Runnable {
+
+        private final String jobId;
+        private final long rank; // size plus the aging rate times the arrival time
+        private final long sequence;
+        private final Runnable job;
+
+        private IngestionTask(String jobId, long rank, long sequence, Runnable job) {
+            this.jobId = jobId;
+            this.rank = rank;
+            this.sequence = sequence;
+            this.job = job;
+        }
+
+        @Override
+        public void run() {
+            long start = System.currentTimeMillis();
+            try {
+                job.run();
+            } catch (RuntimeException e) {
+                logger.error("Ingestion job {} failed", jobId, e);
+            } finally {
+                long elapsed = System.currentTimeMillis() - start;
+                averageJobMillis = 0.8 * averageJobMillis + 0.2 * elapsed;
+                completed.incrementAndGet();
+            }
+        }
+    }
+}
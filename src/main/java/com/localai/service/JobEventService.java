@@ -0,0 +1,237 @@
+package com.localai.service;
+
+import com.localai.service.ProcessingStatusService.JobStatus;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes ingestion job updates to clients over Server-Sent Events, so they do
+ * not have to poll {@code /api/docs/status}. One connection can follow several
+ * jobs, or all of them. On connect it receives the current state of its jobs,
+ * then one {@code status} event per change, including per-chunk embedding
+ * progress and queue position moves.
+ *
+ * All writes happen on a single dispatcher thread. It also sends a keep-alive
+ * comment every {@code app.jobs.events.heartbeat-seconds}, so a dropped
+ * connection fails on the next write and its subscription is discarded, as
+ * are subscriptions that complete, time out or error.
+ */
+@Service
+public class JobEventService {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobEventService.class);
+
+    private final ProcessingStatusService statusService;
+    private final IngestionScheduler ingestionScheduler;
+    private final long timeoutMillis;
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    // Jobs last seen as QUEUED; only touched on the dispatcher thread
+    private final Set<String> queued = new HashSet<>();
+    private final ScheduledExecutorService dispatcher;
+
+    public JobEventService(ProcessingStatusService statusService, IngestionScheduler ingestionScheduler,
+            @Value("${app.jobs.events.timeout-minutes:30}") long timeoutMinutes,
+            @Value("${app.jobs.events.heartbeat-seconds:15}") long heartbeatSeconds) {
+        this.statusService = statusService;
+        this.ingestionScheduler = ingestionScheduler;
+        this.timeoutMillis = TimeUnit.MINUTES.toMillis(Math.max(1, timeoutMinutes));
+        this.dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "job-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long heartbeat = Math.max(1, heartbeatSeconds);
+        dispatcher.scheduleWithFixedDelay(this::heartbeat, heartbeat, heartbeat, TimeUnit.SECONDS);
+        statusService.addListener((jobId, status) -> dispatch(() -> deliver(jobId, status)));
+    }
+
+    /**
+     * Opens an event stream for the given jobs, or for every job when
+     * {@code jobIds} is empty. A stream for named jobs completes once all of
+     * them have finished or are gone.
+     */
+    public SseEmitter subscribe(Collection<String> jobIds) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscription subscription = new Subscription(emitter,
+                jobIds.isEmpty() ? null : new LinkedHashSet<>(jobIds));
+        emitter.onCompletion(() -> subscriptions.remove(subscription));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> subscriptions.remove(subscription));
+        subscriptions.add(subscription);
+        dispatch(subscription::sendSnapshot);
+        return emitter;
+    }
+
+    public int subscriberCount() {
+        return subscriptions.size();
+    }
+
+    private void dispatch(Runnable task) {
+        if (!dispatcher.isShutdown()) {
+            dispatcher.execute(task);
+        }
+    }
+
+    private void deliver(String jobId, JobStatus status) {
+        boolean queueMoved = status != null && "QUEUED".equals(status.status)
+                ? queued.add(jobId)
+                : queued.remove(jobId);
+        for (Subscription subscription : subscriptions) {
+            if (subscription.follows(jobId)) {
+                subscription.send(jobId, status);
+            }
+        }
+        if (queueMoved) {
+            // A job joining or leaving the queue shifts the position of the others
+            for (Subscription subscription : subscriptions) {
+                for (String waiting : queued) {
+                    if (!waiting.equals(jobId) && subscription.follows(waiting)) {
+                        subscription.send(waiting, statusService.getStatus(waiting));
+                    }
+                }
+            }
+        }
+    }
+
+    private void heartbeat() {
+        for (Subscription subscription : subscriptions) {
+            subscription.ping();
+        }
+    }
+
+    private static Map<String, Object> event(String jobId, JobStatus status, int queuePosition) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("jobId", jobId);
+        if (status == null) {
+            event.put("status", "UNKNOWN"); // never existed, or evicted
+            return event;
+        }
+        event.put("status", status.status);
+        event.put("message", status.message);
+        event.put("processed", status.processed);
+        event.put("total", status.total);
+        event.put("chunksEmbedded", status.chunksEmbedded);
+        event.put("queuePosition", queuePosition);
+        event.put("payload", status.payload);
+        event.put("timestamp", status.timestamp);
+        return event;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+        for (Subscription subscription : subscriptions) {
+            subscription.emitter.complete();
+        }
+        subscriptions.clear();
+    }
+
+    private record Sent(JobStatus status, int queuePosition) {
+    }
+
+    // Only used on the dispatcher thread
+    private final class Subscription {
+
+        private final SseEmitter emitter;
+        private final Set<String> jobIds; // null = every job
+        private final Map<String, Sent> sent = new HashMap<>();
+        private boolean closed;
+
+        private Subscription(SseEmitter emitter, Set<String> jobIds) {
+            this.emitter = emitter;
+            this.jobIds = jobIds;
+        }
+
+        private boolean follows(String jobId) {
+            return jobIds == null || jobIds.contains(jobId);
+        }
+
+        private void sendSnapshot() {
+            Collection<String> snapshot = jobIds != null ? jobIds : statusService.getJobs().keySet();
+            for (String jobId : snapshot) {
+                send(jobId, statusService.getStatus(jobId));
+            }
+        }
+
+        private void send(String jobId, JobStatus status) {
+            if (closed) {
+                return;
+            }
+            int position = status != null && "QUEUED".equals(status.status)
+                    ? ingestionScheduler.queuePosition(jobId)
+                    : 0;
+            Sent last = sent.get(jobId);
+            if (last != null && last.status() != null && status != null
+                    && (last.status() == status && last.queuePosition() == position
+                            || status.timestamp < last.status().timestamp)) {
+                return; // already sent, or older than what the client has
+            }
+            try {
+                emitter.send(SseEmitter.event().name("status").data(event(jobId, status, position),
+                        MediaType.APPLICATION_JSON));
+            } catch (IOException | IllegalStateException e) {
+                close();
+                return;
+            }
+            if (status == null && jobIds == null) {
+                sent.remove(jobId); // nothing more will come for it
+                return;
+            }
+            sent.put(jobId, new Sent(status, position));
+            if (status == null || status.isFinished()) {
+                completeIfDone();
+            }
+        }
+
+        private void ping() {
+            if (closed) {
+                return;
+            }
+            try {
+                emitter.send(SseEmitter.event().comment("keepalive"));
+            } catch (IOException | IllegalStateException e) {
+                close();
+            }
+        }
+
+        private void completeIfDone() {
+            if (jobIds == null) {
+                return;
+            }
+            for (String jobId : jobIds) {
+                Sent last = sent.get(jobId);
+                if (last == null || last.status() != null && !last.status().isFinished()) {
+                    return;
+                }
+            }
+            closed = true;
+            subscriptions.remove(this);
+            emitter.complete();
+        }
+
+        private void close() {
+            // The container reports the broken connection on its own; just stop writing
+            logger.debug("Dropping job event subscriber after a failed write");
+            closed = true;
+            subscriptions.remove(this);
+        }
+    }
+}
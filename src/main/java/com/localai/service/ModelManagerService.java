@@ -15,6 +15,8 @@ public class ModelManagerService {
 
     private static final Logger logger = LoggerFactory.getLogger(ModelManagerService.class);
     private final DownloaderService downloaderService;
+    private final EmbeddingService embeddingService;
+    private final ResponseCache responseCache;
 
     // Model Constants
     public static final String LITE_MODEL = "qwen2.5:0.5b";
@@ -33,8 +35,11 @@ public class ModelManagerService {
     @Value("${app.models.path:models}")
     private String modelsPath;
 
-    public ModelManagerService(DownloaderService downloaderService) {
+    public ModelManagerService(DownloaderService downloaderService, EmbeddingService embeddingService,
+            ResponseCache responseCache) {
         this.downloaderService = downloaderService;
+        this.embeddingService = embeddingService;
+        this.responseCache = responseCache;
     }
 
     public String getCurrentModel() {
@@ -205,6 +210,12 @@ public class ModelManagerService {
                                 if (node.has("status") && "success".equals(node.get("status").asText())) {
                                     logger.info("Download complete for {}", modelName);
                                     activeDownloads.remove(modelName);
+                                    if (embeddingService.isEmbeddingModel(modelName)) {
+                                        // The tag may now point at different weights
+                                        embeddingService.invalidateQueryCache();
+                                    } else {
+                                        responseCache.invalidateModel(modelName);
+                                    }
                                 }
                             } catch (Exception e) {
                                 logger.error("Error parsing streaming response for " + modelName, e);
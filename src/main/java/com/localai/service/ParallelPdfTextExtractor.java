@@ -0,0 +1,118 @@
+package com.localai.service;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Extracts page text with several PDFBox workers at once. The file is cut
+ * into fixed-size page ranges; each worker opens its own PDDocument (they are
+ * not thread-safe) and claims ranges in order. Pages are handed to the sink
+ * strictly in page order, and workers may only run a few ranges ahead of the
+ * sink, so memory stays bounded when the consumer is slower than extraction.
+ */
+public class ParallelPdfTextExtractor {
+
+    public interface PageSink {
+        void accept(int pageNumber, String text) throws InterruptedException;
+    }
+
+    private final Executor executor;
+    private final int parallelism;
+    private final int rangeSize;
+
+    public ParallelPdfTextExtractor(Executor executor, int parallelism, int rangeSize) {
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+        this.rangeSize = Math.max(1, rangeSize);
+    }
+
+    public static int pageCount(File pdf) throws IOException {
+        try (PDDocument document = Loader.loadPDF(pdf)) {
+            return document.getNumberOfPages();
+        }
+    }
+
+    /**
+     * Extracts every page of the file into the sink, in order. The caller
+     * passes the {@link #pageCount} it already has, so the file is not
+     * parsed once more just to count pages.
+     */
+    public void extract(File pdf, int pageCount, PageSink sink) throws Exception {
+        int rangeCount = (pageCount + rangeSize - 1) / rangeSize;
+        @SuppressWarnings("unchecked")
+        CompletableFuture<String[]>[] ranges = new CompletableFuture[rangeCount];
+        for (int i = 0; i < rangeCount; i++) {
+            ranges[i] = new CompletableFuture<>();
+        }
+        AtomicInteger nextRange = new AtomicInteger();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        // Ranges extracted but not yet handed to the sink
+        Semaphore ahead = new Semaphore(parallelism * 2);
+
+        int workers = Math.min(parallelism, rangeCount);
+        for (int w = 0; w < workers; w++) {
+            executor.execute(() -> extractRanges(pdf, pageCount, ranges, nextRange, ahead, cancelled));
+        }
+
+        try {
+            for (int r = 0; r < rangeCount; r++) {
+                String[] pages;
+                try {
+                    pages = ranges[r].get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception cause ? cause : e;
+                }
+                ranges[r] = null;
+                for (int i = 0; i < pages.length; i++) {
+                    sink.accept(r * rangeSize + i + 1, pages[i]);
+                }
+                ahead.release();
+            }
+        } finally {
+            cancelled.set(true);
+            ahead.release(workers); // wake workers waiting for room so they can exit
+        }
+    }
+
+    private void extractRanges(File pdf, int pageCount, CompletableFuture<String[]>[] ranges,
+            AtomicInteger nextRange, Semaphore ahead, AtomicBoolean cancelled) {
+        try (PDDocument document = Loader.loadPDF(pdf)) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setSortByPosition(true);
+            while (!cancelled.get()) {
+                ahead.acquire();
+                int r = nextRange.getAndIncrement();
+                if (cancelled.get() || r >= ranges.length) {
+                    return;
+                }
+                int first = r * rangeSize + 1;
+                int last = Math.min(first + rangeSize - 1, pageCount);
+                String[] pages = new String[last - first + 1];
+                for (int page = first; page <= last; page++) {
+                    stripper.setStartPage(page);
+                    stripper.setEndPage(page);
+                    pages[page - first] = stripper.getText(document);
+                }
+                ranges[r].complete(pages);
+            }
+        } catch (Exception e) {
+            // Fail every range still pending, so the sink side never waits on
+            // a range this worker had claimed or would have claimed.
+            for (CompletableFuture<String[]> range : ranges) {
+                if (range != null) {
+                    range.completeExceptionally(e);
+                }
+            }
+        }
+    }
+}
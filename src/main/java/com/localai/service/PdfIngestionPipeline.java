@@ -0,0 +1,222 @@
+package com.localai.service;
+
+import com.localai.vectorstore.MappedVectorStore;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams a PDF into the vector store page by page. Reading, splitting and
+ * embedding+indexing run as overlapping stages connected by bounded queues,
+ * so only a few pages and chunk batches are in memory at any time and each
+ * batch is searchable as soon as it has been indexed.
+ *
+ * The reader stage extracts page ranges with several PDFBox workers at once
+ * ({@link ParallelPdfTextExtractor}) and forwards pages in order. The reader,
+ * its workers and the splitter run on a shared stage pool; the indexing stage
+ * runs on the calling ingestion worker. A failure in any stage stops the
+ * others and is rethrown from {@link #ingest}.
+ */
+@Service
+public class PdfIngestionPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(PdfIngestionPipeline.class);
+
+    private static final long POLL_MILLIS = 100;
+
+    public interface Progress {
+        void update(String step, int done, int total, int chunksEmbedded);
+    }
+
+    /** Where embedded chunk batches go; the vector store unless a caller batches writes itself. */
+    public interface ChunkSink {
+        void index(List<Document> chunks) throws IOException;
+    }
+
+    public record Result(int pageCount, int chunkCount, long textLength) {
+    }
+
+    // Chunks from whole pages, and how many pages are complete once this batch is indexed.
+    private record ChunkBatch(List<Document> chunks, int pagesCompleted) {
+    }
+
+    private final MappedVectorStore vectorStore;
+    private final EmbeddingService embeddingService;
+    private final int pageBuffer;
+    private final int batchBuffer;
+    private final int batchSize;
+    private final ExecutorService stages;
+    private final ParallelPdfTextExtractor extractor;
+
+    public PdfIngestionPipeline(MappedVectorStore vectorStore, EmbeddingService embeddingService,
+            @Value("${app.ingestion.pipeline.page-buffer:8}") int pageBuffer,
+            @Value("${app.ingestion.pipeline.batch-buffer:2}") int batchBuffer,
+            @Value("${app.ingestion.pipeline.batch-size:64}") int batchSize,
+            @Value("${app.ingestion.pipeline.extract-parallelism:0}") int extractParallelism,
+            @Value("${app.ingestion.pipeline.extract-range-pages:8}") int extractRangePages) {
+        this.vectorStore = vectorStore;
+        this.embeddingService = embeddingService;
+        this.pageBuffer = Math.max(1, pageBuffer);
+        this.batchBuffer = Math.max(1, batchBuffer);
+        this.batchSize = Math.max(1, batchSize);
+        AtomicInteger threads = new AtomicInteger();
+        this.stages = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 0 = half the cores, leaving the rest for splitting, embedding and requests
+        int parallelism = extractParallelism > 0 ? extractParallelism
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.extractor = new ParallelPdfTextExtractor(stages, parallelism, extractRangePages);
+    }
+
+    /**
+     * Ingests the PDF. {@code chunkMetadata} is copied onto every chunk, next
+     * to {@code page_number} and {@code file_name}. The extracted text of
+     * every page is written to {@code text} as it is read, so the whole
+     * document is never held in memory.
+     */
+    public Result ingest(File pdf, String filename, Map<String, Object> chunkMetadata, Writer text,
+            Progress progress) throws Exception {
+        return ingest(pdf, filename, chunkMetadata, text, progress, vectorStore::add);
+    }
+
+    /**
+     * Ingests the PDF into {@code sink} instead of adding each batch to the vector store.
+     */
+    public Result ingest(File pdf, String filename, Map<String, Object> chunkMetadata, Writer text,
+            Progress progress, ChunkSink sink) throws Exception {
+        // The only parse outside the extract workers; they reuse the count
+        int pageCount = ParallelPdfTextExtractor.pageCount(pdf);
+        BlockingQueue<Document> pages = new ArrayBlockingQueue<>(pageBuffer);
+        BlockingQueue<ChunkBatch> batches = new ArrayBlockingQueue<>(batchBuffer);
+        AtomicLong textLength = new AtomicLong();
+
+        Future<?> reader = stages.submit(() -> {
+            extractor.extract(pdf, pageCount, (page, pageText) -> {
+                try {
+                    text.write(pageText);
+                    text.write("\n\n");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                textLength.addAndGet(pageText.length() + 2);
+                Map<String, Object> metadata = new HashMap<>(chunkMetadata);
+                metadata.put("page_number", page);
+                metadata.put("file_name", filename);
+                pages.put(new Document(pageText, metadata));
+            });
+            return null;
+        });
+        Future<?> splitter = stages.submit(() -> {
+            splitPages(pages, reader, batches);
+            return null;
+        });
+        try {
+            int chunkCount = indexBatches(batches, splitter, pageCount, progress, sink);
+            // Surface a failure in an upstream stage, which ends the stream early.
+            reader.get();
+            splitter.get();
+            logger.info("Streamed {} pages into {} chunks from {}.", pageCount, chunkCount, filename);
+            return new Result(pageCount, chunkCount, textLength.get());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException io ? io.getCause() : e.getCause();
+            throw cause instanceof Exception exception ? exception : e;
+        } finally {
+            reader.cancel(true);
+            splitter.cancel(true);
+        }
+    }
+
+    private void splitPages(BlockingQueue<Document> pages, Future<?> reader, BlockingQueue<ChunkBatch> batches)
+            throws Exception {
+        TokenTextSplitter splitter = new TokenTextSplitter();
+        List<Document> batch = new ArrayList<>();
+        int pagesSplit = 0;
+        Document page;
+        while ((page = next(pages, reader)) != null) {
+            if (!page.getContent().isBlank()) {
+                batch.addAll(splitter.apply(List.of(page)));
+            }
+            pagesSplit++;
+            if (batch.size() >= batchSize) {
+                batches.put(new ChunkBatch(batch, pagesSplit));
+                batch = new ArrayList<>();
+            }
+        }
+        batches.put(new ChunkBatch(batch, pagesSplit));
+    }
+
+    private int indexBatches(BlockingQueue<ChunkBatch> batches, Future<?> splitter, int pageCount,
+            Progress progress, ChunkSink sink) throws Exception {
+        int chunkCount = 0;
+        int pagesCompleted = 0;
+        progress.update("indexing_pages", 0, pageCount, 0);
+        // Embedding batches finish on several threads; report chunk counts in increasing order only
+        AtomicInteger reported = new AtomicInteger();
+        ChunkBatch batch;
+        while ((batch = next(batches, splitter)) != null) {
+            if (!batch.chunks().isEmpty()) {
+                int indexed = chunkCount;
+                int pages = pagesCompleted;
+                embeddingService.embed(batch.chunks(), (done, total) -> {
+                    synchronized (reported) {
+                        if (indexed + done > reported.get()) {
+                            reported.set(indexed + done);
+                            progress.update("embedding_chunks", pages, pageCount, indexed + done);
+                        }
+                    }
+                });
+                sink.index(batch.chunks());
+                chunkCount += batch.chunks().size();
+            }
+            pagesCompleted = batch.pagesCompleted();
+            progress.update("indexing_pages", pagesCompleted, pageCount, chunkCount);
+        }
+        return chunkCount;
+    }
+
+    /**
+     * Next item from a stage queue, or null once the producing stage has
+     * finished (normally or not) and the queue is drained.
+     */
+    private static <T> T next(BlockingQueue<T> queue, Future<?> producer) throws InterruptedException {
+        while (true) {
+            T item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (item != null) {
+                return item;
+            }
+            if (producer.isDone()) {
+                return queue.poll();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stages.shutdownNow();
+    }
+}
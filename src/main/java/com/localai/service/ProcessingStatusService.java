@@ -1,36 +1,226 @@
 package com.localai.service;
 
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * In-memory job records for document ingestion. Finished jobs (COMPLETED or
+ * ERROR) expire {@code app.jobs.ttl-minutes} after their last update, and the
+ * oldest finished jobs are dropped early once more than
+ * {@code app.jobs.max-entries} are held; a background sweeper does both.
+ * Queued and running jobs are never evicted.
+ *
+ * A document's extracted text is not kept in the record: it is spilled to
+ * {@code app.jobs.text-dir/<jobId>.txt} and served by its own endpoint, and
+ * deleted together with the job.
+ *
+ * Every change is also pushed to registered {@link JobListener}s, on the
+ * thread that made it; listeners must hand off anything slow.
+ */
 @Service
 public class ProcessingStatusService {
 
+    private static final Logger logger = LoggerFactory.getLogger(ProcessingStatusService.class);
+
+    public interface JobListener {
+        /** {@code status} is null once the job has been removed or evicted. */
+        void onUpdate(String jobId, JobStatus status);
+    }
+
     private final Map<String, JobStatus> jobs = new ConcurrentHashMap<>();
+    private final List<JobListener> listeners = new CopyOnWriteArrayList<>();
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final Path textDirectory;
+    private final ScheduledExecutorService sweeper;
+
+    public ProcessingStatusService(@Value("${app.jobs.ttl-minutes:60}") long ttlMinutes,
+            @Value("${app.jobs.max-entries:1000}") int maxEntries,
+            @Value("${app.jobs.eviction-interval-seconds:60}") long evictionIntervalSeconds,
+            @Value("${app.jobs.text-dir:job-text}") String textDirectory) throws IOException {
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(Math.max(1, ttlMinutes));
+        this.maxEntries = Math.max(1, maxEntries);
+        this.textDirectory = Paths.get(textDirectory);
+        Files.createDirectories(this.textDirectory);
+        // Jobs do not survive a restart, so neither does their text
+        deleteSpilledText();
+        long interval = Math.max(1, evictionIntervalSeconds);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "job-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::evictInBackground, interval, interval, TimeUnit.SECONDS);
+    }
+
+    public void addListener(JobListener listener) {
+        listeners.add(listener);
+    }
 
     public String createJob() {
         String jobId = java.util.UUID.randomUUID().toString();
-        jobs.put(jobId, new JobStatus("QUEUED", "Waiting to start..."));
+        put(jobId, new JobStatus("QUEUED", "Waiting to start..."));
         return jobId;
     }
 
     public void updateStatus(String jobId, String status, String message) {
-        jobs.put(jobId, new JobStatus(status, message));
+        put(jobId, new JobStatus(status, message));
     }
 
     public void updateStatus(String jobId, String status, String message, Object payload) {
-        jobs.put(jobId, new JobStatus(status, message, payload));
+        put(jobId, new JobStatus(status, message, payload));
+    }
+
+    public void updateProgress(String jobId, String message, int processed, int total, int chunksEmbedded) {
+        JobStatus status = new JobStatus("PROCESSING", message);
+        status.processed = processed;
+        status.total = total;
+        status.chunksEmbedded = chunksEmbedded;
+        put(jobId, status);
+    }
+
+    public void removeJob(String jobId) {
+        jobs.remove(jobId);
+        deleteText(jobId);
+        publish(jobId, null);
     }
 
     public JobStatus getStatus(String jobId) {
         return jobs.get(jobId);
     }
 
+    public Map<String, JobStatus> getJobs() {
+        return Map.copyOf(jobs);
+    }
+
+    private void put(String jobId, JobStatus status) {
+        jobs.put(jobId, status);
+        publish(jobId, status);
+    }
+
+    private void publish(String jobId, JobStatus status) {
+        for (JobListener listener : listeners) {
+            try {
+                listener.onUpdate(jobId, status);
+            } catch (RuntimeException e) {
+                logger.warn("Job listener failed for job {}", jobId, e);
+            }
+        }
+    }
+
+    /**
+     * Opens the spill file for a job's extracted text, replacing any earlier one.
+     */
+    public Writer openTextWriter(String jobId) throws IOException {
+        return Files.newBufferedWriter(textFile(jobId), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The spilled text of a known job, or null if the job is unknown or has no text.
+     */
+    public Path getTextFile(String jobId) {
+        if (!jobs.containsKey(jobId)) {
+            return null;
+        }
+        Path file = textFile(jobId);
+        return Files.isRegularFile(file) ? file : null;
+    }
+
+    public void deleteText(String jobId) {
+        try {
+            Files.deleteIfExists(textFile(jobId));
+        } catch (IOException e) {
+            logger.warn("Could not delete extracted text of job {}", jobId, e);
+        }
+    }
+
+    private Path textFile(String jobId) {
+        // Job ids are UUIDs; reject anything else so a request path cannot escape the directory
+        return textDirectory.resolve(java.util.UUID.fromString(jobId) + ".txt");
+    }
+
+    /**
+     * Drops expired finished jobs, then the oldest finished jobs beyond the
+     * cap. Returns how many were evicted.
+     */
+    public int evict() {
+        long expiredBefore = System.currentTimeMillis() - ttlMillis;
+        List<Map.Entry<String, JobStatus>> finished = new ArrayList<>();
+        for (Map.Entry<String, JobStatus> entry : jobs.entrySet()) {
+            if (entry.getValue().isFinished()) {
+                finished.add(entry);
+            }
+        }
+        finished.sort(Comparator.comparingLong(entry -> entry.getValue().timestamp));
+
+        int evicted = 0;
+        int excess = jobs.size() - maxEntries;
+        for (Map.Entry<String, JobStatus> entry : finished) {
+            if (entry.getValue().timestamp >= expiredBefore && evicted >= excess) {
+                break;
+            }
+            // Only if the job was not updated since the scan
+            if (jobs.remove(entry.getKey(), entry.getValue())) {
+                deleteText(entry.getKey());
+                publish(entry.getKey(), null);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    private void evictInBackground() {
+        try {
+            int evicted = evict();
+            if (evicted > 0) {
+                logger.info("Evicted {} finished jobs, {} remain.", evicted, jobs.size());
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Job eviction failed", e);
+        }
+    }
+
+    private void deleteSpilledText() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(textDirectory, "*.txt")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
     public static class JobStatus {
         public String status; // QUEUED, PROCESSING, COMPLETED, ERROR
         public String message;
         public Object payload;
+        public int processed; // progress of the current step, when it is tracked
+        public int total;
+        public int chunksEmbedded; // chunks embedded so far, while indexing
+        public int queuePosition; // 1-based while QUEUED, 0 otherwise
         public long timestamp = System.currentTimeMillis();
 
         public JobStatus(String status, String message) {
@@ -43,5 +233,9 @@ public class ProcessingStatusService {
             this.message = message;
             this.payload = payload;
         }
+
+        boolean isFinished() {
+            return "COMPLETED".equals(status) || "ERROR".equals(status);
+        }
     }
 }
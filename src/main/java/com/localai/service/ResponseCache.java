@@ -0,0 +1,356 @@
+package com.localai.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.ollama.api.OllamaOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Exact-match cache of LLM answers for deterministic calls, i.e. prompts
+ * whose Ollama options set temperature 0: the same model, options and
+ * messages then give the same answer, so a repeat is served without an
+ * inference. Other prompts pass straight through to the
+ * {@link InferenceScheduler}.
+ *
+ * Entries are keyed by {@link InferenceScheduler#key}: the model and the
+ * SHA-256 of the options (as JSON) and the messages. The heap tier is an
+ * LRU of {@code app.inference.cache.max-entries}; entries expire after
+ * {@code app.inference.cache.ttl-minutes}. With
+ * {@code app.inference.cache.disk.enabled} every answer is also written as
+ * one JSON file under {@code app.inference.cache.disk.path}/&lt;model&gt;/,
+ * consulted on a heap miss, so answers survive a restart. The disk tier is
+ * trimmed to its own entry cap, oldest files first. Only the heap map and
+ * the counters are guarded by the cache's monitor: files are read by the
+ * calling thread without it, and written, trimmed and deleted in order by a
+ * single background writer, so no call waits behind another one's file I/O.
+ *
+ * A model's entries are dropped when it is pulled again, since the tag may
+ * now point at other weights.
+ */
+@Service
+public class ResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+    /** A cached answer and how long it took to generate. */
+    public record Entry(String model, String response, long inferenceMillis, long createdAt) {
+    }
+
+    private final InferenceScheduler inferenceScheduler;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Path diskDir; // null when the disk tier is off
+    private final int diskMaxEntries;
+    private final LinkedHashMap<String, Entry> entries;
+    private final ExecutorService diskWriter; // null when the disk tier is off
+    private volatile int diskEntries; // only changed on diskWriter
+    private long hits;
+    private long diskHits;
+    private long misses;
+    private long bypassed;
+    private long expired;
+    private long savedMillis;
+    // Model -> times it was invalidated; its answers started before the last one are not cached
+    private final Map<String, Long> generations = new HashMap<>();
+    private long clears; // likewise for clear(), which invalidates every model
+    // Disk entries created up to these times are stale even while their files still await deletion
+    private final Map<String, Long> invalidatedAt = new HashMap<>();
+    private long clearedAt;
+
+    public ResponseCache(InferenceScheduler inferenceScheduler, ObjectMapper objectMapper,
+            @Value("${app.inference.cache.enabled:true}") boolean enabled,
+            @Value("${app.inference.cache.max-entries:1000}") int maxEntries,
+            @Value("${app.inference.cache.ttl-minutes:1440}") long ttlMinutes,
+            @Value("${app.inference.cache.disk.enabled:false}") boolean diskEnabled,
+            @Value("${app.inference.cache.disk.path:response-cache}") String diskPath,
+            @Value("${app.inference.cache.disk.max-entries:10000}") int diskMaxEntries) throws IOException {
+        this.inferenceScheduler = inferenceScheduler;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(Math.max(1, ttlMinutes));
+        this.diskDir = enabled && diskEnabled ? Paths.get(diskPath) : null;
+        this.diskMaxEntries = Math.max(1, diskMaxEntries);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > ResponseCache.this.maxEntries;
+            }
+        };
+        if (diskDir != null) {
+            Files.createDirectories(diskDir);
+            diskEntries = countDiskEntries();
+            logger.info("Opened response cache at {} with {} entries on disk.", diskDir, diskEntries);
+            diskWriter = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "response-cache-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            diskWriter = null;
+        }
+    }
+
+    /**
+     * The answer to {@code prompt}: from the cache when the call is
+     * deterministic and was answered before, otherwise generated in
+     * {@code lane} (and cached when deterministic).
+     */
+    public String call(Prompt prompt, InferenceScheduler.Lane lane) {
+        if (!enabled || !isDeterministic(prompt)) {
+            synchronized (this) {
+                bypassed++;
+            }
+            return generate(prompt, lane);
+        }
+        String model = InferenceScheduler.modelOf(prompt);
+        String key = inferenceScheduler.key(prompt);
+        long started;
+        synchronized (this) {
+            Entry entry = lookup(key);
+            if (entry != null) {
+                savedMillis += entry.inferenceMillis();
+                return entry.response();
+            }
+            started = generation(model);
+        }
+        // The disk tier is read without holding the monitor
+        Entry stored = readFromDisk(key);
+        synchronized (this) {
+            // Not served when the model was invalidated meanwhile, or before the file was written
+            if (stored != null && started == generation(model) && !isInvalidated(stored)) {
+                if (System.currentTimeMillis() - stored.createdAt() < ttlMillis) {
+                    diskHits++;
+                    savedMillis += stored.inferenceMillis();
+                    entries.put(key, stored);
+                    return stored.response();
+                }
+                expired++; // the file is replaced by the answer generated below
+            }
+            misses++;
+        }
+        long start = System.nanoTime();
+        String response = generate(prompt, lane);
+        Entry entry = new Entry(model, response, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                System.currentTimeMillis());
+        synchronized (this) {
+            if (started == generation(model)) {
+                entries.put(key, entry);
+                // Queued under the monitor, so it cannot land after a later invalidation's delete
+                onDisk(() -> writeToDisk(key, entry));
+            }
+        }
+        return response;
+    }
+
+    private String generate(Prompt prompt, InferenceScheduler.Lane lane) {
+        return inferenceScheduler.call(prompt, lane).getResult().getOutput().getContent();
+    }
+
+    private static boolean isDeterministic(Prompt prompt) {
+        return prompt.getOptions() instanceof OllamaOptions options && options.getTemperature() != null
+                && options.getTemperature() == 0f;
+    }
+
+    // Heap only; counts the hit or expiry
+    private Entry lookup(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && System.currentTimeMillis() - entry.createdAt() < ttlMillis) {
+            hits++;
+            return entry;
+        }
+        if (entry != null) {
+            entries.remove(key);
+            expired++;
+        }
+        return null;
+    }
+
+    // Changes whenever the model, or the whole cache, is invalidated; needs the monitor
+    private long generation(String model) {
+        return clears + generations.getOrDefault(model, 0L);
+    }
+
+    private boolean isInvalidated(Entry entry) {
+        return entry.createdAt() <= Math.max(clearedAt, invalidatedAt.getOrDefault(entry.model(), 0L));
+    }
+
+    // Runs disk work on the writer, in submission order
+    private void onDisk(Runnable task) {
+        if (diskWriter != null && !diskWriter.isShutdown()) {
+            diskWriter.execute(task);
+        }
+    }
+
+    // <disk path>/<model, made file-name safe>/<hash>.json
+    private Path diskFile(String key) {
+        int separator = key.lastIndexOf('/');
+        return modelDir(key.substring(0, separator)).resolve(key.substring(separator + 1) + ".json");
+    }
+
+    private Path modelDir(String model) {
+        return diskDir.resolve(model.replaceAll("[^A-Za-z0-9._-]", "_"));
+    }
+
+    private Entry readFromDisk(String key) {
+        if (diskDir == null) {
+            return null;
+        }
+        Path file = diskFile(key);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(file.toFile(), Entry.class);
+        } catch (IOException e) {
+            logger.warn("Dropping unreadable response cache entry {}: {}", file, e.getMessage());
+            onDisk(() -> deleteFromDisk(key));
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, Entry entry) {
+        if (diskDir == null) {
+            return;
+        }
+        Path file = diskFile(key);
+        try {
+            Files.createDirectories(file.getParent());
+            boolean replaced = Files.exists(file);
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            objectMapper.writeValue(tmp.toFile(), entry);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (!replaced && ++diskEntries > diskMaxEntries) {
+                trimDisk();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not write response cache entry {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void deleteFromDisk(String key) {
+        try {
+            if (Files.deleteIfExists(diskFile(key))) {
+                diskEntries--;
+            }
+        } catch (IOException e) {
+            logger.warn("Could not delete response cache entry for {}: {}", key, e.getMessage());
+        }
+    }
+
+    // Deletes the oldest files until a tenth of the cap is free, so this runs rarely
+    private void trimDisk() throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(diskDir)) {
+            files = walk.filter(path -> path.toString().endsWith(".json"))
+                    .sorted(Comparator.comparingLong(ResponseCache::lastModified))
+                    .toList();
+        }
+        int excess = files.size() - diskMaxEntries * 9 / 10;
+        for (int i = 0; i < excess; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+        diskEntries = files.size() - Math.max(0, excess);
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private int countDiskEntries() throws IOException {
+        try (Stream<Path> walk = Files.walk(diskDir)) {
+            return (int) walk.filter(path -> path.toString().endsWith(".json")).count();
+        }
+    }
+
+    /**
+     * Drops every cached answer of {@code model}, e.g. because it was pulled
+     * again. Its files are deleted in the background; its answers generated
+     * before this call are neither served from them nor cached. Answers of
+     * other models that are being generated are still cached.
+     */
+    public synchronized void invalidateModel(String model) {
+        entries.keySet().removeIf(key -> key.startsWith(model + "/"));
+        generations.merge(model, 1L, Long::sum);
+        invalidatedAt.put(model, System.currentTimeMillis());
+        onDisk(() -> {
+            try {
+                FileSystemUtils.deleteRecursively(modelDir(model));
+                diskEntries = countDiskEntries();
+            } catch (IOException e) {
+                logger.warn("Could not clear cached responses of {} on disk: {}", model, e.getMessage());
+            }
+        });
+        logger.info("Cached responses of {} cleared.", model);
+    }
+
+    /** Drops every cached answer; files are deleted in the background. */
+    public synchronized void clear() {
+        entries.clear();
+        clears++;
+        invalidatedAt.clear();
+        clearedAt = System.currentTimeMillis();
+        onDisk(() -> {
+            try {
+                FileSystemUtils.deleteRecursively(diskDir);
+                Files.createDirectories(diskDir);
+                diskEntries = 0;
+            } catch (IOException e) {
+                logger.warn("Could not clear the response cache on disk: {}", e.getMessage());
+            }
+        });
+        logger.info("Response cache cleared.");
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("entries", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("diskEntries", diskDir != null ? diskEntries : 0);
+        stats.put("hits", hits);
+        stats.put("diskHits", diskHits);
+        stats.put("misses", misses);
+        stats.put("bypassed", bypassed);
+        stats.put("expired", expired);
+        long lookups = hits + diskHits + misses;
+        stats.put("hitRate", lookups == 0 ? 0.0 : (double) (hits + diskHits) / lookups);
+        stats.put("savedInferenceMillis", savedMillis);
+        return stats;
+    }
+
+    /** Lets queued disk writes finish, for a few seconds at most. */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (diskWriter != null) {
+            diskWriter.shutdown();
+            diskWriter.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+}
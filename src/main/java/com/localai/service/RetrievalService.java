@@ -0,0 +1,185 @@
+package com.localai.service;
+
+import com.localai.vectorstore.MappedVectorStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Chat retrieval over the document store. Hybrid mode runs the vector search
+ * and a BM25 keyword search and fuses the two rankings with reciprocal rank
+ * fusion: each chunk scores {@code sum 1 / (rrf-k + rank)} over the lists it
+ * appears in. Exact identifiers such as clause or invoice numbers, which
+ * embeddings blur, are found by the keyword side; paraphrases by the vector
+ * side.
+ *
+ * Queries that are pure lookups (quoted, or made only of tokens with digits)
+ * go to the keyword index alone and skip the embedding round-trip; if that
+ * finds nothing they fall back to the vector search. Query embeddings come
+ * from {@link EmbeddingService#embedQuery}, which caches repeated questions.
+ *
+ * A retrieval can be scoped to a namespace (finance, health, legal, ...) or
+ * to one document; both searches then only see chunks inside that scope.
+ * While the store is still loading its indexes at startup, unscoped hybrid
+ * and keyword retrieval fall back to the (exact) vector search.
+ */
+@Service
+public class RetrievalService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetrievalService.class);
+
+    public enum Mode {
+        HYBRID, VECTOR, KEYWORD
+    }
+
+    private final MappedVectorStore vectorStore;
+    private final EmbeddingService embeddingService;
+    private final Mode defaultMode;
+    private final int candidates;
+    private final int rrfK;
+
+    public RetrievalService(MappedVectorStore vectorStore, EmbeddingService embeddingService,
+            @Value("${app.retrieval.mode:hybrid}") String mode,
+            @Value("${app.retrieval.candidates:20}") int candidates,
+            @Value("${app.retrieval.rrf-k:60}") int rrfK) {
+        this.vectorStore = vectorStore;
+        this.embeddingService = embeddingService;
+        Mode parsed = parseMode(mode);
+        this.defaultMode = parsed != null ? parsed : Mode.HYBRID;
+        this.candidates = Math.max(1, candidates);
+        this.rrfK = Math.max(1, rrfK);
+    }
+
+    public List<Document> retrieve(String query, int topK) {
+        return retrieve(query, topK, null, null);
+    }
+
+    /**
+     * The {@code topK} best chunks for {@code query}. {@code mode} may be
+     * null for the configured default, {@code scope} null to search
+     * everything (see {@link #scope}).
+     */
+    public List<Document> retrieve(String query, int topK, Mode mode, Filter.Expression scope) {
+        if (query == null || query.isBlank()) {
+            return List.of();
+        }
+        if (mode == null) {
+            mode = defaultMode;
+        }
+        if (mode != Mode.VECTOR && !vectorStore.hasKeywordIndex()) {
+            mode = Mode.VECTOR;
+        }
+        if (mode == Mode.HYBRID && isLookup(query)) {
+            List<Document> hits = vectorStore.keywordSearch(unquote(query), topK, scope);
+            if (!hits.isEmpty()) {
+                logger.debug("Keyword-only retrieval for lookup query, {} hits", hits.size());
+                return hits;
+            }
+            mode = Mode.VECTOR;
+        }
+        return switch (mode) {
+            case VECTOR -> vectorSearch(query, topK, scope);
+            case KEYWORD -> vectorStore.keywordSearch(unquote(query), topK, scope);
+            case HYBRID -> fuse(List.of(
+                    vectorSearch(query, Math.max(topK, candidates), scope),
+                    vectorStore.keywordSearch(query, Math.max(topK, candidates), scope)), topK);
+        };
+    }
+
+    private List<Document> vectorSearch(String query, int topK, Filter.Expression scope) {
+        return vectorStore.similaritySearch(embeddingService.embedQuery(query), topK,
+                SearchRequest.SIMILARITY_THRESHOLD_ACCEPT_ALL, scope);
+    }
+
+    /**
+     * Filter for chunks of {@code namespace} and/or the document
+     * {@code documentId}; null when both are blank.
+     */
+    public static Filter.Expression scope(String namespace, String documentId) {
+        Filter.Expression byNamespace = namespace == null || namespace.isBlank() ? null
+                : equalTo("namespace", DocumentService.namespace(namespace));
+        Filter.Expression byDocument = documentId == null || documentId.isBlank() ? null
+                : equalTo("document_id", documentId.trim());
+        if (byNamespace == null || byDocument == null) {
+            return byNamespace != null ? byNamespace : byDocument;
+        }
+        return new Filter.Expression(Filter.ExpressionType.AND, byNamespace, byDocument);
+    }
+
+    private static Filter.Expression equalTo(String key, String value) {
+        return new Filter.Expression(Filter.ExpressionType.EQ, new Filter.Key(key), new Filter.Value(value));
+    }
+
+    /**
+     * Reciprocal rank fusion of several rankings of the same chunks, matched
+     * by id. The fused score is added as {@code rrf_score} metadata.
+     */
+    List<Document> fuse(List<List<Document>> rankings, int topK) {
+        Map<String, Document> documents = new LinkedHashMap<>();
+        Map<String, Double> scores = new HashMap<>();
+        for (List<Document> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Document document = ranking.get(rank);
+                Document seen = documents.putIfAbsent(document.getId(), document);
+                if (seen != null) {
+                    // Keep the scores both searches attached
+                    document.getMetadata().forEach(seen.getMetadata()::putIfAbsent);
+                }
+                scores.merge(document.getId(), 1.0 / (rrfK + rank + 1), Double::sum);
+            }
+        }
+        List<Document> fused = new ArrayList<>(documents.values());
+        fused.sort((a, b) -> Double.compare(scores.get(b.getId()), scores.get(a.getId())));
+        if (fused.size() > topK) {
+            fused = new ArrayList<>(fused.subList(0, topK));
+        }
+        for (Document document : fused) {
+            document.getMetadata().put("rrf_score", scores.get(document.getId()));
+        }
+        return fused;
+    }
+
+    /** Quoted queries and queries made only of tokens with a digit in them. */
+    static boolean isLookup(String query) {
+        String trimmed = query.trim();
+        if (trimmed.length() > 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+            return true;
+        }
+        for (String token : trimmed.split("\\s+")) {
+            if (token.chars().noneMatch(Character::isDigit)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String unquote(String query) {
+        String trimmed = query.trim();
+        return trimmed.length() > 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")
+                ? trimmed.substring(1, trimmed.length() - 1)
+                : trimmed;
+    }
+
+    /** hybrid, vector or keyword; null when blank, meaning the configured default. */
+    public static Mode parseMode(String mode) {
+        if (mode == null || mode.isBlank()) {
+            return null;
+        }
+        try {
+            return Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown retrieval mode '" + mode + "' (hybrid, vector or keyword)");
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.localai.vectorstore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over chunk text, scored with Okapi BM25
+ * (k1 = 1.2, b = 0.75). Keyed by record ordinal like the rest of the store,
+ * so deletes are filtered at query time with the tombstones. Built from the
+ * chunk files when the store opens and extended as segments are published.
+ *
+ * Tokens are lower-cased runs of letters and digits. Runs joined by '.', '-'
+ * or '/' ("14.2", "de89-3704") are indexed whole and as their parts, so
+ * clause and account numbers match exactly. Term frequencies are capped at
+ * 255 (BM25 has long saturated by then).
+ *
+ * Not thread-safe; guarded by the MappedVectorStore lock.
+ */
+final class Bm25Index {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final Pattern TOKEN = Pattern.compile("[\\p{L}\\p{N}]+(?:[./-][\\p{L}\\p{N}]+)*");
+    private static final Pattern SEPARATOR = Pattern.compile("[./-]");
+    private static final Set<String> STOP_WORDS = Set.of("a", "an", "and", "are", "as", "at", "be", "by", "for",
+            "from", "has", "in", "is", "it", "its", "of", "on", "or", "that", "the", "this", "to", "was", "were",
+            "will", "with");
+    private static final Comparator<ScoredOrdinal> WORST_FIRST = Comparator.comparingDouble(ScoredOrdinal::score);
+
+    private static final class Postings {
+        private int[] ordinals = new int[2];
+        private byte[] frequencies = new byte[2];
+        private int size;
+
+        private void add(int ordinal, int frequency) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            ordinals[size] = ordinal;
+            frequencies[size] = (byte) Math.min(frequency, 255);
+            size++;
+        }
+    }
+
+    private final Map<String, Postings> postings = new HashMap<>();
+    private int[] lengths = new int[1024];
+    private int count; // ordinals indexed so far
+    private long totalLength;
+    private long postingCount;
+
+    /** Indexes the next record. Ordinals must be added in order, without gaps. */
+    void add(int ordinal, String text) {
+        if (ordinal != count) {
+            throw new IllegalStateException("Expected ordinal " + count + ", got " + ordinal);
+        }
+        Map<String, Integer> frequencies = new HashMap<>();
+        List<String> tokens = tokenize(text);
+        for (String token : tokens) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+        if (ordinal == lengths.length) {
+            lengths = Arrays.copyOf(lengths, lengths.length * 2);
+        }
+        lengths[ordinal] = tokens.size();
+        totalLength += tokens.size();
+        count++;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), term -> new Postings()).add(ordinal, entry.getValue());
+            postingCount++;
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * The {@code topK} live records with the highest BM25 score for the query;
+     * records that share no term with it are never returned.
+     */
+    List<ScoredOrdinal> search(String query, int topK, IntPredicate live) {
+        if (count == 0 || topK <= 0) {
+            return List.of();
+        }
+        float averageLength = Math.max(1f, (float) totalLength / count);
+        Map<Integer, Float> scores = new HashMap<>();
+        for (String term : new LinkedHashSet<>(tokenize(query))) {
+            Postings list = postings.get(term);
+            if (list == null) {
+                continue;
+            }
+            float idf = (float) Math.log(1 + (count - list.size + 0.5) / (list.size + 0.5));
+            for (int i = 0; i < list.size; i++) {
+                int ordinal = list.ordinals[i];
+                int frequency = list.frequencies[i] & 0xFF;
+                float norm = K1 * (1 - B + B * lengths[ordinal] / averageLength);
+                scores.merge(ordinal, idf * frequency * (K1 + 1) / (frequency + norm), Float::sum);
+            }
+        }
+
+        PriorityQueue<ScoredOrdinal> best = new PriorityQueue<>(WORST_FIRST);
+        for (Map.Entry<Integer, Float> entry : scores.entrySet()) {
+            if (!live.test(entry.getKey())) {
+                continue;
+            }
+            if (best.size() < topK) {
+                best.add(new ScoredOrdinal(entry.getKey(), entry.getValue()));
+            } else if (entry.getValue() > best.peek().score()) {
+                best.poll();
+                best.add(new ScoredOrdinal(entry.getKey(), entry.getValue()));
+            }
+        }
+        List<ScoredOrdinal> hits = new ArrayList<>(best);
+        hits.sort(WORST_FIRST.reversed());
+        return hits;
+    }
+
+    void clear() {
+        postings.clear();
+        lengths = new int[1024];
+        count = 0;
+        totalLength = 0;
+        postingCount = 0;
+    }
+
+    int terms() {
+        return postings.size();
+    }
+
+    long postings() {
+        return postingCount;
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        Matcher matcher = TOKEN.matcher(text.toLowerCase(Locale.ROOT));
+        while (matcher.find()) {
+            String token = matcher.group();
+            if (!STOP_WORDS.contains(token)) {
+                tokens.add(token);
+            }
+            if (SEPARATOR.matcher(token).find()) {
+                for (String part : SEPARATOR.split(token)) {
+                    if (!STOP_WORDS.contains(part)) {
+                        tokens.add(part);
+                    }
+                }
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,117 @@
+package com.localai.vectorstore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Chunk text and metadata, stored as records in a data file with a
+ * fixed-width offset index beside it. Written once through {@link Writer}.
+ *
+ * Index record (16 bytes): data offset (long), record length (int), reserved (int).
+ * Only the index is read when a segment is opened; record bodies are fetched
+ * with positional reads when a search result is materialised.
+ */
+final class ChunkFile implements Closeable {
+
+    private static final int INDEX_RECORD_BYTES = 16;
+
+    private final FileChannel data;
+    private final long[] offsets;
+    private final int[] lengths;
+
+    private ChunkFile(FileChannel data, long[] offsets, int[] lengths) {
+        this.data = data;
+        this.offsets = offsets;
+        this.lengths = lengths;
+    }
+
+    static ChunkFile open(Path dataPath, Path indexPath, int count) throws IOException {
+        long[] offsets = new long[count];
+        int[] lengths = new int[count];
+        try (FileChannel index = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            if (index.size() < (long) count * INDEX_RECORD_BYTES) {
+                throw new IOException("Chunk index is truncated: " + indexPath);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(count * INDEX_RECORD_BYTES);
+            while (buffer.hasRemaining()) {
+                if (index.read(buffer, buffer.position()) < 0) {
+                    throw new IOException("Chunk index is truncated: " + indexPath);
+                }
+            }
+            buffer.flip();
+            for (int i = 0; i < count; i++) {
+                offsets[i] = buffer.getLong();
+                lengths[i] = buffer.getInt();
+                buffer.getInt(); // reserved
+            }
+        }
+        return new ChunkFile(FileChannel.open(dataPath, StandardOpenOption.READ), offsets, lengths);
+    }
+
+    int count() {
+        return offsets.length;
+    }
+
+    byte[] read(int ordinal) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(lengths[ordinal]);
+        long position = offsets[ordinal];
+        while (buffer.hasRemaining()) {
+            if (data.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of chunk data at ordinal " + ordinal);
+            }
+        }
+        return buffer.array();
+    }
+
+    @Override
+    public void close() throws IOException {
+        data.close();
+    }
+
+    /**
+     * Streams records into a new data/index pair and syncs both on finish.
+     */
+    static final class Writer implements Closeable {
+
+        private final FileChannel data;
+        private final FileChannel index;
+        private long dataPosition;
+        private long indexPosition;
+
+        Writer(Path dataPath, Path indexPath) throws IOException {
+            this.data = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.index = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        void append(byte[] record) throws IOException {
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_RECORD_BYTES);
+            entry.putLong(dataPosition).putInt(record.length).putInt(0).flip();
+            dataPosition = writeFully(data, ByteBuffer.wrap(record), dataPosition);
+            indexPosition = writeFully(index, entry, indexPosition);
+        }
+
+        void finish() throws IOException {
+            data.force(true);
+            index.force(true);
+        }
+
+        private static long writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            return position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            data.close();
+            index.close();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.localai.vectorstore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent embedding cache keyed by (embedding model, SHA-256 of the text).
+ *
+ * Vectors are appended to a single file as float32 records; the heap only
+ * holds an access-ordered key to offset map, capped at {@code maxEntries}
+ * with least-recently-used eviction. Evicted and overwritten records stay in
+ * the file until it holds twice as many records as live entries, at which
+ * point it is rewritten in LRU order, so recency also survives a restart.
+ *
+ * Record layout: key length (int), key (UTF-8), dimensions (int), floats.
+ * Writes are not synced; a torn record at the tail is dropped on load.
+ */
+public class EmbeddingCache implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingCache.class);
+
+    private static final int MIN_COMPACTION_RECORDS = 1024;
+
+    private final Path file;
+    private final int maxEntries;
+    private FileChannel channel;
+    private long end;
+    private int records;
+    private long hits;
+    private long misses;
+
+    private final LinkedHashMap<String, Long> offsets = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    public EmbeddingCache(Path file, int maxEntries) throws IOException {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        this.file = file;
+        this.maxEntries = maxEntries;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        load();
+        logger.info("Opened embedding cache at {} with {} entries.", file, offsets.size());
+    }
+
+    private void load() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer lengths = ByteBuffer.allocate(Integer.BYTES);
+        while (position + Integer.BYTES <= size) {
+            int keyLength = readInt(lengths, position);
+            long dimensionsAt = position + Integer.BYTES + keyLength;
+            if (keyLength <= 0 || dimensionsAt + Integer.BYTES > size) {
+                break;
+            }
+            int dimensions = readInt(lengths, dimensionsAt);
+            long next = dimensionsAt + Integer.BYTES + (long) dimensions * Float.BYTES;
+            if (dimensions <= 0 || next > size) {
+                break;
+            }
+            ByteBuffer key = ByteBuffer.allocate(keyLength);
+            readFully(key, position + Integer.BYTES);
+            offsets.put(new String(key.array(), StandardCharsets.UTF_8), position);
+            records++;
+            position = next;
+        }
+        if (position < size) {
+            logger.warn("Dropping {} bytes of incomplete records from {}.", size - position, file);
+            channel.truncate(position);
+        }
+        end = position;
+    }
+
+    public static String key(String model, String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return model + "/" + HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Returns the cached embedding for the text, or null on a miss.
+     */
+    public synchronized List<Double> get(String model, String text) throws IOException {
+        Long offset = offsets.get(key(model, text));
+        if (offset == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        ByteBuffer lengths = ByteBuffer.allocate(Integer.BYTES);
+        long dimensionsAt = offset + Integer.BYTES + readInt(lengths, offset);
+        int dimensions = readInt(lengths, dimensionsAt);
+        ByteBuffer vector = ByteBuffer.allocate(dimensions * Float.BYTES);
+        readFully(vector, dimensionsAt + Integer.BYTES);
+        vector.flip();
+        List<Double> embedding = new ArrayList<>(dimensions);
+        for (int i = 0; i < dimensions; i++) {
+            embedding.add((double) vector.getFloat());
+        }
+        return embedding;
+    }
+
+    public synchronized void put(String model, String text, List<Double> embedding) throws IOException {
+        String key = key(model, text);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES * 2 + keyBytes.length
+                + embedding.size() * Float.BYTES);
+        record.putInt(keyBytes.length).put(keyBytes).putInt(embedding.size());
+        for (Double value : embedding) {
+            record.putFloat(value.floatValue());
+        }
+        record.flip();
+        long offset = end;
+        while (record.hasRemaining()) {
+            end += channel.write(record, end);
+        }
+        offsets.put(key, offset);
+        records++;
+        if (records >= MIN_COMPACTION_RECORDS && records > 2 * offsets.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the file with only the live entries, least recently used first.
+     */
+    private void compact() throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Map<String, Long> moved = new LinkedHashMap<>();
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            ByteBuffer lengths = ByteBuffer.allocate(Integer.BYTES);
+            for (Map.Entry<String, Long> entry : offsets.entrySet()) {
+                long offset = entry.getValue();
+                int keyLength = readInt(lengths, offset);
+                int dimensions = readInt(lengths, offset + Integer.BYTES + keyLength);
+                ByteBuffer record = ByteBuffer.allocate(Integer.BYTES * 2 + keyLength + dimensions * Float.BYTES);
+                readFully(record, offset);
+                record.flip();
+                moved.put(entry.getKey(), position);
+                while (record.hasRemaining()) {
+                    position += out.write(record, position);
+                }
+            }
+            out.force(true);
+        }
+        channel.close();
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        end = channel.size();
+        offsets.clear();
+        offsets.putAll(moved); // iteration order is LRU order, so recency is kept
+        records = offsets.size();
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", offsets.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        long lookups = hits + misses;
+        stats.put("hitRate", lookups == 0 ? 0.0 : (double) hits / lookups);
+        stats.put("fileBytes", end);
+        return stats;
+    }
+
+    private int readInt(ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        readFully(buffer, position);
+        return buffer.getInt(0);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of embedding cache at " + position);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+}
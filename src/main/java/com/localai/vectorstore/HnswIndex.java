@@ -0,0 +1,371 @@
+package com.localai.vectorstore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+/**
+ * Hierarchical Navigable Small World graph over vector ordinals
+ * (Malkov &amp; Yashunin). Similarity is the dot product of normalised
+ * vectors, i.e. cosine similarity, higher is better.
+ *
+ * The graph only stores links; vectors are read through {@link Vectors}
+ * so they stay in the memory-mapped file. Not thread-safe: callers must
+ * serialise inserts against searches (the store does this with its
+ * read/write lock).
+ */
+final class HnswIndex {
+
+    private static final int MAGIC = 0x484E5357; // "HNSW"
+    private static final int VERSION = 1;
+    private static final Comparator<ScoredOrdinal> WORST_FIRST = Comparator.comparingDouble(ScoredOrdinal::score);
+    private static final Comparator<ScoredOrdinal> BEST_FIRST = WORST_FIRST.reversed();
+
+    /** Access to the vectors the graph is built over. */
+    interface Vectors {
+        float[] get(int ordinal);
+
+        float dot(int ordinal, float[] query);
+    }
+
+    /** Graph tuning knobs. {@code efSearch} can be overridden per query. */
+    record Parameters(int m, int efConstruction, int efSearch) {
+        Parameters {
+            if (m < 2 || efConstruction < 1 || efSearch < 1) {
+                throw new IllegalArgumentException("Invalid HNSW parameters: m=" + m
+                        + ", efConstruction=" + efConstruction + ", efSearch=" + efSearch);
+            }
+        }
+    }
+
+    private final Parameters parameters;
+    private final Vectors vectors;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+
+    // links[node][level] = {count, n1, n2, ...}
+    private int[][][] links = new int[1024][][];
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    HnswIndex(Parameters parameters, Vectors vectors) {
+        this.parameters = parameters;
+        this.vectors = vectors;
+        this.levelMultiplier = 1.0 / Math.log(parameters.m());
+    }
+
+    Parameters parameters() {
+        return parameters;
+    }
+
+    /**
+     * The same graph, reading its vectors through {@code vectors} from now on.
+     * Lets a graph be built over vectors before they are part of the store.
+     */
+    HnswIndex rebind(Vectors vectors) {
+        HnswIndex index = new HnswIndex(parameters, vectors);
+        index.links = links;
+        index.size = size;
+        index.entryPoint = entryPoint;
+        index.maxLevel = maxLevel;
+        return index;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Inserts the next ordinal. Ordinals must be inserted densely in order,
+     * matching the vector file.
+     */
+    void insert(int ordinal) {
+        if (ordinal != size) {
+            throw new IllegalArgumentException("Expected ordinal " + size + " but got " + ordinal);
+        }
+        int level = (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+        ensureCapacity(ordinal + 1);
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[maxLinks(l) + 1];
+        }
+        links[ordinal] = nodeLinks;
+        size = ordinal + 1;
+
+        if (entryPoint < 0) {
+            entryPoint = ordinal;
+            maxLevel = level;
+            return;
+        }
+
+        float[] vector = vectors.get(ordinal);
+        int current = entryPoint;
+        float currentScore = vectors.dot(current, vector);
+        for (int l = maxLevel; l > level; l--) {
+            ScoredOrdinal closest = greedyClosest(vector, current, currentScore, l);
+            current = closest.ordinal();
+            currentScore = closest.score();
+        }
+
+        List<ScoredOrdinal> entryPoints = List.of(new ScoredOrdinal(current, currentScore));
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<ScoredOrdinal> candidates = searchLayer(vector, entryPoints, parameters.efConstruction(), l, null);
+            List<ScoredOrdinal> neighbours = selectNeighbours(candidates, parameters.m());
+            for (ScoredOrdinal neighbour : neighbours) {
+                addLink(ordinal, neighbour.ordinal(), l);
+                addLink(neighbour.ordinal(), ordinal, l);
+            }
+            entryPoints = candidates;
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = ordinal;
+        }
+    }
+
+    /**
+     * Returns up to {@code k} accepted ordinals, best first. Rejected nodes
+     * (tombstones, filtered out) are still traversed so the graph stays
+     * connected, they are just never returned.
+     */
+    List<ScoredOrdinal> search(float[] query, int k, int efSearch, IntPredicate accept) {
+        if (entryPoint < 0 || k <= 0) {
+            return List.of();
+        }
+        int current = entryPoint;
+        float currentScore = vectors.dot(current, query);
+        for (int l = maxLevel; l > 0; l--) {
+            ScoredOrdinal closest = greedyClosest(query, current, currentScore, l);
+            current = closest.ordinal();
+            currentScore = closest.score();
+        }
+        List<ScoredOrdinal> hits = searchLayer(query, List.of(new ScoredOrdinal(current, currentScore)),
+                Math.max(efSearch, k), 0, accept);
+        return hits.size() > k ? hits.subList(0, k) : hits;
+    }
+
+    private ScoredOrdinal greedyClosest(float[] query, int start, float startScore, int level) {
+        int current = start;
+        float currentScore = startScore;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbours = links[current][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                float score = vectors.dot(neighbours[i], query);
+                if (score > currentScore) {
+                    currentScore = score;
+                    current = neighbours[i];
+                    improved = true;
+                }
+            }
+        }
+        return new ScoredOrdinal(current, currentScore);
+    }
+
+    /**
+     * Beam search on one layer. Returns the best {@code ef} nodes that pass
+     * {@code accept} (all nodes when it is null), sorted best first.
+     */
+    private List<ScoredOrdinal> searchLayer(float[] query, List<ScoredOrdinal> entryPoints, int ef, int level,
+            IntPredicate accept) {
+        BitSet visited = new BitSet(size);
+        PriorityQueue<ScoredOrdinal> candidates = new PriorityQueue<>(BEST_FIRST);
+        PriorityQueue<ScoredOrdinal> results = new PriorityQueue<>(WORST_FIRST);
+
+        for (ScoredOrdinal entry : entryPoints) {
+            if (!visited.get(entry.ordinal())) {
+                visited.set(entry.ordinal());
+                candidates.add(entry);
+                if (accept == null || accept.test(entry.ordinal())) {
+                    offer(results, entry, ef);
+                }
+            }
+        }
+
+        while (!candidates.isEmpty()) {
+            ScoredOrdinal candidate = candidates.poll();
+            if (results.size() >= ef && candidate.score() < results.peek().score()) {
+                break;
+            }
+            int[] neighbours = links[candidate.ordinal()][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float score = vectors.dot(neighbour, query);
+                if (results.size() < ef || score > results.peek().score()) {
+                    candidates.add(new ScoredOrdinal(neighbour, score));
+                    if (accept == null || accept.test(neighbour)) {
+                        offer(results, new ScoredOrdinal(neighbour, score), ef);
+                    }
+                }
+            }
+        }
+
+        List<ScoredOrdinal> sorted = new ArrayList<>(results);
+        sorted.sort(BEST_FIRST);
+        return sorted;
+    }
+
+    private static void offer(PriorityQueue<ScoredOrdinal> results, ScoredOrdinal hit, int ef) {
+        results.add(hit);
+        if (results.size() > ef) {
+            results.poll();
+        }
+    }
+
+    /**
+     * Neighbour selection heuristic: keep a candidate only if it is closer to
+     * the base node than to any neighbour already kept. This favours links in
+     * different directions over a tight cluster.
+     */
+    private List<ScoredOrdinal> selectNeighbours(List<ScoredOrdinal> candidates, int max) {
+        List<ScoredOrdinal> selected = new ArrayList<>(max);
+        List<float[]> selectedVectors = new ArrayList<>(max);
+        for (ScoredOrdinal candidate : candidates) {
+            if (selected.size() >= max) {
+                break;
+            }
+            float[] candidateVector = vectors.get(candidate.ordinal());
+            boolean diverse = true;
+            for (int i = 0; i < selected.size(); i++) {
+                if (dot(candidateVector, selectedVectors.get(i)) > candidate.score()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+                selectedVectors.add(candidateVector);
+            }
+        }
+        return selected;
+    }
+
+    private void addLink(int from, int to, int level) {
+        int[] neighbours = links[from][level];
+        int count = neighbours[0];
+        int max = maxLinks(level);
+        if (count < max) {
+            neighbours[count + 1] = to;
+            neighbours[0] = count + 1;
+            return;
+        }
+
+        // Full: re-select among the existing links plus the new one.
+        float[] base = vectors.get(from);
+        List<ScoredOrdinal> candidates = new ArrayList<>(count + 1);
+        for (int i = 1; i <= count; i++) {
+            candidates.add(new ScoredOrdinal(neighbours[i], vectors.dot(neighbours[i], base)));
+        }
+        candidates.add(new ScoredOrdinal(to, vectors.dot(to, base)));
+        candidates.sort(BEST_FIRST);
+        List<ScoredOrdinal> kept = selectNeighbours(candidates, max);
+        neighbours[0] = kept.size();
+        for (int i = 0; i < kept.size(); i++) {
+            neighbours[i + 1] = kept.get(i).ordinal();
+        }
+    }
+
+    private int maxLinks(int level) {
+        return level == 0 ? parameters.m() * 2 : parameters.m();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > links.length) {
+            links = Arrays.copyOf(links, Math.max(capacity, links.length * 2));
+        }
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float sum = 0f;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Writes the graph to a temp file and moves it into place, so a crash
+     * leaves either the old or the new graph, never a torn one.
+     */
+    void save(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(parameters.m());
+            out.writeInt(size);
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            for (int node = 0; node < size; node++) {
+                int[][] nodeLinks = links[node];
+                out.writeInt(nodeLinks.length);
+                for (int[] level : nodeLinks) {
+                    out.writeInt(level[0]);
+                    for (int i = 1; i <= level[0]; i++) {
+                        out.writeInt(level[i]);
+                    }
+                }
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a saved graph, or returns null if it is missing, unreadable or was
+     * built with a different {@code m}; the caller then rebuilds from vectors.
+     */
+    static HnswIndex load(Path path, Parameters parameters, Vectors vectors) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != parameters.m()) {
+                return null;
+            }
+            HnswIndex index = new HnswIndex(parameters, vectors);
+            int size = in.readInt();
+            index.entryPoint = in.readInt();
+            index.maxLevel = in.readInt();
+            index.ensureCapacity(size);
+            for (int node = 0; node < size; node++) {
+                int levels = in.readInt();
+                int[][] nodeLinks = new int[levels][];
+                for (int l = 0; l < levels; l++) {
+                    int count = in.readInt();
+                    nodeLinks[l] = new int[index.maxLinks(l) + 1];
+                    nodeLinks[l][0] = count;
+                    for (int i = 1; i <= count; i++) {
+                        nodeLinks[l][i] = in.readInt();
+                    }
+                }
+                index.links[node] = nodeLinks;
+            }
+            index.size = size;
+            // Keep level sampling from repeating the sequence used before the restart.
+            index.random.setSeed(42L + size);
+            return index;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.localai.vectorstore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Contiguous float32 embedding records in a read-only memory-mapped file.
+ *
+ * Layout: a 32 byte header (magic, version, dimensions, record count) followed
+ * by {@code count * dimensions} little-endian floats. Files are written once
+ * through {@link Writer} and never modified afterwards. They are mapped in
+ * fixed-size regions so a file can grow past the 2 GB limit of a single
+ * MappedByteBuffer, and the pages live in the OS page cache instead of the heap.
+ */
+final class MappedVectorFile implements Closeable {
+
+    private static final int MAGIC = 0x4C564543; // "LVEC"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int REGION_RECORDS = 4096;
+    private static final VectorKernel KERNEL = VectorKernel.get();
+    private static final ThreadLocal<float[]> SCRATCH = ThreadLocal.withInitial(() -> new float[0]);
+
+    private final FileChannel channel;
+    private final int dimensions;
+    private final int count;
+    private final List<FloatBuffer> regions = new ArrayList<>();
+
+    private MappedVectorFile(FileChannel channel, int dimensions, int count) throws IOException {
+        this.channel = channel;
+        this.dimensions = dimensions;
+        this.count = count;
+        long recordBytes = (long) dimensions * Float.BYTES;
+        for (int first = 0; first < count; first += REGION_RECORDS) {
+            int records = Math.min(REGION_RECORDS, count - first);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_BYTES + first * recordBytes, records * recordBytes);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            regions.add(buffer.asFloatBuffer());
+        }
+    }
+
+    static MappedVectorFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Vector file is truncated: " + path);
+                }
+            }
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a vector file: " + path);
+            }
+            int dimensions = header.getInt(8);
+            int count = (int) header.getLong(16);
+            if (channel.size() < HEADER_BYTES + (long) count * dimensions * Float.BYTES) {
+                throw new IOException("Vector file is truncated: " + path);
+            }
+            return new MappedVectorFile(channel, dimensions, count);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    int count() {
+        return count;
+    }
+
+    float[] get(int ordinal) {
+        float[] out = new float[dimensions];
+        regions.get(ordinal / REGION_RECORDS).get((ordinal % REGION_RECORDS) * dimensions, out);
+        return out;
+    }
+
+    float dot(int ordinal, float[] query) {
+        // One bulk copy out of the mapping, then a kernel over a plain array
+        float[] record = SCRATCH.get();
+        if (record.length < dimensions) {
+            record = new float[dimensions];
+            SCRATCH.set(record);
+        }
+        regions.get(ordinal / REGION_RECORDS).get((ordinal % REGION_RECORDS) * dimensions, record, 0, dimensions);
+        return KERNEL.dot(record, 0, query);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Streams vectors into a new file. The header, including the record count,
+     * is written last, so a file that was never finished reads back as invalid.
+     */
+    static final class Writer implements Closeable {
+
+        private final FileChannel channel;
+        private final int dimensions;
+        private final ByteBuffer record;
+        private long position = HEADER_BYTES;
+        private int count;
+
+        Writer(Path path, int dimensions) throws IOException {
+            if (dimensions <= 0) {
+                throw new IllegalArgumentException("Dimensions must be positive: " + dimensions);
+            }
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.dimensions = dimensions;
+            this.record = ByteBuffer.allocate(dimensions * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        void append(float[] vector) throws IOException {
+            if (vector.length != dimensions) {
+                throw new IllegalArgumentException(
+                        "Expected " + dimensions + " dimensions but got " + vector.length);
+            }
+            record.clear();
+            record.asFloatBuffer().put(vector);
+            while (record.hasRemaining()) {
+                position += channel.write(record, position);
+            }
+            count++;
+        }
+
+        /** Writes the header and syncs the file to disk. */
+        void finish() throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(dimensions).putInt(0).putLong(count).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
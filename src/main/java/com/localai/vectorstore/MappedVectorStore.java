@@ -0,0 +1,1480 @@
+package com.localai.vectorstore;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * File-backed VectorStore that replaces the SimpleVectorStore JSON snapshot.
+ *
+ * Embeddings are L2-normalised and kept as float32 records in memory-mapped
+ * files, so cosine similarity is a plain dot product and the heap only holds
+ * small offset indexes. Chunk text and metadata are read back only for hits.
+ *
+ * The store is an append-only log of immutable segments ({@link VectorSegment}).
+ * Every {@link #add} writes its chunks to a new segment and then publishes it
+ * by atomically replacing the {@code MANIFEST}, so the cost of a write is
+ * proportional to the new chunks only and a crash can never damage data that
+ * was already committed. Deletes go to {@code tombstones.bin}. A background
+ * compactor merges runs of small adjacent segments; merging keeps the global
+ * ordinal of every chunk, so the graph, the quantized copy and the tombstones
+ * stay valid across a compaction.
+ *
+ * Deleted chunks are reclaimed by {@link #reclaim}, which the compactor runs
+ * once {@code compactionReclaimRatio} of the store is deleted: the live
+ * chunks are copied into one new segment and the graph, quantized copy and
+ * keyword and partition indexes are rebuilt for the new ordinals, all
+ * without holding the lock; only the swap blocks searches.
+ *
+ * Searches go through an HNSW graph ({@code hnsw.graph}) unless the flat
+ * index is configured. The graph is derived data: it is saved periodically
+ * and on shutdown, and any vectors appended after the last save are
+ * re-inserted when the store is opened.
+ *
+ * With {@code quantization=int8} an in-heap int8 copy of the vectors is used
+ * to score candidates (both in the graph and in the flat scan), and the best
+ * {@code k * rerankFactor} candidates are re-ranked against the float32
+ * vectors in the mapped files.
+ *
+ * Unless disabled, an in-heap BM25 index over the chunk text
+ * ({@link Bm25Index}) backs {@link #keywordSearch}. It is rebuilt from the
+ * segment files when the store is opened and extended on every publish, so
+ * it covers whatever path the chunks came in by.
+ *
+ * Searches can be scoped with a filter expression on {@code namespace} and
+ * {@code document_id} ({@link PartitionIndex}). The filter is resolved to a
+ * set of ordinals up front; small sets are scanned exactly, larger ones
+ * restrict which graph nodes may be returned. Either way no chunk outside the
+ * scope is ever returned, and with the scan none is even scored.
+ *
+ * The segments are mapped when the store is opened; the derived indexes
+ * (graph, quantized copy, keyword and partition indexes) are built from them
+ * by {@link #loadIndexes}, in the background with {@code asyncLoad}. Until
+ * then unfiltered vector searches scan the mapped vectors exactly, and
+ * anything needing the other indexes waits up to {@code loadWaitMillis}.
+ *
+ * Exact scans score vectors with {@link VectorKernel} (SIMD where the Vector
+ * API is available) and are split across a fork/join pool once they cover
+ * {@code scanParallelThreshold} chunks.
+ */
+public class MappedVectorStore implements VectorStore, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedVectorStore.class);
+
+    private static final Pattern TOMBSTONES_FILE = Pattern.compile("tombstones(-\\d+)?\\.bin");
+    private static final String GRAPH_FILE = "hnsw.graph";
+    private static final int GRAPH_SAVE_INTERVAL = 1000;
+    private static final int BOXED_DOUBLE_BYTES = 24; // Double object plus its list slot
+    private static final Comparator<ScoredOrdinal> WORST_FIRST = Comparator.comparingDouble(ScoredOrdinal::score);
+    // Filtered searches over at most this many chunks scan them exactly
+    // instead of walking a graph where most nodes are filtered out.
+    private static final int FILTERED_SCAN_LIMIT = 20_000;
+    private static final int MAX_FILTERED_EF_FACTOR = 8;
+
+    /** Namespace of chunks ingested without one, including all chunks from before namespaces. */
+    public static final String DEFAULT_NAMESPACE = "default";
+
+    private final Path directory;
+    private final EmbeddingClient embeddingClient;
+    private final VectorStoreOptions options;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong nextSegmentId = new AtomicLong(1);
+
+    // Live segments in ordinal order; bases[i] is the global ordinal of the
+    // first record of segments.get(i). Both are replaced, never mutated.
+    private List<VectorSegment> segments = List.of();
+    private int[] bases = new int[0];
+    private volatile int size;
+    private int dimensions; // 0 until the first add
+    private TombstoneLog tombstones;
+    private String tombstonesFile; // as named in the manifest
+    private Map<String, Integer> idIndex; // built lazily, only deletes need it
+    private HnswIndex graph; // null when the flat index is configured, or until loaded
+    private int unsavedGraphInserts;
+    private ScalarQuantizedVectors quantized; // null unless int8 quantization is configured
+    private Bm25Index keywords; // null when the keyword index is disabled
+    private PartitionIndex partitions = new PartitionIndex();
+    private int indexedRecords; // records read into the keyword and partition indexes
+    private final ScheduledExecutorService compactor; // null when compaction is disabled
+    private final ForkJoinPool scanPool; // null when scans run on the calling thread only
+
+    // Set once the derived indexes (graph, quantized copy, keyword and
+    // partition indexes) cover the store; until then they are null or empty.
+    private volatile boolean loaded;
+    private final CountDownLatch loadLatch = new CountDownLatch(1);
+    private volatile Exception loadFailure;
+    private final long loadStarted = System.nanoTime();
+    private volatile long loadMillis = -1;
+    private final Thread loader; // null when loaded in the constructor
+
+    // Candidate scoring for the graph and the flat scan. Goes through the
+    // quantized copy when there is one.
+    private final HnswIndex.Vectors vectorView = new HnswIndex.Vectors() {
+        @Override
+        public float[] get(int ordinal) {
+            return vector(ordinal);
+        }
+
+        @Override
+        public float dot(int ordinal, float[] query) {
+            return quantized != null ? quantized.dot(ordinal, query) : fullDot(ordinal, query);
+        }
+    };
+
+    private final HnswIndex.Vectors fullPrecisionView = new HnswIndex.Vectors() {
+        @Override
+        public float[] get(int ordinal) {
+            return vector(ordinal);
+        }
+
+        @Override
+        public float dot(int ordinal, float[] query) {
+            return fullDot(ordinal, query);
+        }
+    };
+
+    public MappedVectorStore(Path directory, EmbeddingClient embeddingClient, VectorStoreOptions options)
+            throws IOException {
+        this.directory = directory;
+        this.embeddingClient = embeddingClient;
+        this.options = options;
+        Files.createDirectories(directory);
+
+        SegmentManifest manifest = SegmentManifest.read(directory, objectMapper);
+        List<VectorSegment> opened = new ArrayList<>();
+        for (SegmentManifest.Entry entry : manifest.segments()) {
+            opened.add(VectorSegment.open(directory, entry.id(), entry.count()));
+        }
+        setSegments(opened);
+        dimensions = manifest.dimensions();
+        nextSegmentId.set(Math.max(manifest.nextSegmentId(), deleteOrphans(manifest) + 1));
+        tombstonesFile = manifest.tombstones();
+        tombstones = TombstoneLog.open(directory.resolve(tombstonesFile));
+
+        if (options.isAsyncLoad()) {
+            loader = new Thread(this::loadInBackground, "vectorstore-loader");
+            loader.setDaemon(true);
+            loader.start();
+        } else {
+            loader = null;
+            try {
+                loadIndexes();
+            } finally {
+                loadLatch.countDown();
+            }
+        }
+
+        if (options.getCompactionIntervalSeconds() > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "vectorstore-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = options.getCompactionIntervalSeconds();
+            compactor.scheduleWithFixedDelay(this::compactInBackground, interval, interval, TimeUnit.SECONDS);
+        } else {
+            compactor = null;
+        }
+        int scanThreads = options.getScanThreads();
+        scanPool = scanThreads > 1 ? new ForkJoinPool(scanThreads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("vectorstore-scan-" + thread.getPoolIndex());
+            return thread;
+        }, null, false) : null;
+        logger.info("Opened vector store at {} with {} chunks in {} segments ({} index{}).", directory, size,
+                segments.size(), options.getIndex(), loaded ? "" : ", indexes loading in the background");
+    }
+
+    private void loadInBackground() {
+        try {
+            loadIndexes();
+        } catch (Exception e) {
+            loadFailure = e;
+            logger.error("Failed to load vector store indexes; only unfiltered exact search is available", e);
+        } finally {
+            loadLatch.countDown();
+        }
+    }
+
+    /**
+     * Builds the derived indexes for the segments as they are now, without
+     * holding the lock, then swaps them in and catches up with whatever was
+     * added meanwhile. Starts over if a clear or merge replaced the segments.
+     */
+    private void loadIndexes() throws IOException {
+        while (!loaded) {
+            List<VectorSegment> snapshot;
+            int width;
+            lock.readLock().lock();
+            try {
+                snapshot = segments;
+                width = dimensions;
+            } finally {
+                lock.readLock().unlock();
+            }
+            HnswIndex saved = options.isHnswEnabled()
+                    ? HnswIndex.load(directory.resolve(GRAPH_FILE), graphParameters(), vectorView)
+                    : null;
+            Rebuilt rebuilt;
+            try {
+                rebuilt = rebuild(snapshot, width, saved);
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                if (isCurrent(snapshot)) {
+                    throw e;
+                }
+                continue; // a segment was closed under us by a clear or merge
+            }
+            lock.writeLock().lock();
+            try {
+                if (!startsWith(segments, snapshot)) {
+                    continue;
+                }
+                install(rebuilt, rebuilt.count());
+                if (graph != null && (saved == null || saved.size() != graph.size())) {
+                    saveGraph();
+                }
+                loaded = true;
+                loadMillis = (System.nanoTime() - loadStarted) / 1_000_000;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        logger.info("Vector store indexes loaded for {} chunks in {} ms.", size, loadMillis);
+    }
+
+    /**
+     * Swaps in indexes built over the first {@code count} ordinals and
+     * extends them to the rest of the store. Called under the write lock.
+     */
+    private void install(Rebuilt rebuilt, int count) throws IOException {
+        quantized = rebuilt.quantized();
+        if (quantized == null && options.isQuantized() && size > 0) {
+            quantized = new ScalarQuantizedVectors(dimensions);
+        }
+        for (int ordinal = count; quantized != null && ordinal < size; ordinal++) {
+            quantized.add(vector(ordinal));
+        }
+        if (options.isHnswEnabled()) {
+            graph = rebuilt.graph() != null ? rebuilt.graph().rebind(vectorView)
+                    : new HnswIndex(graphParameters(), vectorView);
+            for (int ordinal = graph.size(); ordinal < size; ordinal++) {
+                graph.insert(ordinal);
+            }
+        }
+        keywords = rebuilt.keywords();
+        partitions = rebuilt.partitions();
+        indexedRecords = count;
+        indexRecords();
+    }
+
+    private HnswIndex.Parameters graphParameters() {
+        return new HnswIndex.Parameters(options.getHnswM(), options.getHnswEfConstruction(),
+                options.getHnswEfSearch());
+    }
+
+    private boolean isCurrent(List<VectorSegment> snapshot) {
+        lock.readLock().lock();
+        try {
+            return startsWith(segments, snapshot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static boolean startsWith(List<VectorSegment> list, List<VectorSegment> prefix) {
+        return list.size() >= prefix.size() && list.subList(0, prefix.size()).equals(prefix);
+    }
+
+    /**
+     * Waits for the background load, up to {@code app.vectorstore.load.wait-ms}
+     * or, with {@code untilLoaded}, for as long as it takes. Needed by
+     * everything that uses the keyword or partition indexes.
+     */
+    private void awaitLoaded(boolean untilLoaded) {
+        if (loaded) {
+            return;
+        }
+        try {
+            if (untilLoaded) {
+                loadLatch.await();
+            } else if (!loadLatch.await(options.getLoadWaitMillis(), TimeUnit.MILLISECONDS)) {
+                throw new VectorStoreLoadingException("The vector store is still loading its indexes", false);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VectorStoreLoadingException("Interrupted while waiting for the vector store to load", false);
+        }
+        if (!loaded) {
+            throw new VectorStoreLoadingException("The vector store indexes failed to load: "
+                    + (loadFailure != null ? loadFailure.getMessage() : "store closed"), true);
+        }
+    }
+
+    /** Whether the derived indexes are loaded and every kind of search is available. */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * LOADING while the indexes are built in the background (unfiltered
+     * vector searches then scan exactly, everything else waits), READY, or
+     * FAILED.
+     */
+    public Map<String, Object> loadStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("status", loaded ? "READY" : loadLatch.getCount() > 0 ? "LOADING" : "FAILED");
+        status.put("chunks", size);
+        if (loaded) {
+            status.put("loadMillis", loadMillis);
+        } else if (loadLatch.getCount() > 0) {
+            status.put("elapsedMillis", (System.nanoTime() - loadStarted) / 1_000_000);
+        } else if (loadFailure != null) {
+            status.put("error", loadFailure.getMessage());
+        }
+        return status;
+    }
+
+    /**
+     * Reads every record not indexed yet into the keyword and partition
+     * indexes. Deleted records are indexed empty in the keyword index, which
+     * keeps ordinals aligned, and left out of the partitions.
+     */
+    private void indexRecords() throws IOException {
+        for (int ordinal = indexedRecords; ordinal < size; ordinal++) {
+            if (isLive(ordinal)) {
+                JsonNode node = objectMapper.readTree(record(ordinal));
+                if (keywords != null) {
+                    keywords.add(ordinal, node.path("content").asText(""));
+                }
+                partitions.add(ordinal, node.path("metadata"));
+            } else if (keywords != null) {
+                keywords.add(ordinal, "");
+            }
+        }
+        indexedRecords = size;
+    }
+
+    /**
+     * Removes segment and tombstone files the manifest does not reference:
+     * segments from a write that crashed before it was published, or
+     * merged-away segments and replaced tombstone logs whose files could not
+     * be deleted at the time. Returns the highest segment id seen on disk.
+     */
+    private long deleteOrphans(SegmentManifest manifest) throws IOException {
+        Set<Long> live = new HashSet<>();
+        manifest.segments().forEach(entry -> live.add(entry.id()));
+        long highest = 0;
+        Set<Long> orphans = new HashSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                long id = VectorSegment.idOf(file);
+                highest = Math.max(highest, id);
+                if (id >= 0 && !live.contains(id)) {
+                    orphans.add(id);
+                }
+                String name = file.getFileName().toString();
+                if (TOMBSTONES_FILE.matcher(name).matches() && !name.equals(manifest.tombstones())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        if (!orphans.isEmpty()) {
+            logger.info("Removing {} unreferenced segments from {}.", orphans.size(), directory);
+            orphans.forEach(id -> VectorSegment.delete(directory, id));
+        }
+        return highest;
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        // Embed and write the new segment outside the lock: embedding is a
+        // network round-trip per chunk, and an unpublished segment is private.
+        Bulk bulk = openBulk();
+        try {
+            bulk.add(documents);
+            bulk.commit();
+        } catch (IOException e) {
+            bulk.abort();
+            throw new UncheckedIOException("Failed to persist chunks to vector store", e);
+        } catch (RuntimeException e) {
+            bulk.abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts a bulk write: any number of {@link Bulk#add} calls go into a
+     * single new segment, which {@link Bulk#commit} publishes with one
+     * manifest write. Nothing is searchable before the commit. A Bulk is
+     * used by one thread at a time.
+     */
+    public Bulk openBulk() {
+        return new Bulk();
+    }
+
+    public final class Bulk {
+
+        private VectorSegment.Writer writer; // opened on the first add, once the width is known
+        private int width;
+        private final List<String> ids = new ArrayList<>();
+
+        private Bulk() {
+        }
+
+        public void add(List<Document> documents) throws IOException {
+            for (Document document : documents) {
+                List<Double> embedding = document.getEmbedding();
+                if (embedding == null || embedding.isEmpty()) {
+                    embedding = embeddingClient.embed(document);
+                }
+                float[] vector = normalize(embedding);
+                if (writer == null) {
+                    width = vector.length;
+                    writer = new VectorSegment.Writer(directory, nextSegmentId.getAndIncrement(), width);
+                } else if (vector.length != width) {
+                    throw new IllegalStateException("Embedding has " + vector.length
+                            + " dimensions but this write has " + width);
+                }
+                writer.append(vector, serialize(document));
+                ids.add(document.getId());
+            }
+        }
+
+        public int size() {
+            return ids.size();
+        }
+
+        public void commit() throws IOException {
+            if (writer == null) {
+                return;
+            }
+            VectorSegment segment;
+            try {
+                segment = writer.finish();
+            } catch (IOException | RuntimeException e) {
+                writer.abort();
+                throw e;
+            } finally {
+                writer = null;
+            }
+            publish(segment, ids, width);
+        }
+
+        /** Drops everything added so far. */
+        public void abort() {
+            if (writer != null) {
+                writer.abort();
+                writer = null;
+            }
+        }
+    }
+
+    private void publish(VectorSegment segment, List<String> ids, int width) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (dimensions != 0 && width != dimensions) {
+                throw new IllegalStateException("Embedding has " + width
+                        + " dimensions but the store holds " + dimensions);
+            }
+            List<VectorSegment> updated = new ArrayList<>(segments);
+            updated.add(segment);
+            new SegmentManifest(width, nextSegmentId.get(), entries(updated), tombstonesFile)
+                    .write(directory, objectMapper);
+
+            int first = size;
+            setSegments(updated);
+            dimensions = width;
+            segment = null; // published
+
+            // Until loaded, the loader picks the new records up when it installs its indexes
+            if (loaded && quantized == null && options.isQuantized()) {
+                quantized = new ScalarQuantizedVectors(dimensions);
+            }
+            for (int i = 0; i < ids.size(); i++) {
+                if (quantized != null) {
+                    quantized.add(vector(first + i));
+                }
+                if (idIndex != null) {
+                    idIndex.put(ids.get(i), first + i);
+                }
+            }
+
+            if (graph != null) {
+                for (int ordinal = graph.size(); ordinal < size; ordinal++) {
+                    graph.insert(ordinal);
+                }
+                unsavedGraphInserts += ids.size();
+                if (unsavedGraphInserts >= GRAPH_SAVE_INTERVAL) {
+                    saveGraph();
+                }
+            }
+            if (loaded) {
+                indexRecords();
+            }
+        } finally {
+            lock.writeLock().unlock();
+            if (segment != null) {
+                discard(segment);
+            }
+        }
+    }
+
+    @Override
+    public Optional<Boolean> delete(List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            Map<String, Integer> ids = idIndex();
+            List<Integer> ordinals = new ArrayList<>();
+            for (String id : idList) {
+                Integer ordinal = ids.remove(id);
+                if (ordinal != null) {
+                    ordinals.add(ordinal);
+                }
+            }
+            if (!ordinals.isEmpty()) {
+                tombstones.append(ordinals);
+            }
+            return Optional.of(!ordinals.isEmpty());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete chunks from vector store", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes every chunk matching {@code filter} (see the class comment)
+     * and returns how many there were.
+     */
+    public int delete(Filter.Expression filter) {
+        return delete(filter, true);
+    }
+
+    private int delete(Filter.Expression filter, boolean untilLoaded) {
+        awaitLoaded(untilLoaded);
+        lock.writeLock().lock();
+        try {
+            OrdinalSet scope = partitions.select(filter, size);
+            List<Integer> ordinals = new ArrayList<>();
+            for (int run = 0; run < scope.runCount(); run++) {
+                for (int ordinal = scope.runStart(run); ordinal < scope.runEnd(run); ordinal++) {
+                    if (isLive(ordinal)) {
+                        ordinals.add(ordinal);
+                    }
+                }
+            }
+            if (!ordinals.isEmpty()) {
+                tombstones.append(ordinals);
+                if (idIndex != null) {
+                    idIndex.values().removeIf(scope::contains);
+                }
+            }
+            return ordinals.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete chunks from vector store", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes every chunk of a document; returns how many there were. Serves
+     * user requests, so while the store is loading it waits only up to
+     * {@code loadWaitMillis}, then throws {@link VectorStoreLoadingException}.
+     */
+    public int deleteDocument(String documentId) {
+        return delete(documentFilter(documentId), false);
+    }
+
+    /** Ids of the live chunks of a document. */
+    public List<String> chunkIds(String documentId) {
+        return documentRecords(documentId, true).stream().map(node -> node.path("id").asText()).toList();
+    }
+
+    /**
+     * Text of the live chunks of a document, in the order they were added.
+     * Serves user requests, so it waits for a loading store only up to
+     * {@code loadWaitMillis}, like {@link #deleteDocument}.
+     */
+    public List<String> chunkTexts(String documentId) {
+        return documentRecords(documentId, false).stream().map(node -> node.path("content").asText()).toList();
+    }
+
+    private List<JsonNode> documentRecords(String documentId, boolean untilLoaded) {
+        awaitLoaded(untilLoaded);
+        lock.readLock().lock();
+        try {
+            OrdinalSet scope = partitions.select(documentFilter(documentId), size);
+            List<JsonNode> records = new ArrayList<>();
+            for (int run = 0; run < scope.runCount(); run++) {
+                for (int ordinal = scope.runStart(run); ordinal < scope.runEnd(run); ordinal++) {
+                    if (isLive(ordinal)) {
+                        records.add(objectMapper.readTree(record(ordinal)));
+                    }
+                }
+            }
+            return records;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read chunks from vector store", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static Filter.Expression documentFilter(String documentId) {
+        return new Filter.Expression(Filter.ExpressionType.EQ, new Filter.Key(PartitionIndex.DOCUMENT_ID),
+                new Filter.Value(documentId));
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        return similaritySearch(embeddingClient.embed(request.getQuery()), request.getTopK(),
+                request.getSimilarityThreshold(), request.getFilterExpression());
+    }
+
+    /**
+     * Searches with a query embedding the caller already has, for instance
+     * from a cache, instead of embedding the query text here. {@code filter}
+     * may be null; see the class comment for what it can express.
+     */
+    public List<Document> similaritySearch(List<Double> embedding, int topK, double similarityThreshold,
+            Filter.Expression filter) {
+        float[] query = normalize(embedding);
+        if (filter != null) {
+            awaitLoaded(false);
+        }
+
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return List.of();
+            }
+            if (query.length != dimensions) {
+                throw new IllegalStateException("Query embedding has " + query.length
+                        + " dimensions but the store holds " + dimensions);
+            }
+
+            OrdinalSet scope = filter != null ? partitions.select(filter, size) : null;
+            List<ScoredOrdinal> hits = approximateSearch(query, topK, options.getHnswEfSearch(), scope);
+
+            List<Document> results = new ArrayList<>(hits.size());
+            for (ScoredOrdinal hit : hits) {
+                if (hit.score() >= similarityThreshold) {
+                    results.add(materialize(hit.ordinal(), "distance", 1.0f - hit.score()));
+                }
+            }
+            return results;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read chunks from vector store", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * BM25 keyword search over chunk text; needs no embedding. Each result
+     * carries its score as {@code bm25_score} metadata. Chunks that share no
+     * term with the query are not returned, so the list may be shorter than
+     * {@code topK}, or empty. {@code filter} may be null.
+     */
+    public List<Document> keywordSearch(String query, int topK, Filter.Expression filter) {
+        awaitLoaded(false);
+        lock.readLock().lock();
+        try {
+            if (keywords == null) {
+                throw new IllegalStateException("The keyword index is disabled (app.vectorstore.keyword-index)");
+            }
+            OrdinalSet scope = filter != null ? partitions.select(filter, size) : null;
+            List<Document> results = new ArrayList<>();
+            for (ScoredOrdinal hit : keywords.search(query, topK,
+                    ordinal -> isLive(ordinal) && (scope == null || scope.contains(ordinal)))) {
+                results.add(materialize(hit.ordinal(), "bm25_score", hit.score()));
+            }
+            return results;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read chunks from vector store", e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean hasKeywordIndex() {
+        return keywords != null;
+    }
+
+    private boolean isLive(int ordinal) {
+        return !tombstones.isDeleted(ordinal);
+    }
+
+    /**
+     * The configured search path: graph or flat scan over candidate scores,
+     * followed by a full-precision re-rank when the candidates were scored
+     * from quantized vectors. Only ordinals in {@code scope} are returned
+     * when it is not null.
+     */
+    private List<ScoredOrdinal> approximateSearch(float[] query, int k, int efSearch, OrdinalSet scope) {
+        int candidates = quantized != null ? k * Math.max(1, options.getRerankFactor()) : k;
+        List<ScoredOrdinal> hits;
+        if (graph == null || scope != null && scope.cardinality() <= FILTERED_SCAN_LIMIT) {
+            hits = scan(query, candidates, vectorView, scope);
+        } else if (scope != null) {
+            // Widen the beam by the share of nodes filtered out, within limits
+            int ef = Math.max(efSearch, candidates);
+            long widened = (long) ef * size / Math.max(1, scope.cardinality());
+            ef = (int) Math.min(widened, (long) ef * MAX_FILTERED_EF_FACTOR);
+            hits = graph.search(query, candidates, ef, ordinal -> isLive(ordinal) && scope.contains(ordinal));
+        } else {
+            hits = graph.search(query, candidates, Math.max(efSearch, candidates), this::isLive);
+        }
+        if (quantized == null) {
+            return hits;
+        }
+        List<ScoredOrdinal> reranked = new ArrayList<>(hits.size());
+        for (ScoredOrdinal hit : hits) {
+            reranked.add(new ScoredOrdinal(hit.ordinal(), fullDot(hit.ordinal(), query)));
+        }
+        reranked.sort(WORST_FIRST.reversed());
+        return reranked.size() > k ? reranked.subList(0, k) : reranked;
+    }
+
+    /**
+     * Exact float32 top-k. The ground truth when measuring recall.
+     */
+    private List<ScoredOrdinal> exactSearch(float[] query, int k) {
+        return scan(query, k, fullPrecisionView, null);
+    }
+
+    /**
+     * Exact top-k over {@code scope} (everything when null). Large scans are
+     * cut into ordinal slices scored in parallel, each into its own top-k
+     * heap, and the heaps merged; the caller's read lock covers the workers.
+     */
+    private List<ScoredOrdinal> scan(float[] query, int k, HnswIndex.Vectors scorer, OrdinalSet scope) {
+        OrdinalSet ordinals = scope != null ? scope : OrdinalSet.all(size);
+        PriorityQueue<ScoredOrdinal> top = new PriorityQueue<>(WORST_FIRST);
+        if (scanPool == null || ordinals.cardinality() < options.getScanParallelThreshold()) {
+            scan(query, k, scorer, ordinals, 0, size, top);
+        } else {
+            int sliceSize = Math.max(1, (size + 4 * scanPool.getParallelism() - 1) / (4 * scanPool.getParallelism()));
+            List<ForkJoinTask<PriorityQueue<ScoredOrdinal>>> slices = new ArrayList<>();
+            for (int from = 0; from < size; from += sliceSize) {
+                int start = from;
+                int end = Math.min(size, from + sliceSize);
+                slices.add(scanPool.submit(() -> {
+                    PriorityQueue<ScoredOrdinal> slice = new PriorityQueue<>(WORST_FIRST);
+                    scan(query, k, scorer, ordinals, start, end, slice);
+                    return slice;
+                }));
+            }
+            for (ForkJoinTask<PriorityQueue<ScoredOrdinal>> slice : slices) {
+                for (ScoredOrdinal hit : slice.join()) {
+                    offer(top, k, hit);
+                }
+            }
+        }
+        List<ScoredOrdinal> ranked = new ArrayList<>(top);
+        ranked.sort(WORST_FIRST.reversed());
+        return ranked;
+    }
+
+    // Scores the ordinals of scope within [from, to) into top
+    private void scan(float[] query, int k, HnswIndex.Vectors scorer, OrdinalSet scope, int from, int to,
+            PriorityQueue<ScoredOrdinal> top) {
+        for (int run = 0; run < scope.runCount(); run++) {
+            int end = Math.min(scope.runEnd(run), to);
+            for (int ordinal = Math.max(scope.runStart(run), from); ordinal < end; ordinal++) {
+                if (!isLive(ordinal)) {
+                    continue;
+                }
+                float score = scorer.dot(ordinal, query);
+                if (top.size() < k || score > top.peek().score()) {
+                    offer(top, k, new ScoredOrdinal(ordinal, score));
+                }
+            }
+        }
+    }
+
+    private static void offer(PriorityQueue<ScoredOrdinal> top, int k, ScoredOrdinal hit) {
+        if (top.size() < k) {
+            top.add(hit);
+        } else if (hit.score() > top.peek().score()) {
+            top.poll();
+            top.add(hit);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("index", options.getIndex());
+            stats.put("loaded", loaded);
+            stats.put("chunks", size);
+            stats.put("deleted", tombstones.count());
+            stats.put("segments", segments.size());
+            stats.put("dimensions", dimensions);
+            stats.put("quantization", options.getQuantization());
+            stats.put("scanKernel", VectorKernel.get().name());
+            stats.put("scanThreads", scanPool == null ? 1 : scanPool.getParallelism());
+            // Memory footprint: float32 vectors are mapped (page cache, not heap);
+            // the estimate is what the same chunks cost as boxed List<Double>.
+            stats.put("mappedVectorBytes", (long) size * dimensions * Float.BYTES);
+            stats.put("quantizedHeapBytes", quantized == null ? 0 : quantized.bytesUsed());
+            stats.put("boxedEmbeddingEstimateBytes", (long) size * dimensions * BOXED_DOUBLE_BYTES);
+            if (graph != null) {
+                stats.put("graphNodes", graph.size());
+                stats.put("m", graph.parameters().m());
+                stats.put("efConstruction", graph.parameters().efConstruction());
+                stats.put("efSearch", graph.parameters().efSearch());
+            }
+            if (keywords != null) {
+                stats.put("keywordTerms", keywords.terms());
+                stats.put("keywordPostings", keywords.postings());
+            }
+            stats.put("namespaces", partitions.counts(PartitionIndex.NAMESPACE));
+            stats.put("partitionHeapBytes", partitions.bytesUsed());
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Compares the configured search path (graph and/or quantized scoring
+     * plus re-rank) with the exact float32 scan, using stored vectors as
+     * queries. Recall is the fraction of the true top-k that was returned.
+     */
+    public Map<String, Object> measureRecall(int samples, int k, Integer efSearch) {
+        awaitLoaded(false);
+        lock.readLock().lock();
+        try {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("index", options.getIndex());
+            report.put("quantization", options.getQuantization());
+            report.put("size", size);
+            if (size == 0) {
+                report.put("recall", 1.0);
+                return report;
+            }
+            int ef = efSearch != null ? efSearch : options.getHnswEfSearch();
+            Random random = new Random();
+            int measured = 0;
+            long found = 0;
+            long expected = 0;
+            long approximateNanos = 0;
+            long exactNanos = 0;
+            for (int i = 0; i < samples; i++) {
+                int ordinal = random.nextInt(size);
+                if (!isLive(ordinal)) {
+                    continue;
+                }
+                float[] query = vector(ordinal);
+
+                long start = System.nanoTime();
+                List<ScoredOrdinal> exact = exactSearch(query, k);
+                exactNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                List<ScoredOrdinal> approximate = approximateSearch(query, k, ef, null);
+                approximateNanos += System.nanoTime() - start;
+
+                Set<Integer> truth = new HashSet<>();
+                exact.forEach(hit -> truth.add(hit.ordinal()));
+                for (ScoredOrdinal hit : approximate) {
+                    if (truth.contains(hit.ordinal())) {
+                        found++;
+                    }
+                }
+                expected += truth.size();
+                measured++;
+            }
+            report.put("samples", measured);
+            report.put("k", k);
+            if (graph != null) {
+                report.put("m", graph.parameters().m());
+                report.put("efConstruction", graph.parameters().efConstruction());
+                report.put("efSearch", ef);
+            }
+            if (quantized != null) {
+                report.put("rerankFactor", options.getRerankFactor());
+            }
+            report.put("recall", expected == 0 ? 1.0 : (double) found / expected);
+            report.put("searchAvgMicros", measured == 0 ? 0 : approximateNanos / measured / 1000);
+            report.put("exactAvgMicros", measured == 0 ? 0 : exactNanos / measured / 1000);
+            return report;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Drops every chunk, both on disk and in memory, without a restart.
+     * {@link #stats} reflects the empty store as soon as this returns.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            // A fresh tombstone log, so old deletes can never apply to new chunks
+            String file = newTombstonesFile();
+            TombstoneLog empty = TombstoneLog.create(directory.resolve(file));
+            try {
+                SegmentManifest.empty(nextSegmentId.get(), file).write(directory, objectMapper);
+            } catch (IOException e) {
+                empty.close();
+                Files.deleteIfExists(directory.resolve(file));
+                throw e;
+            }
+            List<VectorSegment> dropped = segments;
+            setSegments(List.of());
+            dimensions = 0;
+            dropped.forEach(this::discard);
+            replaceTombstones(empty, file);
+            idIndex = null;
+            quantized = null;
+            // Also while loading, so the loader cannot pick up the old graph
+            Files.deleteIfExists(directory.resolve(GRAPH_FILE));
+            if (graph != null) {
+                graph = new HnswIndex(graph.parameters(), vectorView);
+                unsavedGraphInserts = 0;
+            }
+            if (keywords != null) {
+                keywords.clear();
+            }
+            partitions.clear();
+            indexedRecords = 0;
+            logger.info("Vector store cleared.");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to clear vector store", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Merges the first run of adjacent segments whose combined size fits in
+     * {@code compactionMaxSegmentRecords}. The merged segment is written
+     * without holding the lock and swapped in only if the run is still
+     * intact. Returns whether a merge was published.
+     */
+    public boolean compact() throws IOException {
+        List<VectorSegment> run;
+        int width;
+        lock.readLock().lock();
+        try {
+            run = pickCompactionRun();
+            width = dimensions;
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (run.size() < 2) {
+            return false;
+        }
+
+        VectorSegment.Writer writer = new VectorSegment.Writer(directory, nextSegmentId.getAndIncrement(), width);
+        VectorSegment merged;
+        try {
+            for (VectorSegment segment : run) {
+                for (int local = 0; local < segment.count(); local++) {
+                    writer.append(segment.get(local), segment.read(local));
+                }
+            }
+            merged = writer.finish();
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            int start = segments.indexOf(run.get(0));
+            if (start < 0 || start + run.size() > segments.size()
+                    || !segments.subList(start, start + run.size()).equals(run)) {
+                // A clear() got in between; the merged copy is stale.
+                discard(merged);
+                return false;
+            }
+            List<VectorSegment> updated = new ArrayList<>(segments.subList(0, start));
+            updated.add(merged);
+            updated.addAll(segments.subList(start + run.size(), segments.size()));
+            try {
+                new SegmentManifest(dimensions, nextSegmentId.get(), entries(updated), tombstonesFile)
+                        .write(directory, objectMapper);
+            } catch (IOException e) {
+                discard(merged);
+                throw e;
+            }
+            setSegments(updated);
+            run.forEach(this::discard);
+            logger.info("Compacted {} segments into segment {} ({} chunks).", run.size(), merged.id(),
+                    merged.count());
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private List<VectorSegment> pickCompactionRun() {
+        int limit = options.getCompactionMaxSegmentRecords();
+        for (int start = 0; start < segments.size(); start++) {
+            int end = start;
+            long records = 0;
+            while (end < segments.size() && records + segments.get(end).count() <= limit) {
+                records += segments.get(end).count();
+                end++;
+            }
+            if (end - start >= 2) {
+                return List.copyOf(segments.subList(start, end));
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * Rewrites the store without its deleted chunks, if at least
+     * {@code compactionReclaimRatio} of it is deleted, or if anything is and
+     * {@code force} is set. The live chunks are copied into one new segment
+     * and every derived index is rebuilt for it without holding the lock.
+     * Chunks added in the meantime are kept and renumbered, deletes made in
+     * the meantime carried over. Returns whether a rewrite was published.
+     */
+    public boolean reclaim(boolean force) throws IOException {
+        if (!loaded) {
+            return false;
+        }
+        List<VectorSegment> snapshot;
+        BitSet deleted;
+        int width;
+        lock.readLock().lock();
+        try {
+            snapshot = segments;
+            deleted = tombstones.snapshot();
+            width = dimensions;
+        } finally {
+            lock.readLock().unlock();
+        }
+        int snapshotSize = 0;
+        for (VectorSegment segment : snapshot) {
+            snapshotSize += segment.count();
+        }
+        int dropped = deleted.cardinality();
+        double ratio = options.getCompactionReclaimRatio();
+        if (dropped == 0 || !force && (ratio <= 0 || dropped < ratio * snapshotSize)) {
+            return false;
+        }
+
+        long start = System.nanoTime();
+        int live = snapshotSize - dropped;
+        int[] remap = new int[snapshotSize]; // old ordinal -> new, -1 when dropped
+        VectorSegment rewritten = null;
+        if (live > 0) {
+            VectorSegment.Writer writer = new VectorSegment.Writer(directory, nextSegmentId.getAndIncrement(), width);
+            try {
+                int ordinal = 0;
+                int next = 0;
+                for (VectorSegment segment : snapshot) {
+                    for (int local = 0; local < segment.count(); local++, ordinal++) {
+                        if (deleted.get(ordinal)) {
+                            remap[ordinal] = -1;
+                        } else {
+                            remap[ordinal] = next++;
+                            writer.append(segment.get(local), segment.read(local));
+                        }
+                    }
+                }
+                rewritten = writer.finish();
+            } catch (IOException | RuntimeException e) {
+                writer.abort();
+                throw e;
+            }
+        }
+
+        String file = newTombstonesFile();
+        try {
+            Rebuilt rebuilt = rebuild(rewritten != null ? List.of(rewritten) : List.of(), width, null);
+            lock.writeLock().lock();
+            try {
+                if (!startsWith(segments, snapshot)) {
+                    // A clear() or merge got in between; the rewrite is stale.
+                    if (rewritten != null) {
+                        discard(rewritten);
+                    }
+                    return false;
+                }
+                List<Integer> carried = new ArrayList<>();
+                BitSet current = tombstones.snapshot();
+                for (int ordinal = current.nextSetBit(0); ordinal >= 0; ordinal = current.nextSetBit(ordinal + 1)) {
+                    if (ordinal >= snapshotSize) {
+                        carried.add(ordinal - dropped);
+                    } else if (remap[ordinal] >= 0) {
+                        carried.add(remap[ordinal]);
+                    }
+                }
+                TombstoneLog log = TombstoneLog.create(directory.resolve(file));
+                List<VectorSegment> updated = new ArrayList<>();
+                if (rewritten != null) {
+                    updated.add(rewritten);
+                }
+                updated.addAll(segments.subList(snapshot.size(), segments.size()));
+                try {
+                    log.append(carried);
+                    // The saved graph uses the old ordinals; without it the graph is rebuilt on open
+                    Files.deleteIfExists(directory.resolve(GRAPH_FILE));
+                    new SegmentManifest(dimensions, nextSegmentId.get(), entries(updated), file)
+                            .write(directory, objectMapper);
+                } catch (IOException e) {
+                    log.close();
+                    throw e;
+                }
+                rewritten = null; // published
+
+                setSegments(updated);
+                replaceTombstones(log, file);
+                idIndex = null;
+                install(rebuilt, live);
+                if (graph != null) {
+                    saveGraph();
+                }
+                snapshot.forEach(this::discard);
+                logger.info("Reclaimed {} deleted chunks: {} chunks rewritten into {} segments in {} ms.", dropped,
+                        live, segments.size(), (System.nanoTime() - start) / 1_000_000);
+                return true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            if (rewritten != null) {
+                discard(rewritten);
+                Files.deleteIfExists(directory.resolve(file));
+            }
+        }
+    }
+
+    private record Rebuilt(int count, ScalarQuantizedVectors quantized, HnswIndex graph, Bm25Index keywords,
+            PartitionIndex partitions) {
+    }
+
+    /**
+     * Builds the derived indexes over {@code snapshot}, whose ordinals start
+     * at 0, reading only those segments so no lock is needed. A
+     * {@code saved} graph is reused and extended. Every record is indexed,
+     * deleted ones included; searches check tombstones anyway.
+     */
+    private Rebuilt rebuild(List<VectorSegment> snapshot, int width, HnswIndex saved) throws IOException {
+        int[] starts = new int[snapshot.size()];
+        int count = 0;
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = count;
+            count += snapshot.get(i).count();
+        }
+        HnswIndex.Vectors view = new HnswIndex.Vectors() {
+            @Override
+            public float[] get(int ordinal) {
+                int index = segmentOf(starts, ordinal);
+                return snapshot.get(index).get(ordinal - starts[index]);
+            }
+
+            @Override
+            public float dot(int ordinal, float[] query) {
+                int index = segmentOf(starts, ordinal);
+                return snapshot.get(index).dot(ordinal - starts[index], query);
+            }
+        };
+
+        ScalarQuantizedVectors rebuiltQuantized = null;
+        if (options.isQuantized() && count > 0) {
+            rebuiltQuantized = new ScalarQuantizedVectors(width);
+            for (int ordinal = 0; ordinal < count; ordinal++) {
+                checkInterrupted();
+                rebuiltQuantized.add(view.get(ordinal));
+            }
+        }
+        HnswIndex rebuiltGraph = null;
+        if (options.isHnswEnabled() && count > 0) {
+            ScalarQuantizedVectors scores = rebuiltQuantized;
+            HnswIndex.Vectors scoring = scores == null ? view : new HnswIndex.Vectors() {
+                @Override
+                public float[] get(int ordinal) {
+                    return view.get(ordinal);
+                }
+
+                @Override
+                public float dot(int ordinal, float[] query) {
+                    return scores.dot(ordinal, query);
+                }
+            };
+            rebuiltGraph = saved != null && saved.size() <= count ? saved.rebind(scoring)
+                    : new HnswIndex(graphParameters(), scoring);
+            if (rebuiltGraph.size() < count) {
+                logger.info("Inserting {} vectors into the HNSW graph...", count - rebuiltGraph.size());
+            }
+            for (int ordinal = rebuiltGraph.size(); ordinal < count; ordinal++) {
+                checkInterrupted();
+                rebuiltGraph.insert(ordinal);
+            }
+        }
+        Bm25Index rebuiltKeywords = options.isKeywordIndex() ? new Bm25Index() : null;
+        PartitionIndex rebuiltPartitions = new PartitionIndex();
+        for (int index = 0, ordinal = 0; index < snapshot.size(); index++) {
+            VectorSegment segment = snapshot.get(index);
+            for (int local = 0; local < segment.count(); local++, ordinal++) {
+                checkInterrupted();
+                JsonNode node = objectMapper.readTree(segment.read(local));
+                if (rebuiltKeywords != null) {
+                    rebuiltKeywords.add(ordinal, node.path("content").asText(""));
+                }
+                rebuiltPartitions.add(ordinal, node.path("metadata"));
+            }
+        }
+        return new Rebuilt(count, rebuiltQuantized, rebuiltGraph, rebuiltKeywords, rebuiltPartitions);
+    }
+
+    // Rebuilds run on the loader and compactor threads, which close() interrupts
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Vector store index rebuild interrupted");
+        }
+    }
+
+    private String newTombstonesFile() {
+        return "tombstones-" + nextSegmentId.getAndIncrement() + ".bin";
+    }
+
+    private void replaceTombstones(TombstoneLog log, String file) {
+        TombstoneLog old = tombstones;
+        String oldFile = tombstonesFile;
+        tombstones = log;
+        tombstonesFile = file;
+        try {
+            old.close();
+            Files.deleteIfExists(directory.resolve(oldFile));
+        } catch (IOException e) {
+            logger.debug("Could not delete replaced tombstone log {}", oldFile, e);
+        }
+    }
+
+    private void compactInBackground() {
+        if (!loaded) {
+            return;
+        }
+        try {
+            while (compact()) {
+                // keep merging until no run qualifies
+            }
+            reclaim(false);
+        } catch (Exception e) {
+            logger.warn("Vector store compaction failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Number of records in the store, including deleted ones that have not
+     * been reclaimed yet.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * One-off import of a SimpleVectorStore {@code vectorstore.json} snapshot.
+     * The stored embeddings are reused, so nothing is re-embedded.
+     */
+    public int importSimpleVectorStore(File jsonFile) throws IOException {
+        JsonNode root = objectMapper.readTree(jsonFile);
+        List<Document> documents = new ArrayList<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = root.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> entry = fields.next();
+            JsonNode node = entry.getValue();
+            Map<String, Object> metadata = node.has("metadata")
+                    ? objectMapper.convertValue(node.get("metadata"), new TypeReference<Map<String, Object>>() {
+                    })
+                    : new HashMap<>();
+            Document document = new Document(node.path("id").asText(entry.getKey()),
+                    node.path("content").asText(""), metadata);
+            List<Double> embedding = new ArrayList<>();
+            node.path("embedding").forEach(value -> embedding.add(value.asDouble()));
+            document.setEmbedding(embedding);
+            documents.add(document);
+        }
+        if (!documents.isEmpty()) {
+            add(documents);
+        }
+        return documents.size();
+    }
+
+    private Map<String, Integer> idIndex() throws IOException {
+        if (idIndex == null) {
+            Map<String, Integer> ids = new HashMap<>();
+            for (int ordinal = 0; ordinal < size; ordinal++) {
+                if (isLive(ordinal)) {
+                    ids.put(objectMapper.readTree(record(ordinal)).path("id").asText(), ordinal);
+                }
+            }
+            idIndex = ids;
+        }
+        return idIndex;
+    }
+
+    private byte[] serialize(Document document) throws IOException {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("id", document.getId());
+        record.put("content", document.getContent());
+        record.put("metadata", document.getMetadata());
+        return objectMapper.writeValueAsBytes(record);
+    }
+
+    private Document materialize(int ordinal, String scoreKey, float score) throws IOException {
+        JsonNode node = objectMapper.readTree(record(ordinal));
+        Map<String, Object> metadata = new HashMap<>(objectMapper.convertValue(node.path("metadata"),
+                new TypeReference<Map<String, Object>>() {
+                }));
+        metadata.put(scoreKey, score);
+        return new Document(node.path("id").asText(), node.path("content").asText(), metadata);
+    }
+
+    private void setSegments(List<VectorSegment> updated) {
+        int[] starts = new int[updated.size()];
+        int total = 0;
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = total;
+            total += updated.get(i).count();
+        }
+        segments = List.copyOf(updated);
+        bases = starts;
+        size = total;
+    }
+
+    private static List<SegmentManifest.Entry> entries(List<VectorSegment> list) {
+        List<SegmentManifest.Entry> entries = new ArrayList<>(list.size());
+        for (VectorSegment segment : list) {
+            entries.add(new SegmentManifest.Entry(segment.id(), segment.count()));
+        }
+        return entries;
+    }
+
+    private void discard(VectorSegment segment) {
+        try {
+            segment.close();
+        } catch (IOException e) {
+            logger.debug("Error closing segment {}", segment.id(), e);
+        }
+        VectorSegment.delete(directory, segment.id());
+    }
+
+    private int segmentOf(int ordinal) {
+        return segmentOf(bases, ordinal);
+    }
+
+    private static int segmentOf(int[] starts, int ordinal) {
+        int index = Arrays.binarySearch(starts, ordinal);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private float[] vector(int ordinal) {
+        int index = segmentOf(ordinal);
+        return segments.get(index).get(ordinal - bases[index]);
+    }
+
+    private float fullDot(int ordinal, float[] query) {
+        int index = segmentOf(ordinal);
+        return segments.get(index).dot(ordinal - bases[index], query);
+    }
+
+    private byte[] record(int ordinal) throws IOException {
+        int index = segmentOf(ordinal);
+        return segments.get(index).read(ordinal - bases[index]);
+    }
+
+    static float[] normalize(List<Double> embedding) {
+        float[] vector = new float[embedding.size()];
+        double norm = 0;
+        for (int i = 0; i < vector.length; i++) {
+            double value = embedding.get(i);
+            vector[i] = (float) value;
+            norm += value * value;
+        }
+        if (norm > 0) {
+            float scale = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    private void saveGraph() throws IOException {
+        graph.save(directory.resolve(GRAPH_FILE));
+        unsavedGraphInserts = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        if (scanPool != null) {
+            scanPool.shutdownNow();
+        }
+        if (loader != null) {
+            loader.interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            if (graph != null && unsavedGraphInserts > 0) {
+                saveGraph();
+            }
+            for (VectorSegment segment : segments) {
+                segment.close();
+            }
+            tombstones.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
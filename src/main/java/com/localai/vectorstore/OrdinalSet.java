@@ -0,0 +1,164 @@
+package com.localai.vectorstore;
+
+import java.util.Arrays;
+
+/**
+ * Set of record ordinals stored as sorted, non-adjacent runs
+ * {@code [start, end)}. The chunks of one document, and mostly of one
+ * namespace, were written together and so have consecutive ordinals, which
+ * makes this far smaller than a bitmap over the whole store: a document is a
+ * single run of two ints however large the store grows.
+ *
+ * Built by appending ordinals in increasing order; the set operations return
+ * new sets. Not thread-safe.
+ */
+final class OrdinalSet {
+
+    private int[] runs; // start0, end0, start1, end1, ...
+    private int length; // ints used in runs
+    private int cardinality;
+
+    OrdinalSet() {
+        this(new int[4], 0);
+    }
+
+    private OrdinalSet(int[] runs, int length) {
+        this.runs = runs;
+        this.length = length;
+        for (int i = 0; i < length; i += 2) {
+            cardinality += runs[i + 1] - runs[i];
+        }
+    }
+
+    /** All ordinals in {@code [0, size)}. */
+    static OrdinalSet all(int size) {
+        return size > 0 ? new OrdinalSet(new int[] { 0, size }, 2) : new OrdinalSet();
+    }
+
+    /** Adds an ordinal not smaller than any already in the set. */
+    void add(int ordinal) {
+        if (length > 0) {
+            int end = runs[length - 1];
+            if (ordinal < end) {
+                if (ordinal >= runs[length - 2]) {
+                    return; // already in the last run
+                }
+                throw new IllegalArgumentException("Ordinal " + ordinal + " added out of order");
+            }
+            if (ordinal == end) {
+                runs[length - 1]++;
+                cardinality++;
+                return;
+            }
+        }
+        append(ordinal, ordinal + 1);
+    }
+
+    private void append(int start, int end) {
+        if (length == runs.length) {
+            runs = Arrays.copyOf(runs, runs.length * 2);
+        }
+        runs[length++] = start;
+        runs[length++] = end;
+        cardinality += end - start;
+    }
+
+    boolean contains(int ordinal) {
+        // Last run whose start is <= ordinal
+        int low = 0;
+        int high = length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (runs[2 * mid] <= ordinal) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high >= 0 && ordinal < runs[2 * high + 1];
+    }
+
+    int cardinality() {
+        return cardinality;
+    }
+
+    int runCount() {
+        return length / 2;
+    }
+
+    int runStart(int run) {
+        return runs[2 * run];
+    }
+
+    int runEnd(int run) {
+        return runs[2 * run + 1];
+    }
+
+    OrdinalSet or(OrdinalSet other) {
+        OrdinalSet result = new OrdinalSet(new int[Math.max(4, length + other.length)], 0);
+        int i = 0;
+        int j = 0;
+        while (i < length || j < other.length) {
+            int start;
+            int end;
+            if (j >= other.length || i < length && runs[i] <= other.runs[j]) {
+                start = runs[i];
+                end = runs[i + 1];
+                i += 2;
+            } else {
+                start = other.runs[j];
+                end = other.runs[j + 1];
+                j += 2;
+            }
+            if (result.length > 0 && start <= result.runs[result.length - 1]) {
+                int last = result.runs[result.length - 1];
+                if (end > last) {
+                    result.runs[result.length - 1] = end;
+                    result.cardinality += end - last;
+                }
+            } else {
+                result.append(start, end);
+            }
+        }
+        return result;
+    }
+
+    OrdinalSet and(OrdinalSet other) {
+        OrdinalSet result = new OrdinalSet(new int[Math.max(4, length + other.length)], 0);
+        int i = 0;
+        int j = 0;
+        while (i < length && j < other.length) {
+            int start = Math.max(runs[i], other.runs[j]);
+            int end = Math.min(runs[i + 1], other.runs[j + 1]);
+            if (start < end) {
+                result.append(start, end);
+            }
+            if (runs[i + 1] < other.runs[j + 1]) {
+                i += 2;
+            } else {
+                j += 2;
+            }
+        }
+        return result;
+    }
+
+    /** The ordinals in {@code [0, size)} that are not in this set. */
+    OrdinalSet complement(int size) {
+        OrdinalSet result = new OrdinalSet(new int[Math.max(4, length + 2)], 0);
+        int next = 0;
+        for (int i = 0; i < length && next < size; i += 2) {
+            if (runs[i] > next) {
+                result.append(next, Math.min(runs[i], size));
+            }
+            next = runs[i + 1];
+        }
+        if (next < size) {
+            result.append(next, size);
+        }
+        return result;
+    }
+
+    long bytesUsed() {
+        return (long) runs.length * Integer.BYTES;
+    }
+}
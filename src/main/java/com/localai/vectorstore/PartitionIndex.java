@@ -0,0 +1,106 @@
+package com.localai.vectorstore;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Ordinal sets per value of the partitioning metadata keys: the namespace a
+ * document was ingested into, and its document id. A search filter on these
+ * keys is resolved to one {@link OrdinalSet} before the search starts, so
+ * chunks outside it are never scored.
+ *
+ * Chunks written before namespaces existed belong to
+ * {@link MappedVectorStore#DEFAULT_NAMESPACE}. Deleted records may stay in
+ * the sets; the store checks tombstones separately.
+ *
+ * Not thread-safe; guarded by the MappedVectorStore lock.
+ */
+final class PartitionIndex {
+
+    static final String NAMESPACE = "namespace";
+    static final String DOCUMENT_ID = "document_id";
+
+    private final Map<String, Map<String, OrdinalSet>> sets = Map.of(NAMESPACE, new HashMap<>(),
+            DOCUMENT_ID, new HashMap<>());
+
+    void add(int ordinal, JsonNode metadata) {
+        String namespace = metadata.path(NAMESPACE).asText(MappedVectorStore.DEFAULT_NAMESPACE);
+        sets.get(NAMESPACE).computeIfAbsent(namespace, value -> new OrdinalSet()).add(ordinal);
+        JsonNode documentId = metadata.path(DOCUMENT_ID);
+        if (documentId.isTextual()) {
+            sets.get(DOCUMENT_ID).computeIfAbsent(documentId.asText(), value -> new OrdinalSet()).add(ordinal);
+        }
+    }
+
+    void clear() {
+        sets.values().forEach(Map::clear);
+    }
+
+    /**
+     * Resolves a filter over {@code namespace} and {@code document_id} to the
+     * matching ordinals in {@code [0, size)}. Supports ==, !=, in, nin, and,
+     * or and not; anything else is rejected.
+     */
+    OrdinalSet select(Filter.Operand operand, int size) {
+        if (operand instanceof Filter.Group group) {
+            return select(group.content(), size);
+        }
+        if (!(operand instanceof Filter.Expression expression)) {
+            throw new IllegalArgumentException("Unsupported filter operand: " + operand);
+        }
+        return switch (expression.type()) {
+            case AND -> select(expression.left(), size).and(select(expression.right(), size));
+            case OR -> select(expression.left(), size).or(select(expression.right(), size));
+            case NOT -> select(expression.left(), size).complement(size);
+            case EQ -> match(expression, size);
+            case NE -> match(expression, size).complement(size);
+            case IN -> match(expression, size);
+            case NIN -> match(expression, size).complement(size);
+            default -> throw new IllegalArgumentException("Unsupported filter operator " + expression.type()
+                    + "; only ==, !=, in, nin, and, or and not are supported");
+        };
+    }
+
+    private OrdinalSet match(Filter.Expression expression, int size) {
+        if (!(expression.left() instanceof Filter.Key key) || !(expression.right() instanceof Filter.Value value)) {
+            throw new IllegalArgumentException("Expected <key> " + expression.type() + " <value>");
+        }
+        Map<String, OrdinalSet> byValue = sets.get(key.key());
+        if (byValue == null) {
+            throw new IllegalArgumentException("Cannot filter on '" + key.key() + "'; only " + NAMESPACE + " and "
+                    + DOCUMENT_ID + " are indexed");
+        }
+        List<Object> values = value.value() instanceof List<?> list ? new ArrayList<>(list) : List.of(value.value());
+        OrdinalSet result = new OrdinalSet();
+        for (Object candidate : values) {
+            OrdinalSet matching = byValue.get(String.valueOf(candidate));
+            if (matching != null) {
+                result = result.or(matching);
+            }
+        }
+        return result.and(OrdinalSet.all(size));
+    }
+
+    /** Number of indexed records per value of {@code key}, including deleted ones. */
+    Map<String, Integer> counts(String key) {
+        Map<String, Integer> counts = new TreeMap<>();
+        sets.get(key).forEach((value, ordinals) -> counts.put(value, ordinals.cardinality()));
+        return counts;
+    }
+
+    long bytesUsed() {
+        long bytes = 0;
+        for (Map<String, OrdinalSet> byValue : sets.values()) {
+            for (OrdinalSet ordinals : byValue.values()) {
+                bytes += ordinals.bytesUsed();
+            }
+        }
+        return bytes;
+    }
+}
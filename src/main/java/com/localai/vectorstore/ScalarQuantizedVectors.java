@@ -0,0 +1,59 @@
+package com.localai.vectorstore;
+
+import java.util.Arrays;
+
+/**
+ * In-heap int8 copy of the vector file used to score candidates cheaply.
+ *
+ * Each vector is scaled by its own max-abs component so no training pass is
+ * needed and vectors can be added one at a time. Scoring is asymmetric: the
+ * query stays float32 and only the stored side is quantized, which keeps the
+ * error small enough that a short full-precision re-rank recovers the exact
+ * ordering of the top results.
+ *
+ * Not thread-safe for writers; guarded by the {@link MappedVectorStore} lock.
+ */
+final class ScalarQuantizedVectors {
+
+    private final int dimensions;
+    private byte[] codes;
+    private float[] scales;
+    private int count;
+
+    ScalarQuantizedVectors(int dimensions) {
+        this.dimensions = dimensions;
+        this.codes = new byte[dimensions * 1024];
+        this.scales = new float[1024];
+    }
+
+    int count() {
+        return count;
+    }
+
+    void add(float[] vector) {
+        if (count == scales.length) {
+            scales = Arrays.copyOf(scales, count * 2);
+            codes = Arrays.copyOf(codes, count * 2 * dimensions);
+        }
+        float maxAbs = 0f;
+        for (float value : vector) {
+            maxAbs = Math.max(maxAbs, Math.abs(value));
+        }
+        float scale = maxAbs == 0f ? 1f : maxAbs / 127f;
+        int base = count * dimensions;
+        for (int i = 0; i < dimensions; i++) {
+            codes[base + i] = (byte) Math.round(vector[i] / scale);
+        }
+        scales[count] = scale;
+        count++;
+    }
+
+    float dot(int ordinal, float[] query) {
+        return VectorKernel.get().dot(codes, ordinal * dimensions, query) * scales[ordinal];
+    }
+
+    /** Heap bytes actually used by codes and scales. */
+    long bytesUsed() {
+        return (long) count * dimensions + (long) count * Float.BYTES;
+    }
+}
@@ -0,0 +1,7 @@
+package com.localai.vectorstore;
+
+/**
+ * A record ordinal with its similarity to the query (higher is closer).
+ */
+record ScoredOrdinal(int ordinal, float score) {
+}
@@ -0,0 +1,90 @@
+package com.localai.vectorstore;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The list of live segments, in ordinal order. This file is the commit point
+ * of the store: it is replaced with an atomic rename after the segments it
+ * names have been synced, so a crash leaves either the old or the new list.
+ *
+ * It also names the tombstone file that belongs to this list of segments.
+ * Rewriting the store renumbers ordinals, so it starts a new tombstone file
+ * that becomes current in the same atomic step as the new segments.
+ */
+record SegmentManifest(int dimensions, long nextSegmentId, List<Entry> segments, String tombstones) {
+
+    static final String FILE = "MANIFEST";
+    static final String DEFAULT_TOMBSTONES = "tombstones.bin";
+    private static final int VERSION = 1;
+
+    record Entry(long id, int count) {
+    }
+
+    SegmentManifest {
+        segments = List.copyOf(segments);
+    }
+
+    static SegmentManifest empty(long nextSegmentId, String tombstones) {
+        return new SegmentManifest(0, nextSegmentId, List.of(), tombstones);
+    }
+
+    static SegmentManifest read(Path directory, ObjectMapper objectMapper) throws IOException {
+        Path path = directory.resolve(FILE);
+        if (!Files.exists(path)) {
+            return empty(1, DEFAULT_TOMBSTONES);
+        }
+        JsonNode root = objectMapper.readTree(path.toFile());
+        List<Entry> segments = new ArrayList<>();
+        for (JsonNode node : root.path("segments")) {
+            segments.add(new Entry(node.path("id").asLong(), node.path("count").asInt()));
+        }
+        return new SegmentManifest(root.path("dimensions").asInt(), root.path("nextSegmentId").asLong(1), segments,
+                root.path("tombstones").asText(DEFAULT_TOMBSTONES));
+    }
+
+    void write(Path directory, ObjectMapper objectMapper) throws IOException {
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (Entry entry : segments) {
+            list.add(Map.of("id", entry.id(), "count", entry.count()));
+        }
+        Map<String, Object> root = new LinkedHashMap<>();
+        root.put("version", VERSION);
+        root.put("dimensions", dimensions);
+        root.put("nextSegmentId", nextSegmentId);
+        root.put("segments", list);
+        root.put("tombstones", tombstones);
+
+        Path path = directory.resolve(FILE);
+        Path temp = path.resolveSibling(FILE + ".tmp");
+        ByteBuffer bytes = ByteBuffer.wrap(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(root));
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    int totalCount() {
+        int total = 0;
+        for (Entry entry : segments) {
+            total += entry.count();
+        }
+        return total;
+    }
+}
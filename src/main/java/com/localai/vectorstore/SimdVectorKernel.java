@@ -0,0 +1,68 @@
+package com.localai.vectorstore;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link VectorKernel} on the incubating Vector API, using the widest float
+ * vectors the CPU supports. Only loaded through {@link VectorKernel#get} when
+ * the {@code jdk.incubator.vector} module is present.
+ */
+final class SimdVectorKernel extends VectorKernel {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    // int8 codes are loaded one byte per float lane and widened in place;
+    // null when that byte vector would be narrower than the smallest shape
+    private static final VectorSpecies<Byte> BYTES = FLOATS.length() >= 8
+            ? VectorSpecies.of(byte.class, VectorShape.forBitSize(FLOATS.length() * Byte.SIZE))
+            : null;
+
+    SimdVectorKernel() {
+        if (FLOATS.length() < 4) {
+            throw new UnsupportedOperationException("No SIMD float vectors on this platform: " + FLOATS);
+        }
+    }
+
+    @Override
+    String name() {
+        return "simd-" + FLOATS.vectorBitSize();
+    }
+
+    @Override
+    float dot(float[] vectors, int offset, float[] query) {
+        FloatVector sum = FloatVector.zero(FLOATS);
+        int bound = FLOATS.loopBound(query.length);
+        int i = 0;
+        for (; i < bound; i += FLOATS.length()) {
+            sum = FloatVector.fromArray(FLOATS, vectors, offset + i).fma(FloatVector.fromArray(FLOATS, query, i), sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < query.length; i++) {
+            result += vectors[offset + i] * query[i];
+        }
+        return result;
+    }
+
+    @Override
+    float dot(byte[] codes, int offset, float[] query) {
+        int i = 0;
+        float result = 0f;
+        if (BYTES != null) {
+            FloatVector sum = FloatVector.zero(FLOATS);
+            int bound = FLOATS.loopBound(query.length);
+            for (; i < bound; i += FLOATS.length()) {
+                FloatVector widened = (FloatVector) ByteVector.fromArray(BYTES, codes, offset + i)
+                        .convertShape(VectorOperators.B2F, FLOATS, 0);
+                sum = widened.fma(FloatVector.fromArray(FLOATS, query, i), sum);
+            }
+            result = sum.reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < query.length; i++) {
+            result += codes[offset + i] * query[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,84 @@
+package com.localai.vectorstore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * Append-only list of deleted ordinals ({@code tombstones.bin}). Segments are
+ * never rewritten for a delete; the ordinal is recorded here and filtered out
+ * at search time. A torn trailing entry from a crash is ignored on load.
+ *
+ * When the store is cleared or rewritten a new log is started under a new
+ * name, see {@link SegmentManifest#tombstones()}.
+ */
+final class TombstoneLog implements Closeable {
+
+    private final FileChannel channel;
+    private final BitSet deleted = new BitSet();
+
+    private TombstoneLog(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    static TombstoneLog open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        TombstoneLog log = new TombstoneLog(channel);
+        long entries = channel.size() / Integer.BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate((int) entries * Integer.BYTES);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        while (buffer.remaining() >= Integer.BYTES) {
+            log.deleted.set(buffer.getInt());
+        }
+        channel.truncate(entries * Integer.BYTES);
+        return log;
+    }
+
+    /** Opens a new, empty log; an existing file of that name is replaced. */
+    static TombstoneLog create(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        return open(path);
+    }
+
+    boolean isDeleted(int ordinal) {
+        return deleted.get(ordinal);
+    }
+
+    int count() {
+        return deleted.cardinality();
+    }
+
+    /** Copy of the deleted ordinals. */
+    BitSet snapshot() {
+        return (BitSet) deleted.clone();
+    }
+
+    void append(Collection<Integer> ordinals) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(ordinals.size() * Integer.BYTES);
+        ordinals.forEach(buffer::putInt);
+        buffer.flip();
+        long position = channel.size();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        channel.force(false);
+        ordinals.forEach(deleted::set);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,81 @@
+package com.localai.vectorstore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dot products used to score stored vectors against a query. {@link #get}
+ * returns the SIMD implementation on the incubating Vector API when it was
+ * compiled in (Maven profile {@code simd}) and the JVM was started with
+ * {@code --add-modules jdk.incubator.vector}, and a plain scalar loop
+ * otherwise; the choice is made once, at class load.
+ *
+ * {@code -Dlocalai.vector.kernel=scalar} forces the scalar loop, e.g. to
+ * compare the two in a benchmark.
+ */
+abstract class VectorKernel {
+
+    private static final Logger logger = LoggerFactory.getLogger(VectorKernel.class);
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final VectorKernel INSTANCE = load();
+
+    static VectorKernel get() {
+        return INSTANCE;
+    }
+
+    abstract String name();
+
+    /** Dot product of {@code query} with {@code vectors[offset, offset + query.length)}. */
+    abstract float dot(float[] vectors, int offset, float[] query);
+
+    /** Dot product of {@code query} with the int8 codes {@code codes[offset, offset + query.length)}. */
+    abstract float dot(byte[] codes, int offset, float[] query);
+
+    private static VectorKernel load() {
+        String reason = "start with --add-modules " + VECTOR_MODULE + " for SIMD";
+        if ("scalar".equalsIgnoreCase(System.getProperty("localai.vector.kernel"))) {
+            reason = "forced by localai.vector.kernel";
+        } else if (ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                // Loaded by name so this class never links against the incubator module
+                VectorKernel simd = (VectorKernel) Class.forName(VectorKernel.class.getPackageName()
+                        + ".SimdVectorKernel").getDeclaredConstructor().newInstance();
+                logger.info("Vector scoring uses the {} kernel.", simd.name());
+                return simd;
+            } catch (ClassNotFoundException e) {
+                reason = "built without the simd Maven profile";
+            } catch (ReflectiveOperationException | LinkageError e) {
+                logger.debug("Vector API kernel unavailable", e);
+                reason = "Vector API unavailable: " + e;
+            }
+        }
+        logger.info("Vector scoring uses the scalar kernel ({}).", reason);
+        return new Scalar();
+    }
+
+    static final class Scalar extends VectorKernel {
+
+        @Override
+        String name() {
+            return "scalar";
+        }
+
+        @Override
+        float dot(float[] vectors, int offset, float[] query) {
+            float sum = 0f;
+            for (int i = 0; i < query.length; i++) {
+                sum += vectors[offset + i] * query[i];
+            }
+            return sum;
+        }
+
+        @Override
+        float dot(byte[] codes, int offset, float[] query) {
+            float sum = 0f;
+            for (int i = 0; i < query.length; i++) {
+                sum += codes[offset + i] * query[i];
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.localai.vectorstore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One immutable slice of the store: {@code seg-<id>.f32} holds the vectors,
+ * {@code seg-<id>.dat}/{@code seg-<id>.idx} the chunk records, in the same
+ * local order. A segment only becomes visible once the manifest lists it, so
+ * a half-written segment is just an orphan to be deleted on the next start.
+ */
+final class VectorSegment implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(VectorSegment.class);
+
+    private static final Pattern FILE_NAME = Pattern.compile("seg-(\\d+)\\.(f32|dat|idx)");
+
+    private final long id;
+    private final MappedVectorFile vectors;
+    private final ChunkFile chunks;
+
+    private VectorSegment(long id, MappedVectorFile vectors, ChunkFile chunks) {
+        this.id = id;
+        this.vectors = vectors;
+        this.chunks = chunks;
+    }
+
+    static VectorSegment open(Path directory, long id, int count) throws IOException {
+        MappedVectorFile vectors = MappedVectorFile.open(directory.resolve(fileName(id, "f32")));
+        if (vectors.count() != count) {
+            vectors.close();
+            throw new IOException("Segment " + id + " holds " + vectors.count() + " vectors, manifest says " + count);
+        }
+        try {
+            ChunkFile chunks = ChunkFile.open(directory.resolve(fileName(id, "dat")),
+                    directory.resolve(fileName(id, "idx")), count);
+            return new VectorSegment(id, vectors, chunks);
+        } catch (IOException e) {
+            vectors.close();
+            throw e;
+        }
+    }
+
+    long id() {
+        return id;
+    }
+
+    int count() {
+        return vectors.count();
+    }
+
+    int dimensions() {
+        return vectors.dimensions();
+    }
+
+    float[] get(int local) {
+        return vectors.get(local);
+    }
+
+    float dot(int local, float[] query) {
+        return vectors.dot(local, query);
+    }
+
+    byte[] read(int local) throws IOException {
+        return chunks.read(local);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            vectors.close();
+        } finally {
+            chunks.close();
+        }
+    }
+
+    static String fileName(long id, String extension) {
+        return String.format("seg-%08d.%s", id, extension);
+    }
+
+    /**
+     * Segment id of a data file, or -1 if the name does not belong to a segment.
+     */
+    static long idOf(Path file) {
+        Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+
+    /**
+     * Best-effort removal of a segment's files. On Windows a file that is still
+     * mapped cannot be deleted until the buffer is collected; whatever is left
+     * behind is removed as an orphan on the next start.
+     */
+    static void delete(Path directory, long id) {
+        for (String extension : List.of("f32", "dat", "idx")) {
+            Path file = directory.resolve(fileName(id, extension));
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.warn("Could not delete {} yet: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes a new segment sequentially. Nothing is visible to readers until
+     * {@link #finish()} has synced the files and the caller has published the
+     * segment in the manifest.
+     */
+    static final class Writer implements Closeable {
+
+        private final Path directory;
+        private final long id;
+        private final MappedVectorFile.Writer vectors;
+        private final ChunkFile.Writer chunks;
+        private int count;
+
+        Writer(Path directory, long id, int dimensions) throws IOException {
+            this.directory = directory;
+            this.id = id;
+            this.vectors = new MappedVectorFile.Writer(directory.resolve(fileName(id, "f32")), dimensions);
+            this.chunks = new ChunkFile.Writer(directory.resolve(fileName(id, "dat")),
+                    directory.resolve(fileName(id, "idx")));
+        }
+
+        void append(float[] vector, byte[] record) throws IOException {
+            vectors.append(vector);
+            chunks.append(record);
+            count++;
+        }
+
+        /** Syncs the files and opens the finished segment for reading. */
+        VectorSegment finish() throws IOException {
+            vectors.finish();
+            chunks.finish();
+            close();
+            return open(directory, id, count);
+        }
+
+        /** Closes and deletes a segment that will not be published. */
+        void abort() {
+            try {
+                close();
+            } catch (IOException e) {
+                logger.debug("Error closing aborted segment {}", id, e);
+            }
+            delete(directory, id);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                vectors.close();
+            } finally {
+                chunks.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.localai.vectorstore;
+
+/**
+ * Thrown by searches and document deletes that need the vector store's
+ * indexes while they are still being loaded in the background, or after
+ * that load failed.
+ */
+public class VectorStoreLoadingException extends IllegalStateException {
+
+    private final boolean failed;
+
+    public VectorStoreLoadingException(String message, boolean failed) {
+        super(message);
+        this.failed = failed;
+    }
+
+    /** True when the load failed, false when it is still running. */
+    public boolean isFailed() {
+        return failed;
+    }
+}
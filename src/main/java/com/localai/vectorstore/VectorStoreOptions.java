@@ -0,0 +1,143 @@
+package com.localai.vectorstore;
+
+/**
+ * Tuning for {@link MappedVectorStore}. Defaults favour recall over speed;
+ * see application.properties for the matching {@code app.vectorstore.*} keys.
+ */
+public class VectorStoreOptions {
+
+    private String index = "hnsw"; // hnsw or flat (exact scan)
+    private int hnswM = 16;
+    private int hnswEfConstruction = 100;
+    private int hnswEfSearch = 64;
+    private String quantization = "none"; // none or int8
+    private int rerankFactor = 4;
+    private long compactionIntervalSeconds = 60; // 0 disables background compaction
+    private int compactionMaxSegmentRecords = 50_000;
+    private double compactionReclaimRatio = 0.2; // deleted share that triggers a rewrite; 0 disables
+    private boolean keywordIndex = true; // BM25 index over chunk text for keyword and hybrid search
+    private int scanParallelThreshold = 50_000; // exact scans over more chunks are split across threads
+    private int scanThreads = 0; // 0 means one per available processor
+    private boolean asyncLoad = true; // build the derived indexes in the background after opening
+    private long loadWaitMillis = 5000; // how long index-dependent calls wait for a background load
+
+    public String getIndex() {
+        return index;
+    }
+
+    public void setIndex(String index) {
+        this.index = index;
+    }
+
+    public boolean isHnswEnabled() {
+        return "hnsw".equalsIgnoreCase(index);
+    }
+
+    public int getHnswM() {
+        return hnswM;
+    }
+
+    public void setHnswM(int hnswM) {
+        this.hnswM = hnswM;
+    }
+
+    public int getHnswEfConstruction() {
+        return hnswEfConstruction;
+    }
+
+    public void setHnswEfConstruction(int hnswEfConstruction) {
+        this.hnswEfConstruction = hnswEfConstruction;
+    }
+
+    public int getHnswEfSearch() {
+        return hnswEfSearch;
+    }
+
+    public void setHnswEfSearch(int hnswEfSearch) {
+        this.hnswEfSearch = hnswEfSearch;
+    }
+
+    public String getQuantization() {
+        return quantization;
+    }
+
+    public void setQuantization(String quantization) {
+        this.quantization = quantization;
+    }
+
+    public boolean isQuantized() {
+        return "int8".equalsIgnoreCase(quantization);
+    }
+
+    public int getRerankFactor() {
+        return rerankFactor;
+    }
+
+    public void setRerankFactor(int rerankFactor) {
+        this.rerankFactor = rerankFactor;
+    }
+
+    public long getCompactionIntervalSeconds() {
+        return compactionIntervalSeconds;
+    }
+
+    public void setCompactionIntervalSeconds(long compactionIntervalSeconds) {
+        this.compactionIntervalSeconds = compactionIntervalSeconds;
+    }
+
+    public int getCompactionMaxSegmentRecords() {
+        return compactionMaxSegmentRecords;
+    }
+
+    public void setCompactionMaxSegmentRecords(int compactionMaxSegmentRecords) {
+        this.compactionMaxSegmentRecords = compactionMaxSegmentRecords;
+    }
+
+    public double getCompactionReclaimRatio() {
+        return compactionReclaimRatio;
+    }
+
+    public void setCompactionReclaimRatio(double compactionReclaimRatio) {
+        this.compactionReclaimRatio = compactionReclaimRatio;
+    }
+
+    public boolean isKeywordIndex() {
+        return keywordIndex;
+    }
+
+    public void setKeywordIndex(boolean keywordIndex) {
+        this.keywordIndex = keywordIndex;
+    }
+
+    public int getScanParallelThreshold() {
+        return scanParallelThreshold;
+    }
+
+    public void setScanParallelThreshold(int scanParallelThreshold) {
+        this.scanParallelThreshold = scanParallelThreshold;
+    }
+
+    public int getScanThreads() {
+        return scanThreads > 0 ? scanThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    public void setScanThreads(int scanThreads) {
+        this.scanThreads = scanThreads;
+    }
+
+    public boolean isAsyncLoad() {
+        return asyncLoad;
+    }
+
+    public void setAsyncLoad(boolean asyncLoad) {
+        this.asyncLoad = asyncLoad;
+    }
+
+    public long getLoadWaitMillis() {
+        return loadWaitMillis;
+    }
+
+    public void setLoadWaitMillis(long loadWaitMillis) {
+        this.loadWaitMillis = loadWaitMillis;
+    }
+}
@@ -0,0 +1,113 @@
+package com.localai.benchmark;
+
+import com.localai.service.ParallelPdfTextExtractor;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the old ingestion read path (PagePdfDocumentReader) with
+ * ParallelPdfTextExtractor on generated text PDFs of 10, 100 and 1000 pages.
+ *
+ * Not part of the test run. Start it from the IDE via {@link #main}; JMH
+ * command-line options are passed through, e.g. {@code -p workers=8}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class PdfExtractionBenchmark {
+
+    private static final int LINES_PER_PAGE = 50;
+
+    @Param({"10", "100", "1000"})
+    public int pages;
+
+    @Param({"4"})
+    public int workers;
+
+    private File pdf;
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void createPdf() throws Exception {
+        pdf = Files.createTempFile("benchmark-" + pages + "-", ".pdf").toFile();
+        PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+        try (PDDocument document = new PDDocument()) {
+            for (int p = 0; p < pages; p++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(font, 10);
+                    content.setLeading(12);
+                    content.newLineAtOffset(50, 750);
+                    for (int line = 0; line < LINES_PER_PAGE; line++) {
+                        content.showText("Page " + (p + 1) + " line " + line
+                                + ": the tenant shall pay the rent monthly in advance.");
+                        content.newLine();
+                    }
+                    content.endText();
+                }
+            }
+            document.save(pdf);
+        }
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws Exception {
+        executor.shutdownNow();
+        Files.deleteIfExists(pdf.toPath());
+    }
+
+    @Benchmark
+    public void pagePdfDocumentReader(Blackhole blackhole) {
+        for (Document page : new PagePdfDocumentReader(new FileSystemResource(pdf)).get()) {
+            blackhole.consume(page.getContent());
+        }
+    }
+
+    @Benchmark
+    public void parallelExtractor(Blackhole blackhole) throws Exception {
+        new ParallelPdfTextExtractor(executor, workers, 8).extract(pdf, ParallelPdfTextExtractor.pageCount(pdf),
+                (page, text) -> blackhole.consume(text));
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(PdfExtractionBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
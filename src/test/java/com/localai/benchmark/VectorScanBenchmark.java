@@ -0,0 +1,149 @@
+package com.localai.benchmark;
+
+import com.localai.vectorstore.MappedVectorStore;
+import com.localai.vectorstore.VectorStoreOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.util.FileSystemUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Exact top-10 search over random 384-dimensional chunks: the old
+ * SimpleVectorStore (boxed doubles, one thread) against the flat
+ * MappedVectorStore scan on one thread and split across the fork/join pool.
+ * {@code kernel} picks the SIMD or the scalar dot product; each value runs in
+ * its own fork because the kernel is chosen once per JVM. The SIMD kernel is
+ * only compiled with the Maven profile {@code simd}; without it both values
+ * measure the scalar loop.
+ *
+ * Not part of the test run. Start it from the IDE via {@link #main}; JMH
+ * command-line options are passed through, e.g. {@code -p chunks=100000}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules=jdk.incubator.vector", "-Xmx2g" })
+public class VectorScanBenchmark {
+
+    private static final String QUERY = "query";
+
+    @Param({"10000", "50000"})
+    public int chunks;
+
+    @Param({"384"})
+    public int dimensions;
+
+    @Param({"simd", "scalar"})
+    public String kernel;
+
+    private Path sequentialDir;
+    private Path parallelDir;
+    private SimpleVectorStore simpleStore;
+    private MappedVectorStore sequentialStore;
+    private MappedVectorStore parallelStore;
+    private SearchRequest request;
+
+    @Setup(Level.Trial)
+    public void createStores() throws Exception {
+        System.setProperty("localai.vector.kernel", kernel);
+        Random random = new Random(42);
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < chunks; i++) {
+            Document document = new Document("chunk-" + i, "chunk " + i, Map.of("filename", "benchmark.pdf"));
+            document.setEmbedding(randomVector(random));
+            documents.add(document);
+        }
+        EmbeddingClient embeddingClient = mock(EmbeddingClient.class);
+        when(embeddingClient.embed(any(Document.class)))
+                .thenAnswer(invocation -> ((Document) invocation.getArgument(0)).getEmbedding());
+        when(embeddingClient.embed(QUERY)).thenReturn(randomVector(random));
+        request = SearchRequest.query(QUERY).withTopK(10);
+
+        simpleStore = new SimpleVectorStore(embeddingClient);
+        simpleStore.add(documents);
+
+        VectorStoreOptions options = new VectorStoreOptions();
+        options.setIndex("flat");
+        options.setCompactionIntervalSeconds(0);
+        options.setKeywordIndex(false);
+        options.setScanThreads(1);
+        sequentialDir = Files.createTempDirectory("benchmark-scan-");
+        sequentialStore = new MappedVectorStore(sequentialDir, embeddingClient, options);
+        sequentialStore.add(documents);
+
+        options.setScanThreads(0);
+        options.setScanParallelThreshold(1);
+        parallelDir = Files.createTempDirectory("benchmark-scan-parallel-");
+        parallelStore = new MappedVectorStore(parallelDir, embeddingClient, options);
+        parallelStore.add(documents);
+    }
+
+    private List<Double> randomVector(Random random) {
+        List<Double> vector = new ArrayList<>(dimensions);
+        for (int d = 0; d < dimensions; d++) {
+            vector.add(random.nextGaussian());
+        }
+        return vector;
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws Exception {
+        sequentialStore.close();
+        parallelStore.close();
+        FileSystemUtils.deleteRecursively(sequentialDir);
+        FileSystemUtils.deleteRecursively(parallelDir);
+    }
+
+    @Benchmark
+    public List<Document> simpleVectorStore() {
+        return simpleStore.similaritySearch(request);
+    }
+
+    @Benchmark
+    public List<Document> mappedScan() {
+        return sequentialStore.similaritySearch(request);
+    }
+
+    @Benchmark
+    public List<Document> mappedParallelScan() {
+        return parallelStore.similaritySearch(request);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(VectorScanBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -1,14 +1,35 @@
 package com.localai.controller;
 
+import com.localai.model.settings.AppSettings;
+import com.localai.service.BulkIngestionService;
+import com.localai.service.ChatStreamService;
+import com.localai.service.ClassificationBatcher;
+import com.localai.service.DocumentService;
+import com.localai.service.InferenceScheduler;
+import com.localai.service.IngestionScheduler;
+import com.localai.service.JobEventService;
+import com.localai.service.ModelManagerService;
+import com.localai.service.PrivacyService;
+import com.localai.service.ProcessingStatusService;
+import com.localai.service.ResponseCache;
+import com.localai.service.RetrievalService;
+import com.localai.service.SettingsService;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.springframework.ai.chat.ChatClient;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
@@ -21,11 +42,55 @@ public class AiControllerTest {
     private MockMvc mockMvc;
 
     @MockBean
-    private ChatClient chatClient;
+    private InferenceScheduler inferenceScheduler;
+
+    @MockBean
+    private ModelManagerService modelManager;
+
+    @MockBean
+    private DocumentService documentService;
+
+    @MockBean
+    private SettingsService settingsService;
+
+    @MockBean
+    private PrivacyService privacyService;
+
+    @MockBean
+    private ProcessingStatusService statusService;
+
+    @MockBean
+    private IngestionScheduler ingestionScheduler;
+
+    @MockBean
+    private JobEventService jobEventService;
+
+    @MockBean
+    private BulkIngestionService bulkIngestionService;
+
+    @MockBean
+    private RetrievalService retrievalService;
+
+    @MockBean
+    private ChatStreamService chatStreamService;
+
+    @MockBean
+    private ResponseCache responseCache;
+
+    @MockBean
+    private ClassificationBatcher classificationBatcher;
+
+    @BeforeEach
+    public void setUp() {
+        when(settingsService.getSettings()).thenReturn(new AppSettings());
+        when(privacyService.redact(anyString(), anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(modelManager.getCurrentModel()).thenReturn("llama3");
+    }
 
     @Test
     public void testChatEndpoint() throws Exception {
-        when(chatClient.call(anyString())).thenReturn("I am a local AI.");
+        when(inferenceScheduler.call(any(Prompt.class), eq(InferenceScheduler.Lane.INTERACTIVE)))
+                .thenReturn(new ChatResponse(List.of(new Generation("I am a local AI."))));
 
         String jsonInfo = "{\"message\": \"Hello\"}";
 
@@ -33,12 +98,13 @@ public class AiControllerTest {
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(jsonInfo))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.response").value("I am a local AI."));
+                .andExpect(jsonPath("$.response").value("I am a local AI."))
+                .andExpect(jsonPath("$.model").value("llama3"));
     }
 
     @Test
     public void testClassifyEndpoint() throws Exception {
-        when(chatClient.call(anyString())).thenReturn("Food");
+        when(classificationBatcher.classify("KFC Burger")).thenReturn("Food");
 
         String jsonInfo = "{\"text\": \"KFC Burger\"}";
 
@@ -0,0 +1,129 @@
+package com.localai.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.localai.exception.UploadException;
+import com.localai.vectorstore.MappedVectorStore;
+import com.localai.vectorstore.VectorStoreOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.http.HttpStatus;
+
+import java.io.File;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BulkIngestionServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private MappedVectorStore vectorStore;
+    private ProcessingStatusService statusService;
+    private IngestionScheduler scheduler;
+    private PdfIngestionPipeline pipeline;
+    private DocumentRegistry registry;
+    private DocumentService documentService;
+    private Path allowed;
+    private Path outside;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        VectorStoreOptions options = new VectorStoreOptions();
+        options.setCompactionIntervalSeconds(0);
+        vectorStore = new MappedVectorStore(tempDir.resolve("store"), mock(EmbeddingClient.class), options);
+        statusService = new ProcessingStatusService(60, 100, 3600, tempDir.resolve("text").toString());
+        scheduler = new IngestionScheduler(1, 10, 0);
+        pipeline = mock(PdfIngestionPipeline.class);
+        when(pipeline.ingest(any(File.class), anyString(), anyMap(), any(Writer.class), any(), any()))
+                .thenReturn(new PdfIngestionPipeline.Result(1, 0, 10));
+        registry = new DocumentRegistry(new ObjectMapper(), tempDir.resolve("documents.json").toString());
+        documentService = new DocumentService(vectorStore, statusService, scheduler, pipeline, registry);
+        allowed = Files.createDirectories(tempDir.resolve("statements"));
+        outside = Files.createDirectories(tempDir.resolve("home"));
+        Files.writeString(outside.resolve("private.pdf"), "private");
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        scheduler.shutdown();
+        statusService.shutdown();
+        vectorStore.close();
+    }
+
+    private BulkIngestionService service(String allowedRoots) {
+        return new BulkIngestionService(vectorStore, statusService, scheduler, pipeline, registry, documentService,
+                allowedRoots);
+    }
+
+    private static HttpStatus refusal(BulkIngestionService service, String directory) {
+        return assertThrows(UploadException.class,
+                () -> service.submitDirectory(directory, true, false, "finance")).getStatus();
+    }
+
+    @Test
+    public void testDirectoriesOutsideTheAllowedRootsAreRefused() throws Exception {
+        assertEquals(HttpStatus.FORBIDDEN, refusal(service(""), allowed.toString()));
+
+        BulkIngestionService service = service(allowed + ", " + tempDir.resolve("missing"));
+        assertEquals(HttpStatus.FORBIDDEN, refusal(service, outside.toString()));
+        assertEquals(HttpStatus.FORBIDDEN, refusal(service, allowed.resolve("..").resolve("home").toString()));
+        assertEquals(HttpStatus.BAD_REQUEST, refusal(service, allowed.resolve("missing").toString()));
+        assertEquals(HttpStatus.BAD_REQUEST, refusal(service, null));
+
+        // A link inside an allowed root does not lead out of it
+        Path link = Files.createSymbolicLink(allowed.resolve("home"), outside);
+        assertEquals(HttpStatus.FORBIDDEN, refusal(service, link.toString()));
+    }
+
+    @Test
+    public void testLinksInsideTheRootAreNotFollowed() throws Exception {
+        Files.writeString(allowed.resolve("january.pdf"), "january");
+        Files.writeString(Files.createDirectories(allowed.resolve("2024")).resolve("february.PDF"), "february");
+        Files.writeString(allowed.resolve("notes.txt"), "notes");
+        Files.createSymbolicLink(allowed.resolve("escape.pdf"), outside.resolve("private.pdf"));
+        Files.createSymbolicLink(allowed.resolve("home"), outside);
+
+        BulkIngestionService.BulkJob job = service(allowed.toString()).submitDirectory(allowed.toString(), true,
+                false, "finance");
+
+        assertEquals(2, job.fileCount());
+        ProcessingStatusService.JobStatus status = awaitJob(job.jobId());
+        assertEquals("COMPLETED", status.status);
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> files = (List<Map<String, Object>>) ((Map<String, Object>) status.payload)
+                .get("files");
+        assertEquals(List.of("2024/february.PDF", "january.pdf"),
+                files.stream().map(file -> file.get("filename")).toList());
+        assertEquals(List.of("ingested", "ingested"), files.stream().map(file -> file.get("status")).toList());
+
+        // Not recursive: only the top level
+        assertEquals(1, service(allowed.toString()).submitDirectory(allowed.toString(), false, true, "finance")
+                .fileCount());
+    }
+
+    private ProcessingStatusService.JobStatus awaitJob(String jobId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (System.currentTimeMillis() < deadline) {
+            ProcessingStatusService.JobStatus status = statusService.getStatus(jobId);
+            if ("COMPLETED".equals(status.status) || "ERROR".equals(status.status)) {
+                return status;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Job " + jobId + " did not finish");
+    }
+}
@@ -0,0 +1,202 @@
+package com.localai.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.localai.exception.InferenceBusyException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.ChatClient;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.Generation;
+import org.springframework.ai.chat.StreamingChatClient;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ChatStreamServiceTest {
+
+    private static final Prompt PROMPT = new Prompt("Summarise my lease");
+
+    private StreamingChatClient chatClient;
+    private InferenceScheduler scheduler;
+    private ChatStreamService service;
+
+    @BeforeEach
+    public void setUp() {
+        chatClient = mock(StreamingChatClient.class);
+        // One slot, one waiter, and a one-second wait for admission
+        scheduler = new InferenceScheduler(mock(ChatClient.class), new ObjectMapper(), 1, "", 1, 1);
+        service = new ChatStreamService(chatClient, scheduler, 10) {
+            @Override
+            SseEmitter newEmitter() {
+                return new RecordingEmitter();
+            }
+        };
+    }
+
+    /** Keeps the events a client would receive, and can play the client going away. */
+    private static final class RecordingEmitter extends SseEmitter {
+
+        final List<Map<?, ?>> events = new CopyOnWriteArrayList<>();
+        volatile Runnable onCompletion;
+        volatile boolean completed;
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            for (DataWithMediaType item : builder.build()) {
+                if (item.getData() instanceof Map<?, ?> data) {
+                    events.add(data);
+                }
+            }
+        }
+
+        @Override
+        public void onCompletion(Runnable callback) {
+            onCompletion = callback;
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+
+        void disconnect() {
+            onCompletion.run();
+        }
+
+        List<Object> tokens() {
+            return events.stream().filter(event -> event.containsKey("text"))
+                    .<Object>map(event -> event.get("text")).toList();
+        }
+
+        Map<?, ?> last() {
+            return events.get(events.size() - 1);
+        }
+    }
+
+    private RecordingEmitter stream() {
+        return (RecordingEmitter) service.stream(PROMPT, "llama3", InferenceScheduler.Lane.INTERACTIVE);
+    }
+
+    private static ChatResponse token(String text) {
+        return new ChatResponse(List.of(new Generation(text)));
+    }
+
+    private Object modelStat(String name) {
+        Map<?, ?> models = (Map<?, ?>) scheduler.stats().get("models");
+        return ((Map<?, ?>) models.get("llama3")).get(name);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Condition not met in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testFollowerReplaysTokensSentBeforeItJoined() {
+        Sinks.Many<ChatResponse> answer = Sinks.many().unicast().onBackpressureBuffer();
+        when(chatClient.stream(any(Prompt.class))).thenReturn(answer.asFlux());
+
+        RecordingEmitter leader = stream();
+        answer.tryEmitNext(token("The rent "));
+        RecordingEmitter follower = stream();
+        assertEquals(List.of("The rent "), follower.tokens());
+
+        answer.tryEmitNext(token("is due monthly."));
+        answer.tryEmitComplete();
+
+        assertEquals(List.of("The rent ", "is due monthly."), leader.tokens());
+        assertEquals(List.of("The rent ", "is due monthly."), follower.tokens());
+        assertEquals(false, leader.last().get("shared"));
+        assertEquals(true, follower.last().get("shared"));
+        assertTrue(leader.completed && follower.completed);
+        verify(chatClient, times(1)).stream(any(Prompt.class));
+        assertEquals(1L, scheduler.stats().get("coalesced"));
+        assertEquals(0, modelStat("running"));
+    }
+
+    @Test
+    public void testLastClientLeavingStopsTheGeneration() {
+        AtomicBoolean stopped = new AtomicBoolean();
+        Sinks.Many<ChatResponse> answer = Sinks.many().unicast().onBackpressureBuffer();
+        when(chatClient.stream(any(Prompt.class))).thenReturn(answer.asFlux().doOnCancel(() -> stopped.set(true)));
+
+        RecordingEmitter leader = stream();
+        RecordingEmitter follower = stream();
+        answer.tryEmitNext(token("The rent "));
+
+        // The follower still listens, so the generation goes on
+        leader.disconnect();
+        assertFalse(stopped.get());
+        assertEquals(1, modelStat("running"));
+        answer.tryEmitNext(token("is due monthly."));
+        assertEquals(List.of("The rent "), leader.tokens());
+        assertEquals(List.of("The rent ", "is due monthly."), follower.tokens());
+
+        follower.disconnect();
+        assertTrue(stopped.get());
+        assertEquals(0, modelStat("running"));
+        assertEquals(2L, service.stats().get("cancelled"));
+        assertEquals(0, service.stats().get("active"));
+    }
+
+    @Test
+    public void testFollowersShareTheLeadersRejection() throws Exception {
+        InferenceScheduler.Permit busy = scheduler.acquire("llama3", InferenceScheduler.Lane.INTERACTIVE);
+        ExecutorService clients = Executors.newFixedThreadPool(2);
+        try {
+            Future<SseEmitter> leader = clients.submit(this::stream);
+            awaitTrue(() -> Integer.valueOf(1).equals(modelStat("queued")));
+            Future<SseEmitter> follower = clients.submit(this::stream);
+            awaitTrue(() -> Long.valueOf(1).equals(scheduler.stats().get("coalesced")));
+
+            // The leader's wait for admission times out: both answer 429
+            ExecutionException rejected = assertThrows(ExecutionException.class,
+                    () -> leader.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(InferenceBusyException.class, rejected.getCause());
+            ExecutionException shared = assertThrows(ExecutionException.class,
+                    () -> follower.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(InferenceBusyException.class, shared.getCause());
+        } finally {
+            clients.shutdownNow();
+            busy.close();
+        }
+        verify(chatClient, never()).stream(any(Prompt.class));
+
+        // The rejected generation is gone: the same request starts afresh
+        Sinks.Many<ChatResponse> answer = Sinks.many().unicast().onBackpressureBuffer();
+        when(chatClient.stream(any(Prompt.class))).thenReturn(answer.asFlux());
+        RecordingEmitter retry = stream();
+        answer.tryEmitNext(token("The rent is due monthly."));
+        answer.tryEmitComplete();
+        assertEquals(List.of("The rent is due monthly."), retry.tokens());
+        assertEquals(false, retry.last().get("shared"));
+    }
+}
@@ -0,0 +1,239 @@
+package com.localai.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.localai.exception.UploadException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ChunkedUploadServiceTest {
+
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path uploadDir;
+
+    private DocumentService documentService;
+    private IngestionScheduler scheduler;
+    private ChunkedUploadService uploads;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        documentService = mock(DocumentService.class);
+        scheduler = new IngestionScheduler(1, 10, 0);
+        uploads = open();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        uploads.shutdown();
+        scheduler.shutdown();
+    }
+
+    private ChunkedUploadService open() throws Exception {
+        return new ChunkedUploadService(documentService, scheduler, new ObjectMapper(), uploadDir.toString(),
+                1024, 24);
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+
+    private ChunkedUploadService.Session part(String uploadId, int start, int end) throws Exception {
+        return part(uploadId, start, end, sha256(slice(start, end)));
+    }
+
+    private ChunkedUploadService.Session part(String uploadId, int start, int end, String sha256) throws Exception {
+        return uploads.writePart(uploadId, start, sha256, new ByteArrayInputStream(slice(start, end)));
+    }
+
+    private static byte[] slice(int start, int end) {
+        byte[] slice = new byte[end - start];
+        System.arraycopy(CONTENT, start, slice, 0, slice.length);
+        return slice;
+    }
+
+    private static List<List<Long>> ranges(ChunkedUploadService.Session session) {
+        return session.ranges.stream().map(range -> List.of(range[0], range[1])).toList();
+    }
+
+    @Test
+    public void testPartsInAnyOrderMergeIntoRanges() throws Exception {
+        String uploadId = uploads.init("lease.pdf", CONTENT.length, null).uploadId;
+
+        part(uploadId, 6, 10);
+        ChunkedUploadService.Session session = part(uploadId, 0, 3);
+        assertEquals(List.of(List.of(0L, 3L), List.of(6L, 10L)), ranges(session));
+        assertEquals(7, session.received());
+        assertEquals(3, session.nextOffset());
+
+        // A retried part overlapping what was received is merged, not counted twice
+        session = part(uploadId, 2, 7);
+        assertEquals(List.of(List.of(0L, 10L)), ranges(session));
+        assertEquals(10, session.received());
+
+        // Received ranges are saved, so the upload can be resumed after a restart
+        uploads.shutdown();
+        uploads = open();
+        assertEquals(List.of(List.of(0L, 10L)), ranges(uploads.status(uploadId)));
+    }
+
+    @Test
+    public void testPartWithWrongChecksumIsNotCounted() throws Exception {
+        String uploadId = uploads.init("lease.pdf", CONTENT.length, null).uploadId;
+        part(uploadId, 0, 10);
+
+        // A bad resend of the middle un-counts the bytes it overwrote
+        UploadException mismatch = assertThrows(UploadException.class,
+                () -> part(uploadId, 3, 6, sha256("other".getBytes(StandardCharsets.UTF_8))));
+        assertEquals(HttpStatus.BAD_REQUEST, mismatch.getStatus());
+        ChunkedUploadService.Session session = uploads.status(uploadId);
+        assertEquals(List.of(List.of(0L, 3L), List.of(6L, 10L)), ranges(session));
+
+        UploadException incomplete = assertThrows(UploadException.class, () -> uploads.complete(uploadId, false));
+        assertEquals(HttpStatus.CONFLICT, incomplete.getStatus());
+
+        part(uploadId, 3, 6);
+        assertEquals(10, uploads.status(uploadId).received());
+    }
+
+    @Test
+    public void testCompleteHandsFileToIngestion() throws Exception {
+        AtomicReference<byte[]> submitted = new AtomicReference<>();
+        String documentId = sha256(CONTENT);
+        DocumentService.Upload queued = new DocumentService.Upload(documentId, "job-1", false, null);
+        when(documentService.submit(any(Path.class), eq("lease.pdf"), eq(documentId), eq(false), eq("contracts")))
+                .thenAnswer(invocation -> {
+                    submitted.set(Files.readAllBytes(invocation.<Path>getArgument(0)));
+                    return queued;
+                });
+        String uploadId = uploads.init("lease.pdf", CONTENT.length, "Contracts").uploadId;
+        part(uploadId, 5, 10);
+        part(uploadId, 0, 5);
+
+        assertEquals(queued, uploads.complete(uploadId, false));
+        assertArrayEquals(CONTENT, submitted.get());
+
+        UploadException gone = assertThrows(UploadException.class, () -> uploads.status(uploadId));
+        assertEquals(HttpStatus.NOT_FOUND, gone.getStatus());
+    }
+
+    /** A part body that hands over its first byte, then waits for {@code release} before the rest. */
+    private static InputStream stalled(byte[] bytes, CountDownLatch started, CountDownLatch release) {
+        return new InputStream() {
+            private int position;
+
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                if (position == bytes.length) {
+                    return -1;
+                }
+                if (position == 1) {
+                    started.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                }
+                int count = position == 0 ? 1 : Math.min(length, bytes.length - position);
+                System.arraycopy(bytes, position, buffer, offset, count);
+                position += count;
+                return count;
+            }
+        };
+    }
+
+    @Test
+    public void testCompleteWaitsForPartsBeingWritten() throws Exception {
+        String uploadId = uploads.init("lease.pdf", CONTENT.length, null).uploadId;
+        part(uploadId, 0, 10);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            // A resend of the whole file, stalled after its first byte
+            Future<ChunkedUploadService.Session> resend = writer.submit(() -> uploads.writePart(uploadId, 0,
+                    sha256(CONTENT), stalled(CONTENT, started, release)));
+            started.await(5, TimeUnit.SECONDS);
+
+            UploadException busy = assertThrows(UploadException.class, () -> uploads.complete(uploadId, false));
+            assertEquals(HttpStatus.CONFLICT, busy.getStatus());
+            verify(documentService, never()).submit(any(Path.class), any(), any(), eq(false), any());
+
+            release.countDown();
+            assertEquals(10, resend.get(5, TimeUnit.SECONDS).received());
+        } finally {
+            writer.shutdownNow();
+        }
+        uploads.complete(uploadId, false);
+        assertFalse(Files.exists(uploadDir.resolve(uploadId + ".json")));
+    }
+
+    @Test
+    public void testAbortedSessionIsNotSavedAgain() throws Exception {
+        String uploadId = uploads.init("lease.pdf", CONTENT.length, null).uploadId;
+        part(uploadId, 0, 10);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            Future<ChunkedUploadService.Session> resend = writer.submit(() -> uploads.writePart(uploadId, 0,
+                    sha256(CONTENT), stalled(CONTENT, started, release)));
+            started.await(5, TimeUnit.SECONDS);
+
+            uploads.abort(uploadId);
+            release.countDown();
+
+            // The part stops at its next write instead of re-creating the session
+            ExecutionException stopped = assertThrows(ExecutionException.class,
+                    () -> resend.get(5, TimeUnit.SECONDS));
+            UploadException gone = assertInstanceOf(UploadException.class, stopped.getCause());
+            assertEquals(HttpStatus.NOT_FOUND, gone.getStatus());
+        } finally {
+            writer.shutdownNow();
+        }
+        assertFalse(Files.exists(uploadDir.resolve(uploadId + ".json")));
+        uploads.shutdown();
+        uploads = open();
+        assertEquals(HttpStatus.NOT_FOUND, assertThrows(UploadException.class, () -> uploads.status(uploadId))
+                .getStatus());
+    }
+}
@@ -0,0 +1,155 @@
+package com.localai.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.localai.exception.InferenceBusyException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.ChatClient;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ClassificationBatcherTest {
+
+    @TempDir
+    Path cacheDir;
+
+    private final ChatClient chatClient = mock(ChatClient.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Prompts in the order the model saw them
+    private final List<String> prompts = new CopyOnWriteArrayList<>();
+    private volatile String batchAnswer;
+    private InferenceScheduler scheduler;
+    private ClassificationBatcher batcher;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // A batch prompt gets batchAnswer; a single text gets a category named after its first word
+        when(chatClient.call(any(Prompt.class))).thenAnswer(invocation -> {
+            String prompt = ((Prompt) invocation.getArgument(0)).getContents();
+            prompts.add(prompt);
+            String answer = prompt.startsWith("Classify each numbered text") ? batchAnswer
+                    : " \"" + prompt.substring(prompt.indexOf("Text: ") + 6).split(" ")[0] + ".\" ";
+            return new ChatResponse(List.of(new Generation(answer)));
+        });
+        scheduler = new InferenceScheduler(chatClient, objectMapper, 1, "", 16, 30);
+        batcher = batcher(4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        batcher.shutdown();
+    }
+
+    private ClassificationBatcher batcher(int queueCapacity) throws Exception {
+        ResponseCache responseCache = new ResponseCache(scheduler, objectMapper, true, 100, 1440, false,
+                cacheDir.toString(), 100);
+        return new ClassificationBatcher(responseCache, objectMapper, 32, 200, 1, queueCapacity);
+    }
+
+    @SuppressWarnings("unchecked")
+    private long backgroundAdmitted() {
+        return (long) ((Map<String, Object>) ((Map<String, Object>) scheduler.stats().get("lanes"))
+                .get("background")).get("admitted");
+    }
+
+    @Test
+    public void testBatchAnswerIsSplitOntoCallers() {
+        batchAnswer = "{\"1\": \"Food\", \"2\": \"Transport\", \"3\": \"Health\"}";
+
+        List<String> categories = batcher.classifyAll(List.of("KFC Burger", "Bus ticket", " KFC Burger ",
+                "Pharmacy\nreceipt"));
+
+        // Identical texts share a number, and a newline cannot split a text into two items
+        assertEquals(List.of("Food", "Transport", "Food", "Health"), categories);
+        assertEquals(1, prompts.size());
+        assertTrue(prompts.get(0).contains("\n1. KFC Burger\n2. Bus ticket\n3. Pharmacy receipt\n"));
+        assertEquals(1L, batcher.stats().get("batches"));
+        assertEquals(4L, batcher.stats().get("items"));
+        assertEquals(0L, batcher.stats().get("fallbacks"));
+    }
+
+    @Test
+    public void testItemsTheAnswerMissesAreClassifiedOneByOne() {
+        // 2 is not text, 3 is too long to be a category, 4 is left out
+        batchAnswer = "{\"1\": \" *Food* \", \"2\": 7, \"3\": \"" + "x".repeat(41) + "\"}";
+
+        List<String> categories = batcher.classifyAll(List.of("KFC Burger", "Bus ticket", "Gym membership",
+                "Salary"));
+
+        assertEquals(List.of("Food", "Bus", "Gym", "Salary"), categories);
+        assertEquals(4, prompts.size());
+        assertEquals(3L, batcher.stats().get("fallbacks"));
+        assertEquals(0L, batcher.stats().get("malformedBatches"));
+        // The repairs run in the background lane
+        assertEquals(3L, backgroundAdmitted());
+    }
+
+    @Test
+    public void testUnusableAnswerFallsBackForTheWholeBatch() {
+        batchAnswer = "Food, Transport";
+
+        assertEquals(List.of("KFC", "Bus"), batcher.classifyAll(List.of("KFC Burger", "Bus ticket")));
+        assertEquals(1L, batcher.stats().get("malformedBatches"));
+        assertEquals(2L, batcher.stats().get("fallbacks"));
+
+        // Batch and single answers are both cached, so the same texts again cost no inference
+        assertEquals(List.of("KFC", "Bus"), batcher.classifyAll(List.of("KFC Burger", "Bus ticket")));
+        assertEquals(3, prompts.size());
+    }
+
+    @Test
+    public void testSingleTextSkipsTheBatchPrompt() {
+        assertEquals("Pharmacy", batcher.classify("Pharmacy receipt"));
+        assertEquals(1, prompts.size());
+        assertTrue(prompts.get(0).startsWith("Classify the following text"));
+        assertEquals(0L, backgroundAdmitted());
+    }
+
+    @Test
+    public void testFullQueueIsRefused() throws Exception {
+        batcher.shutdown();
+        batcher = batcher(2);
+        CountDownLatch release = new CountDownLatch(1);
+        when(chatClient.call(any(Prompt.class))).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return new ChatResponse(List.of(new Generation("Other")));
+        });
+
+        CompletableFuture<String> first = batcher.submit("KFC Burger");
+        CompletableFuture<String> second = batcher.submit("Bus ticket");
+        InferenceBusyException busy = assertThrows(InferenceBusyException.class, () -> batcher.submit("Salary"));
+        assertTrue(busy.getRetryAfterSeconds() >= 1);
+        // A list is admitted whole or not at all
+        assertThrows(InferenceBusyException.class, () -> batcher.classifyAll(List.of("Salary")));
+        assertEquals(2L, batcher.stats().get("rejected"));
+
+        release.countDown();
+        assertEquals("Other", first.get(5, TimeUnit.SECONDS));
+        assertEquals("Other", second.get(5, TimeUnit.SECONDS));
+        // Settled texts give their slots back
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!Integer.valueOf(0).equals(batcher.stats().get("queued"))) {
+            assertTrue(System.currentTimeMillis() < deadline, "slots were never given back");
+            Thread.sleep(5);
+        }
+        assertEquals(List.of("Other", "Other"), batcher.classifyAll(List.of("Salary", "Rent")));
+    }
+}
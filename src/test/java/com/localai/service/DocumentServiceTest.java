@@ -0,0 +1,285 @@
+package com.localai.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.localai.exception.UploadException;
+import com.localai.vectorstore.MappedVectorStore;
+import com.localai.vectorstore.VectorStoreLoadingException;
+import com.localai.vectorstore.VectorStoreOptions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.http.HttpStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DocumentServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private MappedVectorStore vectorStore;
+    private ProcessingStatusService statusService;
+    private IngestionScheduler scheduler;
+    private PdfIngestionPipeline pipeline;
+    private DocumentRegistry registry;
+    private DocumentService service;
+    private final AtomicInteger ingestions = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        VectorStoreOptions options = new VectorStoreOptions();
+        options.setCompactionIntervalSeconds(0);
+        vectorStore = new MappedVectorStore(tempDir.resolve("store"), mock(EmbeddingClient.class), options);
+        statusService = new ProcessingStatusService(60, 100, 3600, tempDir.resolve("text").toString());
+        scheduler = new IngestionScheduler(1, 10, 0);
+        pipeline = mock(PdfIngestionPipeline.class);
+        registry = new DocumentRegistry(new ObjectMapper(), tempDir.resolve("documents.json").toString());
+        service = new DocumentService(vectorStore, statusService, scheduler, pipeline, registry);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        scheduler.shutdown();
+        statusService.shutdown();
+        vectorStore.close();
+    }
+
+    /** Every ingestion indexes two chunks whose ids name the ingestion they came from. */
+    private void ingestTwoChunks() throws Exception {
+        when(pipeline.ingest(any(File.class), anyString(), anyMap(), any(Writer.class), any()))
+                .thenAnswer(invocation -> {
+                    vectorStore.add(chunks(invocation.getArgument(2), ingestions.incrementAndGet(), 2));
+                    return new PdfIngestionPipeline.Result(1, 2, 20);
+                });
+    }
+
+    private List<Document> chunks(Map<String, Object> metadata, int ingestion, int count) {
+        List<Document> chunks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Document chunk = new Document("ingestion-" + ingestion + "-chunk-" + i, "Rent is due monthly", metadata);
+            chunk.setEmbedding(List.of(1.0, (double) i, 0.5));
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private Path upload(String content) throws Exception {
+        Path file = Files.createTempFile(tempDir, "upload-", ".pdf");
+        Files.writeString(file, content);
+        return file;
+    }
+
+    private String hash(String content) throws Exception {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        try (OutputStream sink = OutputStream.nullOutputStream()) {
+            return DocumentService.copyAndHash(new ByteArrayInputStream(bytes), sink);
+        }
+    }
+
+    private ProcessingStatusService.JobStatus awaitJob(String jobId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (System.currentTimeMillis() < deadline) {
+            ProcessingStatusService.JobStatus status = statusService.getStatus(jobId);
+            if ("COMPLETED".equals(status.status) || "ERROR".equals(status.status)) {
+                return status;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Job " + jobId + " did not finish");
+    }
+
+    @Test
+    public void testIdenticalContentIsIngestedOnce() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(pipeline.ingest(any(File.class), anyString(), anyMap(), any(Writer.class), any()))
+                .thenAnswer(invocation -> {
+                    release.await(5, TimeUnit.SECONDS);
+                    vectorStore.add(chunks(invocation.getArgument(2), ingestions.incrementAndGet(), 2));
+                    return new PdfIngestionPipeline.Result(1, 2, 20);
+                });
+        String documentId = hash("lease agreement");
+
+        DocumentService.Upload first = service.submit(upload("lease agreement"), "lease.pdf", documentId, false,
+                "default");
+        assertFalse(first.duplicate());
+        assertNotNull(first.jobId());
+
+        // Still being ingested: the running job is reported, nothing new is queued
+        Path whileRunning = upload("lease agreement");
+        DocumentService.Upload running = service.submit(whileRunning, "copy.pdf", documentId, false, "default");
+        assertTrue(running.duplicate());
+        assertEquals(first.jobId(), running.jobId());
+        assertNull(running.existing());
+        assertFalse(Files.exists(whileRunning));
+
+        release.countDown();
+        assertEquals("COMPLETED", awaitJob(first.jobId()).status);
+
+        // Already ingested: the registry entry is reported
+        DocumentService.Upload again = service.submit(upload("lease agreement"), "copy.pdf", documentId, false,
+                "default");
+        assertTrue(again.duplicate());
+        assertNull(again.jobId());
+        assertEquals("lease.pdf", again.existing().filename());
+
+        verify(pipeline, times(1)).ingest(any(File.class), anyString(), anyMap(), any(Writer.class), any());
+        assertEquals(2, vectorStore.chunkIds(documentId).size());
+    }
+
+    @Test
+    public void testForcedUploadReplacesPreviousChunks() throws Exception {
+        ingestTwoChunks();
+        String documentId = hash("lease agreement");
+        String firstJob = service.submit(upload("lease agreement"), "lease.pdf", documentId, false, "default")
+                .jobId();
+        assertEquals("COMPLETED", awaitJob(firstJob).status);
+
+        DocumentService.Upload forced = service.submit(upload("lease agreement"), "lease-v2.pdf", documentId, true,
+                "default");
+        assertFalse(forced.duplicate());
+        assertEquals("COMPLETED", awaitJob(forced.jobId()).status);
+
+        assertEquals(List.of("ingestion-2-chunk-0", "ingestion-2-chunk-1"),
+                vectorStore.chunkIds(documentId).stream().sorted().toList());
+        assertEquals("lease-v2.pdf", registry.find(documentId).filename());
+    }
+
+    @Test
+    public void testFailedForcedUploadKeepsPreviousChunks() throws Exception {
+        // The first ingestion succeeds; the forced retry indexes one chunk, then fails
+        when(pipeline.ingest(any(File.class), anyString(), anyMap(), any(Writer.class), any()))
+                .thenAnswer(invocation -> {
+                    int ingestion = ingestions.incrementAndGet();
+                    vectorStore.add(chunks(invocation.getArgument(2), ingestion, ingestion == 1 ? 2 : 1));
+                    if (ingestion > 1) {
+                        throw new IllegalStateException("embedding model unavailable");
+                    }
+                    return new PdfIngestionPipeline.Result(1, 2, 20);
+                });
+        String documentId = hash("lease agreement");
+        String firstJob = service.submit(upload("lease agreement"), "lease.pdf", documentId, false, "default")
+                .jobId();
+        assertEquals("COMPLETED", awaitJob(firstJob).status);
+
+        String forcedJob = service.submit(upload("lease agreement"), "lease.pdf", documentId, true, "default")
+                .jobId();
+        assertEquals("ERROR", awaitJob(forcedJob).status);
+
+        assertEquals(List.of("ingestion-1-chunk-0", "ingestion-1-chunk-1"),
+                vectorStore.chunkIds(documentId).stream().sorted().toList());
+        // The failed job is no longer in flight; the first ingestion is what an upload now matches
+        DocumentService.Upload after = service.submit(upload("lease agreement"), "lease.pdf", documentId, false,
+                "default");
+        assertTrue(after.duplicate());
+        assertNull(after.jobId());
+        assertEquals("lease.pdf", after.existing().filename());
+    }
+
+    @Test
+    public void testDocumentTextOutlivesTheJob() throws Exception {
+        ingestTwoChunks();
+        String documentId = hash("lease agreement");
+        String job = service.submit(upload("lease agreement"), "lease.pdf", documentId, false, "default").jobId();
+        assertEquals("COMPLETED", awaitJob(job).status);
+        statusService.removeJob(job);
+
+        // A duplicate upload of the same content can still get at its text
+        assertEquals("Rent is due monthly\nRent is due monthly", service.documentText(documentId));
+        assertNull(service.documentText(hash("other")));
+    }
+
+    @Test
+    public void testDeleteRemovesChunksThenRegistryEntry() throws Exception {
+        ingestTwoChunks();
+        String documentId = hash("lease agreement");
+        String job = service.submit(upload("lease agreement"), "lease.pdf", documentId, false, "default").jobId();
+        assertEquals("COMPLETED", awaitJob(job).status);
+
+        assertTrue(service.deleteDocument(documentId));
+        assertTrue(vectorStore.chunkIds(documentId).isEmpty());
+        assertNull(registry.find(documentId));
+        assertFalse(service.deleteDocument(documentId));
+    }
+
+    @Test
+    public void testDocumentBeingDeletedBlocksOnlyItsOwnUploads() throws Exception {
+        MappedVectorStore slowStore = mock(MappedVectorStore.class);
+        DocumentService deleting = new DocumentService(slowStore, statusService, scheduler, pipeline, registry);
+        registry.register(new DocumentRegistry.Entry("lease", "lease.pdf", 1, 2, 0, "default"));
+        CountDownLatch inStore = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(slowStore.deleteDocument("lease")).thenAnswer(invocation -> {
+            inStore.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return 2;
+        });
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> delete = caller.submit(() -> deleting.deleteDocument("lease"));
+            inStore.await(5, TimeUnit.SECONDS);
+
+            // The chunk delete runs outside the in-flight lock: other documents are claimed meanwhile
+            assertTrue(deleting.claim("invoice", "job-1", false));
+            deleting.release("invoice", "job-1");
+            UploadException conflict = assertThrows(UploadException.class,
+                    () -> deleting.submit(upload("lease agreement"), "lease.pdf", "lease", true, "default"));
+            assertEquals(HttpStatus.CONFLICT, conflict.getStatus());
+            assertThrows(IllegalStateException.class, () -> deleting.claim("lease", "job-2", true));
+            assertThrows(IllegalStateException.class, () -> deleting.deleteDocument("lease"));
+            // Still listed until its chunks are gone
+            assertNotNull(registry.find("lease"));
+
+            release.countDown();
+            assertTrue(delete.get(5, TimeUnit.SECONDS));
+            assertNull(registry.find("lease"));
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailedChunkDeleteKeepsTheDocumentListed() throws Exception {
+        MappedVectorStore loadingStore = mock(MappedVectorStore.class);
+        DocumentService deleting = new DocumentService(loadingStore, statusService, scheduler, pipeline, registry);
+        registry.register(new DocumentRegistry.Entry("lease", "lease.pdf", 1, 2, 0, "default"));
+        when(loadingStore.deleteDocument("lease"))
+                .thenThrow(new VectorStoreLoadingException("The vector store is still loading its indexes", false));
+
+        assertThrows(VectorStoreLoadingException.class, () -> deleting.deleteDocument("lease"));
+        assertEquals("lease.pdf", registry.find("lease").filename());
+        // No longer marked as being deleted, so it can be claimed again
+        assertTrue(deleting.claim("lease", "job-1", true));
+    }
+}
@@ -0,0 +1,222 @@
+package com.localai.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.localai.exception.InferenceBusyException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.ChatClient;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.ollama.api.OllamaOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class InferenceSchedulerTest {
+
+    private final ChatClient chatClient = mock(ChatClient.class);
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    @AfterEach
+    public void tearDown() {
+        callers.shutdownNow();
+    }
+
+    private InferenceScheduler scheduler(int capacity) {
+        return new InferenceScheduler(chatClient, new ObjectMapper(), 1, "small=2", capacity, 30);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> modelStats(InferenceScheduler scheduler, String model) {
+        return (Map<String, Object>) ((Map<String, Object>) scheduler.stats().get("models")).get(model);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> laneStats(InferenceScheduler scheduler, InferenceScheduler.Lane lane) {
+        return (Map<String, Object>) ((Map<String, Object>) scheduler.stats().get("lanes"))
+                .get(lane.name().toLowerCase());
+    }
+
+    private static void awaitQueued(InferenceScheduler scheduler, String model, int queued) throws Exception {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!Integer.valueOf(queued).equals(modelStats(scheduler, model).get("queued"))) {
+            assertTrue(System.currentTimeMillis() < deadline, "queue never reached " + queued);
+            Thread.sleep(5);
+        }
+    }
+
+    /** Queues a request that records its lane once admitted and releases its slot right away. */
+    private Future<?> request(InferenceScheduler scheduler, InferenceScheduler.Lane lane, List<String> admitted) {
+        return callers.submit(() -> {
+            try (InferenceScheduler.Permit permit = scheduler.acquire("llama3", lane)) {
+                admitted.add(lane.name());
+            }
+            return null;
+        });
+    }
+
+    private static Throwable failure(Future<?> future) throws Exception {
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        return failure.getCause();
+    }
+
+    @Test
+    public void testHigherLanesAreAdmittedFirst() throws Exception {
+        InferenceScheduler scheduler = scheduler(10);
+        List<String> admitted = new CopyOnWriteArrayList<>();
+        InferenceScheduler.Permit running = scheduler.acquire("llama3", InferenceScheduler.Lane.STANDARD);
+
+        List<InferenceScheduler.Lane> arrivals = List.of(InferenceScheduler.Lane.BACKGROUND,
+                InferenceScheduler.Lane.STANDARD, InferenceScheduler.Lane.BACKGROUND,
+                InferenceScheduler.Lane.INTERACTIVE);
+        List<Future<?>> requests = new ArrayList<>();
+        for (int i = 0; i < arrivals.size(); i++) {
+            requests.add(request(scheduler, arrivals.get(i), admitted));
+            awaitQueued(scheduler, "llama3", i + 1);
+        }
+
+        running.close();
+        running.close(); // a second close must not free another slot
+        for (Future<?> request : requests) {
+            request.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(List.of("INTERACTIVE", "STANDARD", "BACKGROUND", "BACKGROUND"), admitted);
+        assertEquals(0, modelStats(scheduler, "llama3").get("running"));
+        assertEquals(2L, laneStats(scheduler, InferenceScheduler.Lane.BACKGROUND).get("admitted"));
+    }
+
+    @Test
+    public void testModelsHaveTheirOwnLimits() {
+        InferenceScheduler scheduler = scheduler(10);
+        InferenceScheduler.Permit llama = scheduler.acquire("llama3", InferenceScheduler.Lane.STANDARD);
+        // "small" runs two at a time and does not wait for llama3
+        InferenceScheduler.Permit first = scheduler.acquire("small", InferenceScheduler.Lane.STANDARD);
+        InferenceScheduler.Permit second = scheduler.acquire("small", InferenceScheduler.Lane.STANDARD);
+
+        assertEquals(2, modelStats(scheduler, "small").get("running"));
+        assertEquals(1, modelStats(scheduler, "llama3").get("limit"));
+        llama.close();
+        first.close();
+        second.close();
+        assertEquals(0, modelStats(scheduler, "small").get("running"));
+    }
+
+    @Test
+    public void testFullQueueDisplacesTheNewestLowerLaneWaiter() throws Exception {
+        InferenceScheduler scheduler = scheduler(2);
+        List<String> admitted = new CopyOnWriteArrayList<>();
+        InferenceScheduler.Permit running = scheduler.acquire("llama3", InferenceScheduler.Lane.STANDARD);
+
+        Future<?> olderBackground = request(scheduler, InferenceScheduler.Lane.BACKGROUND, admitted);
+        awaitQueued(scheduler, "llama3", 1);
+        Future<?> newerBackground = request(scheduler, InferenceScheduler.Lane.BACKGROUND, admitted);
+        awaitQueued(scheduler, "llama3", 2);
+
+        // Full: interactive work takes the place of the newest background waiter
+        Future<?> interactive = request(scheduler, InferenceScheduler.Lane.INTERACTIVE, admitted);
+        assertInstanceOf(InferenceBusyException.class, failure(newerBackground));
+        awaitQueued(scheduler, "llama3", 2);
+
+        // Nothing below background to displace, so a new background request is turned away at once
+        InferenceBusyException rejected = assertThrows(InferenceBusyException.class,
+                () -> scheduler.acquire("llama3", InferenceScheduler.Lane.BACKGROUND));
+        assertTrue(rejected.getRetryAfterSeconds() >= 1);
+
+        running.close();
+        interactive.get(5, TimeUnit.SECONDS);
+        olderBackground.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("INTERACTIVE", "BACKGROUND"), admitted);
+        assertEquals(2L, laneStats(scheduler, InferenceScheduler.Lane.BACKGROUND).get("rejected"));
+    }
+
+    private static Prompt prompt(String text, float temperature) {
+        return new Prompt(text, OllamaOptions.create().withModel("llama3").withTemperature(temperature));
+    }
+
+    private static void awaitCoalesced(InferenceScheduler scheduler, long coalesced) throws Exception {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!Long.valueOf(coalesced).equals(scheduler.stats().get("coalesced"))) {
+            assertTrue(System.currentTimeMillis() < deadline, "never coalesced " + coalesced + " calls");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void testIdenticalConcurrentCallsShareOneGeneration() throws Exception {
+        InferenceScheduler scheduler = scheduler(10);
+        AtomicInteger generations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        when(chatClient.call(any(Prompt.class))).thenAnswer(invocation -> {
+            generations.incrementAndGet();
+            release.await(5, TimeUnit.SECONDS);
+            return new ChatResponse(List.of(new Generation("Food")));
+        });
+
+        Future<ChatResponse> leader = callers.submit(() -> scheduler.call(prompt("Classify: KFC Burger", 0f),
+                InferenceScheduler.Lane.STANDARD));
+        while (generations.get() == 0) {
+            Thread.sleep(5);
+        }
+        // An equal prompt, built separately, waits for the leader instead of generating again
+        Future<ChatResponse> follower = callers.submit(() -> scheduler.call(prompt("Classify: KFC Burger", 0f),
+                InferenceScheduler.Lane.INTERACTIVE));
+        awaitCoalesced(scheduler, 1);
+        release.countDown();
+
+        assertSame(leader.get(5, TimeUnit.SECONDS), follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, generations.get());
+        assertNotEquals(scheduler.key(prompt("Classify: KFC Burger", 0f)),
+                scheduler.key(prompt("Classify: KFC Burger", 0.7f)));
+
+        // Once the leader finished, the same prompt generates again
+        scheduler.call(prompt("Classify: KFC Burger", 0f), InferenceScheduler.Lane.STANDARD);
+        assertEquals(2, generations.get());
+    }
+
+    @Test
+    public void testFollowerGetsTheLeadersFailure() throws Exception {
+        InferenceScheduler scheduler = scheduler(10);
+        AtomicInteger generations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        when(chatClient.call(any(Prompt.class))).thenAnswer(invocation -> {
+            generations.incrementAndGet();
+            release.await(5, TimeUnit.SECONDS);
+            throw new InferenceBusyException("Ollama is overloaded", 7);
+        });
+
+        Future<ChatResponse> leader = callers.submit(() -> scheduler.call(prompt("Summarize", 0f),
+                InferenceScheduler.Lane.STANDARD));
+        while (generations.get() == 0) {
+            Thread.sleep(5);
+        }
+        Future<ChatResponse> follower = callers.submit(() -> scheduler.call(prompt("Summarize", 0f),
+                InferenceScheduler.Lane.STANDARD));
+        awaitCoalesced(scheduler, 1);
+        release.countDown();
+
+        assertInstanceOf(InferenceBusyException.class, failure(leader));
+        InferenceBusyException busy = assertInstanceOf(InferenceBusyException.class, failure(follower));
+        assertEquals(7, busy.getRetryAfterSeconds());
+        assertEquals(1, generations.get());
+    }
+}
@@ -0,0 +1,130 @@
+package com.localai.service;
+
+import com.localai.exception.GlobalExceptionHandler;
+import com.localai.exception.IngestionQueueFullException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IngestionSchedulerTest {
+
+    /**
+     * Occupies the only worker until {@code release} opens, so later jobs stay queued.
+     */
+    private void block(IngestionScheduler scheduler, CountDownLatch release) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        scheduler.submit("blocker", 0, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSmallestJobRunsFirstAndEqualSizesKeepArrivalOrder() throws Exception {
+        IngestionScheduler scheduler = new IngestionScheduler(1, 10, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(4);
+        try {
+            block(scheduler, release);
+            for (String jobId : List.of("large", "small-1", "medium", "small-2")) {
+                long size = jobId.startsWith("small") ? 100 : jobId.equals("medium") ? 200 : 300;
+                scheduler.submit(jobId, size, () -> {
+                    order.add(jobId);
+                    done.countDown();
+                });
+            }
+
+            assertEquals(1, scheduler.queuePosition("small-1"));
+            assertEquals(2, scheduler.queuePosition("small-2"));
+            assertEquals(3, scheduler.queuePosition("medium"));
+            assertEquals(4, scheduler.queuePosition("large"));
+            assertEquals(0, scheduler.queuePosition("blocker"));
+
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of("small-1", "small-2", "medium", "large"), order);
+        } finally {
+            release.countDown();
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testLongWaitingJobRunsBeforeSmallerNewcomers() throws Exception {
+        // 60 MB a minute: each millisecond waited is worth about 1 KB
+        IngestionScheduler scheduler = new IngestionScheduler(1, 10, 60);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        try {
+            block(scheduler, release);
+            scheduler.submit("large", 512 * 1024, () -> {
+                order.add("large");
+                done.countDown();
+            });
+            // Half a second of waiting makes up for the size difference
+            Thread.sleep(600);
+            for (String jobId : List.of("small", "new-large")) {
+                scheduler.submit(jobId, jobId.equals("small") ? 1 : 512 * 1024, () -> {
+                    order.add(jobId);
+                    done.countDown();
+                });
+            }
+
+            assertEquals(1, scheduler.queuePosition("large"));
+            assertEquals(2, scheduler.queuePosition("small"));
+            assertEquals(3, scheduler.queuePosition("new-large"));
+
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of("large", "small", "new-large"), order);
+        } finally {
+            release.countDown();
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testFullQueueIsRejectedWithRetryAfter() throws Exception {
+        IngestionScheduler scheduler = new IngestionScheduler(1, 2, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            block(scheduler, release);
+            scheduler.submit("job-1", 10, () -> { });
+            scheduler.submit("job-2", 10, () -> { });
+
+            IngestionQueueFullException full = assertThrows(IngestionQueueFullException.class,
+                    () -> scheduler.submit("job-3", 1, () -> { }));
+            assertThrows(IngestionQueueFullException.class, scheduler::checkCapacity);
+            assertTrue(full.getRetryAfterSeconds() >= 1);
+            assertEquals(0, scheduler.queuePosition("job-3"));
+            assertEquals(2, scheduler.stats().get("queued"));
+
+            ResponseEntity<Map<String, Object>> response = new GlobalExceptionHandler().handleQueueFull(full);
+            assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+            assertEquals(String.valueOf(full.getRetryAfterSeconds()),
+                    response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+            assertEquals(full.getRetryAfterSeconds(), response.getBody().get("retryAfterSeconds"));
+        } finally {
+            release.countDown();
+            scheduler.shutdown();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.localai.service;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParallelPdfTextExtractorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private File createPdf(int pages) throws Exception {
+        File pdf = tempDir.resolve("pages-" + pages + ".pdf").toFile();
+        PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+        try (PDDocument document = new PDDocument()) {
+            for (int p = 0; p < pages; p++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(font, 12);
+                    content.newLineAtOffset(50, 750);
+                    content.showText("Page " + (p + 1) + " marker");
+                    content.endText();
+                }
+            }
+            document.save(pdf);
+        }
+        return pdf;
+    }
+
+    @Test
+    public void testPagesReachSinkInPageOrder() throws Exception {
+        File pdf = createPdf(23);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            int pageCount = ParallelPdfTextExtractor.pageCount(pdf);
+            assertEquals(23, pageCount);
+
+            List<Integer> pageNumbers = new ArrayList<>();
+            List<String> texts = new ArrayList<>();
+            // Ranges of two pages over four workers, with a sink slow enough for workers to run ahead
+            new ParallelPdfTextExtractor(executor, 4, 2).extract(pdf, pageCount, (page, text) -> {
+                pageNumbers.add(page);
+                texts.add(text);
+                Thread.sleep(page % 5);
+            });
+
+            assertEquals(23, pageNumbers.size());
+            for (int i = 0; i < pageNumbers.size(); i++) {
+                assertEquals(i + 1, pageNumbers.get(i));
+                assertTrue(texts.get(i).contains("Page " + (i + 1) + " marker"), texts.get(i));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.localai.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ProcessingStatusServiceTest {
+
+    @TempDir
+    Path textDir;
+
+    private String job(ProcessingStatusService service, String status, long ageMillis) {
+        String jobId = service.createJob();
+        service.updateStatus(jobId, status, status.toLowerCase());
+        service.getStatus(jobId).timestamp -= ageMillis;
+        return jobId;
+    }
+
+    @Test
+    public void testFinishedJobsExpireAfterTtl() throws Exception {
+        // The sweeper interval is long enough that only the explicit evict() calls run
+        ProcessingStatusService service = new ProcessingStatusService(1, 100, 3600, textDir.toString());
+        List<String> removed = new ArrayList<>();
+        service.addListener((jobId, status) -> {
+            if (status == null) {
+                removed.add(jobId);
+            }
+        });
+        try {
+            String completed = job(service, "COMPLETED", 120_000);
+            String failed = job(service, "ERROR", 120_000);
+            String processing = job(service, "PROCESSING", 120_000);
+            String recent = job(service, "COMPLETED", 0);
+            try (Writer text = service.openTextWriter(completed)) {
+                text.write("Rent is due monthly");
+            }
+            Path textFile = service.getTextFile(completed);
+            assertNotNull(textFile);
+
+            assertEquals(2, service.evict());
+
+            assertNull(service.getStatus(completed));
+            assertNull(service.getStatus(failed));
+            assertFalse(Files.exists(textFile));
+            assertEquals(Set.of(completed, failed), Set.copyOf(removed));
+            // Running jobs never expire, however old their last update
+            assertEquals("PROCESSING", service.getStatus(processing).status);
+            assertEquals("COMPLETED", service.getStatus(recent).status);
+            assertEquals(0, service.evict());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void testOldestFinishedJobsGoFirstOverTheCap() throws Exception {
+        ProcessingStatusService service = new ProcessingStatusService(60, 2, 3600, textDir.toString());
+        try {
+            String oldest = job(service, "COMPLETED", 3_000);
+            String older = job(service, "ERROR", 2_000);
+            String newest = job(service, "COMPLETED", 1_000);
+            String queued = job(service, "QUEUED", 10_000);
+
+            assertEquals(2, service.evict());
+
+            assertNull(service.getStatus(oldest));
+            assertNull(service.getStatus(older));
+            assertNotNull(service.getStatus(newest));
+            assertNotNull(service.getStatus(queued));
+            assertEquals(2, service.getJobs().size());
+        } finally {
+            service.shutdown();
+        }
+    }
+}
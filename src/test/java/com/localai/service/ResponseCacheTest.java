@@ -0,0 +1,181 @@
+package com.localai.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.ChatClient;
+import org.springframework.ai.chat.ChatResponse;
+import org.springframework.ai.chat.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.ollama.api.OllamaOptions;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ResponseCacheTest {
+
+    @TempDir
+    Path cacheDir;
+
+    private final ChatClient chatClient = mock(ChatClient.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicInteger generations = new AtomicInteger();
+    private InferenceScheduler scheduler;
+
+    @BeforeEach
+    public void setUp() {
+        // Every generation answers with its own number, so a cached answer is told apart from a new one
+        when(chatClient.call(any(Prompt.class))).thenAnswer(invocation ->
+                new ChatResponse(List.of(new Generation("answer " + generations.incrementAndGet()))));
+        scheduler = new InferenceScheduler(chatClient, objectMapper, 1, "", 16, 30);
+    }
+
+    private ResponseCache cache(int maxEntries, boolean disk) throws Exception {
+        return new ResponseCache(scheduler, objectMapper, true, maxEntries, 1440, disk, cacheDir.toString(), 100);
+    }
+
+    private static Prompt prompt(String model, String text, float temperature) {
+        return new Prompt(text, OllamaOptions.create().withModel(model).withTemperature(temperature));
+    }
+
+    private static String call(ResponseCache cache, String model, String text) {
+        return cache.call(prompt(model, text, 0f), InferenceScheduler.Lane.STANDARD);
+    }
+
+    @Test
+    public void testOnlyDeterministicCallsAreCached() throws Exception {
+        ResponseCache cache = cache(10, false);
+
+        assertEquals("answer 1", call(cache, "llama3", "Classify: KFC Burger"));
+        assertEquals("answer 1", call(cache, "llama3", "Classify: KFC Burger"));
+        assertEquals("answer 2", cache.call(prompt("llama3", "Classify: KFC Burger", 0.7f),
+                InferenceScheduler.Lane.STANDARD));
+        assertEquals("answer 3", cache.call(prompt("llama3", "Classify: KFC Burger", 0.7f),
+                InferenceScheduler.Lane.STANDARD));
+
+        assertEquals(1L, cache.stats().get("hits"));
+        assertEquals(1L, cache.stats().get("misses"));
+        assertEquals(2L, cache.stats().get("bypassed"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedAnswerIsEvicted() throws Exception {
+        ResponseCache cache = cache(2, false);
+        call(cache, "llama3", "a");
+        call(cache, "llama3", "b");
+        call(cache, "llama3", "a");
+        call(cache, "llama3", "c");
+
+        assertEquals("answer 1", call(cache, "llama3", "a"));
+        assertEquals("answer 3", call(cache, "llama3", "c"));
+        assertEquals("answer 4", call(cache, "llama3", "b"));
+        assertEquals(2, cache.stats().get("entries"));
+    }
+
+    @Test
+    public void testInvalidatedModelIsGeneratedAgain() throws Exception {
+        ResponseCache cache = cache(10, true);
+        call(cache, "llama3", "Summarize");
+        call(cache, "mistral", "Summarize");
+
+        cache.invalidateModel("llama3");
+
+        // Neither the heap nor the file, whose delete may still be queued, serves the old answer
+        assertEquals("answer 3", call(cache, "llama3", "Summarize"));
+        assertEquals("answer 2", call(cache, "mistral", "Summarize"));
+
+        cache.clear();
+        assertEquals("answer 4", call(cache, "mistral", "Summarize"));
+        cache.shutdown();
+    }
+
+    @Test
+    public void testAnswerStartedBeforeInvalidationIsNotCached() throws Exception {
+        ResponseCache cache = cache(10, false);
+        CountDownLatch generating = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(chatClient.call(any(Prompt.class))).thenAnswer(invocation -> {
+            generating.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return new ChatResponse(List.of(new Generation("answer " + generations.incrementAndGet())));
+        });
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> stale = caller.submit(() -> call(cache, "llama3", "Summarize"));
+            generating.await(5, TimeUnit.SECONDS);
+            // The model is pulled again while the old weights are still answering
+            cache.invalidateModel("llama3");
+            release.countDown();
+
+            assertEquals("answer 1", stale.get(5, TimeUnit.SECONDS));
+            assertEquals("answer 2", call(cache, "llama3", "Summarize"));
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testInvalidatingOneModelKeepsAnotherModelsAnswer() throws Exception {
+        ResponseCache cache = cache(10, false);
+        CountDownLatch generating = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(chatClient.call(any(Prompt.class))).thenAnswer(invocation -> {
+            generating.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return new ChatResponse(List.of(new Generation("answer " + generations.incrementAndGet())));
+        });
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> answer = caller.submit(() -> call(cache, "mistral", "Summarize"));
+            generating.await(5, TimeUnit.SECONDS);
+            cache.invalidateModel("llama3");
+            release.countDown();
+
+            assertEquals("answer 1", answer.get(5, TimeUnit.SECONDS));
+            assertEquals("answer 1", call(cache, "mistral", "Summarize"));
+            assertEquals(1L, cache.stats().get("hits"));
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDiskEntriesSurviveRestartUntilTheyExpire() throws Exception {
+        ResponseCache first = cache(10, true);
+        call(first, "llama3", "Summarize");
+        first.shutdown(); // waits for the queued write
+
+        ResponseCache second = cache(10, true);
+        assertEquals("answer 1", call(second, "llama3", "Summarize"));
+        assertEquals(1L, second.stats().get("diskHits"));
+        second.shutdown();
+
+        // Backdate the stored answer past the one-day TTL
+        Path file;
+        try (Stream<Path> files = Files.walk(cacheDir)) {
+            file = files.filter(path -> path.toString().endsWith(".json")).findFirst().orElseThrow();
+        }
+        ResponseCache.Entry entry = objectMapper.readValue(file.toFile(), ResponseCache.Entry.class);
+        objectMapper.writeValue(file.toFile(), new ResponseCache.Entry(entry.model(), entry.response(),
+                entry.inferenceMillis(), entry.createdAt() - TimeUnit.DAYS.toMillis(2)));
+
+        ResponseCache third = cache(10, true);
+        assertEquals("answer 2", call(third, "llama3", "Summarize"));
+        assertEquals(1L, third.stats().get("expired"));
+        third.shutdown();
+    }
+}
@@ -0,0 +1,65 @@
+package com.localai.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RetrievalServiceTest {
+
+    // fuse, isLookup and parseMode need neither the store nor the embedding service
+    private final RetrievalService retrieval = new RetrievalService(null, null, "hybrid", 20, 60);
+
+    private Document chunk(String id, String scoreKey, double score) {
+        return new Document(id, "chunk " + id, new HashMap<>(Map.of(scoreKey, score)));
+    }
+
+    @Test
+    public void testFuseRanksChunksFoundByBothSearchesFirst() {
+        List<Document> vector = List.of(chunk("a", "distance", 0.1), chunk("b", "distance", 0.2),
+                chunk("c", "distance", 0.3));
+        List<Document> keyword = List.of(chunk("c", "bm25_score", 4.0), chunk("d", "bm25_score", 2.0));
+
+        List<Document> fused = retrieval.fuse(List.of(vector, keyword), 3);
+
+        // c: 1/63 + 1/61; a: 1/61; b and d tie at 1/62 and keep first-seen order
+        assertEquals(List.of("c", "a", "b"), fused.stream().map(Document::getId).toList());
+        assertEquals(1.0 / 63 + 1.0 / 61, (double) fused.get(0).getMetadata().get("rrf_score"), 1e-12);
+        assertEquals(1.0 / 61, (double) fused.get(1).getMetadata().get("rrf_score"), 1e-12);
+        // The chunk found twice carries the scores of both searches
+        assertEquals(0.3, fused.get(0).getMetadata().get("distance"));
+        assertEquals(4.0, fused.get(0).getMetadata().get("bm25_score"));
+    }
+
+    @Test
+    public void testFuseOfEmptyRankings() {
+        assertTrue(retrieval.fuse(List.of(List.of(), List.of()), 5).isEmpty());
+        assertEquals(List.of("a"), retrieval.fuse(List.of(List.of(), List.of(chunk("a", "bm25_score", 1.0))), 5)
+                .stream().map(Document::getId).toList());
+    }
+
+    @Test
+    public void testLookupQueries() {
+        assertTrue(RetrievalService.isLookup("\"force majeure\""));
+        assertTrue(RetrievalService.isLookup("14.2"));
+        assertTrue(RetrievalService.isLookup(" INV-2024-001 DE89 "));
+        assertFalse(RetrievalService.isLookup("clause 14.2"));
+        assertFalse(RetrievalService.isLookup("when is the rent due?"));
+        assertFalse(RetrievalService.isLookup("\"\""));
+    }
+
+    @Test
+    public void testParseMode() {
+        assertEquals(RetrievalService.Mode.KEYWORD, RetrievalService.parseMode(" Keyword "));
+        assertNull(RetrievalService.parseMode(""));
+        assertThrows(IllegalArgumentException.class, () -> RetrievalService.parseMode("semantic"));
+    }
+}
@@ -0,0 +1,60 @@
+package com.localai.vectorstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class Bm25IndexTest {
+
+    private Bm25Index index(String... texts) {
+        Bm25Index index = new Bm25Index();
+        for (int i = 0; i < texts.length; i++) {
+            index.add(i, texts[i]);
+        }
+        return index;
+    }
+
+    private List<Integer> ordinals(List<ScoredOrdinal> hits) {
+        return hits.stream().map(ScoredOrdinal::ordinal).toList();
+    }
+
+    @Test
+    public void testTokenizeKeepsIdentifiersWholeAndInParts() {
+        assertEquals(List.of("clause", "14.2", "14", "2", "lease"), Bm25Index.tokenize("Clause 14.2 of the Lease"));
+        assertEquals(List.of("iban", "de89-3704/0044", "de89", "3704", "0044"),
+                Bm25Index.tokenize("IBAN DE89-3704/0044"));
+        assertEquals(List.of(), Bm25Index.tokenize("It is in the, and of it."));
+    }
+
+    @Test
+    public void testExactIdentifierOutranksSharedWords() {
+        Bm25Index index = index(
+                "Rent is due monthly",
+                "Clause 14.2: termination notice",
+                "Clause 12.1 rent increase, rent, rent",
+                "Security deposit");
+
+        List<ScoredOrdinal> hits = index.search("clause 14.2", 10, ordinal -> true);
+        // Chunks without a query term are not returned at all
+        assertEquals(List.of(1, 2), ordinals(hits));
+        assertTrue(hits.get(0).score() > hits.get(1).score());
+
+        // Higher term frequency wins over the shorter chunk
+        assertEquals(List.of(2, 0), ordinals(index.search("rent", 10, ordinal -> true)));
+        assertEquals(List.of(2), ordinals(index.search("rent", 1, ordinal -> true)));
+        assertTrue(index.search("the of", 10, ordinal -> true).isEmpty());
+    }
+
+    @Test
+    public void testDeletedOrdinalsAreSkipped() {
+        Bm25Index index = index("Rent is due monthly", "Rent increase", "Security deposit");
+
+        assertEquals(List.of(0), ordinals(index.search("rent", 10, ordinal -> ordinal != 1)));
+        assertThrows(IllegalStateException.class, () -> index.add(5, "out of order"));
+        assertEquals(3, index.size());
+    }
+}
@@ -0,0 +1,45 @@
+package com.localai.vectorstore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class EmbeddingCacheTest {
+
+    @TempDir
+    Path cacheDir;
+
+    @Test
+    public void testEntriesSurviveReopen() throws Exception {
+        Path file = cacheDir.resolve("embedding-cache.bin");
+        try (EmbeddingCache cache = new EmbeddingCache(file, 100)) {
+            cache.put("nomic-embed-text", "Rent is due monthly", List.of(0.5, -0.25, 1.0));
+        }
+
+        try (EmbeddingCache cache = new EmbeddingCache(file, 100)) {
+            assertEquals(List.of(0.5, -0.25, 1.0), cache.get("nomic-embed-text", "Rent is due monthly"));
+            assertNull(cache.get("other-model", "Rent is due monthly"));
+            assertEquals(1L, cache.stats().get("hits"));
+            assertEquals(1L, cache.stats().get("misses"));
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() throws Exception {
+        try (EmbeddingCache cache = new EmbeddingCache(cacheDir.resolve("embedding-cache.bin"), 2)) {
+            cache.put("model", "a", List.of(1.0));
+            cache.put("model", "b", List.of(2.0));
+            cache.get("model", "a");
+            cache.put("model", "c", List.of(3.0));
+
+            assertNull(cache.get("model", "b"));
+            assertEquals(List.of(1.0), cache.get("model", "a"));
+            assertEquals(List.of(3.0), cache.get("model", "c"));
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.localai.vectorstore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingClient;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MappedVectorStoreTest {
+
+    @TempDir
+    Path storeDir;
+
+    private Document chunk(String id, String content, Double... embedding) {
+        Document document = new Document(id, content, Map.of("filename", "contract.pdf"));
+        document.setEmbedding(List.of(embedding));
+        return document;
+    }
+
+    @Test
+    public void testSearchSurvivesReopen() throws Exception {
+        EmbeddingClient embeddingClient = mock(EmbeddingClient.class);
+        when(embeddingClient.embed("rent")).thenReturn(List.of(1.0, 0.1, 0.0));
+
+        try (MappedVectorStore store = new MappedVectorStore(storeDir, embeddingClient, new VectorStoreOptions())) {
+            store.add(List.of(
+                    chunk("a", "Rent is due monthly", 1.0, 0.0, 0.0),
+                    chunk("b", "Termination clause", 0.0, 1.0, 0.0),
+                    chunk("c", "Security deposit", 0.0, 0.0, 1.0)));
+        }
+
+        try (MappedVectorStore store = new MappedVectorStore(storeDir, embeddingClient, new VectorStoreOptions())) {
+            assertEquals(3, store.size());
+            List<Document> results = store.similaritySearch(SearchRequest.query("rent").withTopK(2));
+            assertEquals(2, results.size());
+            assertEquals("a", results.get(0).getId());
+            assertEquals("Rent is due monthly", results.get(0).getContent());
+            assertEquals("contract.pdf", results.get(0).getMetadata().get("filename"));
+        }
+    }
+
+    @Test
+    public void testDeleteAndClear() throws Exception {
+        EmbeddingClient embeddingClient = mock(EmbeddingClient.class);
+        when(embeddingClient.embed("rent")).thenReturn(List.of(1.0, 0.0, 0.0));
+
+        try (MappedVectorStore store = new MappedVectorStore(storeDir, embeddingClient, new VectorStoreOptions())) {
+            store.add(List.of(
+                    chunk("a", "Rent is due monthly", 1.0, 0.0, 0.0),
+                    chunk("b", "Termination clause", 0.0, 1.0, 0.0)));
+
+            assertTrue(store.delete(List.of("a")).orElse(false));
+            List<Document> results = store.similaritySearch(SearchRequest.query("rent").withTopK(2));
+            assertEquals(List.of("b"), results.stream().map(Document::getId).toList());
+
+            store.clear();
+            assertEquals(0, store.size());
+            assertTrue(store.similaritySearch(SearchRequest.query("rent")).isEmpty());
+        }
+    }
+
+    private List<Document> randomChunks(int count, int dimensions) {
+        Random random = new Random(7);
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Double[] embedding = new Double[dimensions];
+            for (int d = 0; d < embedding.length; d++) {
+                embedding[d] = random.nextGaussian();
+            }
+            documents.add(chunk("doc-" + i, "chunk " + i, embedding));
+        }
+        return documents;
+    }
+
+    @Test
+    public void testGraphRecallAgainstExactScan() throws Exception {
+        try (MappedVectorStore store = new MappedVectorStore(storeDir, mock(EmbeddingClient.class),
+                new VectorStoreOptions())) {
+            store.add(randomChunks(500, 32));
+            Map<String, Object> report = store.measureRecall(50, 10, 100);
+            assertTrue((double) report.get("recall") > 0.9, "recall was " + report.get("recall"));
+        }
+    }
+
+    @Test
+    public void testQuantizedScanWithRerank() throws Exception {
+        VectorStoreOptions options = new VectorStoreOptions();
+        options.setIndex("flat");
+        options.setQuantization("int8");
+
+        try (MappedVectorStore store = new MappedVectorStore(storeDir, mock(EmbeddingClient.class), options)) {
+            store.add(randomChunks(500, 64));
+            Map<String, Object> report = store.measureRecall(50, 10, null);
+            assertTrue((double) report.get("recall") > 0.95, "recall was " + report.get("recall"));
+            assertTrue((long) store.stats().get("quantizedHeapBytes") > 0);
+        }
+    }
+
+    @Test
+    public void testKernelMatchesScalarLoop() {
+        VectorKernel scalar = new VectorKernel.Scalar();
+        Random random = new Random(3);
+        for (int dimensions : new int[] { 1, 7, 16, 33, 384 }) {
+            float[] query = new float[dimensions];
+            float[] vectors = new float[dimensions + 5];
+            byte[] codes = new byte[dimensions + 5];
+            for (int i = 0; i < dimensions; i++) {
+                query[i] = (float) random.nextGaussian();
+            }
+            for (int i = 0; i < vectors.length; i++) {
+                vectors[i] = (float) random.nextGaussian();
+                codes[i] = (byte) (random.nextInt(255) - 127);
+            }
+            assertEquals(scalar.dot(vectors, 5, query), VectorKernel.get().dot(vectors, 5, query), 1e-3);
+            assertEquals(scalar.dot(codes, 5, query), VectorKernel.get().dot(codes, 5, query), 1e-1);
+        }
+    }
+
+    @Test
+    public void testParallelScanMatchesSequentialScan() throws Exception {
+        EmbeddingClient embeddingClient = mock(EmbeddingClient.class);
+        List<Document> documents = randomChunks(2000, 24);
+        when(embeddingClient.embed("query")).thenReturn(documents.get(1234).getEmbedding());
+        VectorStoreOptions options = new VectorStoreOptions();
+        options.setIndex("flat");
+        options.setScanThreads(1);
+        List<String> sequential;
+        try (MappedVectorStore store = new MappedVectorStore(storeDir, embeddingClient, options)) {
+            store.add(documents);
+            store.delete(List.of("doc-7"));
+            sequential = store.similaritySearch(SearchRequest.query("query").withTopK(20)).stream()
+                    .map(Document::getId).toList();
+        }
+
+        options.setScanThreads(4);
+        options.setScanParallelThreshold(1);
+        try (MappedVectorStore store = new MappedVectorStore(storeDir, embeddingClient, options)) {
+            assertEquals(4, store.stats().get("scanThreads"));
+            assertEquals(sequential, store.similaritySearch(SearchRequest.query("query").withTopK(20)).stream()
+                    .map(Document::getId).toList());
+            assertEquals("doc-1234", sequential.get(0));
+        }
+    }
+
+    @Test
+    public void testBackgroundLoadServesSearchesWhileLoading() throws Exception {
+        VectorStoreOptions options = new VectorStoreOptions();
+        options.setCompactionIntervalSeconds(0);
+        List<Document> documents = randomChunks(500, 16);
+        try (MappedVectorStore store = new MappedVectorStore(storeDir, mock(EmbeddingClient.class), options)) {
+            store.add(documents);
+        }
+
+        options.setAsyncLoad(true);
+        options.setLoadWaitMillis(30_000);
+        List<Double> target = documents.get(120).getEmbedding();
+        Filter.Expression defaultNamespace = new Filter.Expression(Filter.ExpressionType.EQ,
+                new Filter.Key("namespace"), new Filter.Value(MappedVectorStore.DEFAULT_NAMESPACE));
+        try (MappedVectorStore store = new MappedVectorStore(storeDir, mock(EmbeddingClient.class), options)) {
+            // Answered right away, by an exact scan if the indexes are not there yet
+            assertEquals("doc-120", store.similaritySearch(target, 1, 0, null).get(0).getId());
+            // Needs the partition index, so waits for the load
+            assertEquals("doc-120", store.similaritySearch(target, 1, 0, defaultNamespace).get(0).getId());
+            assertTrue(store.isLoaded());
+            assertEquals("READY", store.loadStatus().get("status"));
+            assertEquals(500, store.stats().get("graphNodes"));
+        }
+    }
+
+    @Test
+    public void testCompactionMergesSegmentsAndSurvivesReopen() throws Exception {
+        EmbeddingClient embeddingClient = mock(EmbeddingClient.class);
+        VectorStoreOptions options = new VectorStoreOptions();
+        options.setCompactionIntervalSeconds(0);
+        List<Document> documents = randomChunks(300, 16);
+
+        try (MappedVectorStore store = new MappedVectorStore(storeDir, embeddingClient, options)) {
+            for (int i = 0; i < documents.size(); i += 30) {
+                store.add(documents.subList(i, i + 30));
+            }
+            assertEquals(10, store.stats().get("segments"));
+            assertTrue(store.delete(List.of("doc-42")).orElse(false));
+
+            assertTrue(store.compact());
+            assertEquals(1, store.stats().get("segments"));
+        }
+
+        List<Double> target = documents.get(120).getEmbedding();
+        when(embeddingClient.embed("target")).thenReturn(target);
+        when(embeddingClient.embed("deleted")).thenReturn(documents.get(42).getEmbedding());
+        try (MappedVectorStore store = new MappedVectorStore(storeDir, embeddingClient, options)) {
+            assertEquals(300, store.size());
+            assertEquals(1, store.stats().get("deleted"));
+            assertEquals("doc-120", store.similaritySearch(SearchRequest.query("target").withTopK(1)).get(0).getId());
+            assertTrue(store.similaritySearch(SearchRequest.query("deleted").withTopK(5)).stream()
+                    .noneMatch(document -> document.getId().equals("doc-42")));
+        }
+    }
+
+    private List<Document> documentChunks(String documentId, List<Document> chunks) {
+        return chunks.stream().map(chunk -> {
+            Document document = new Document(chunk.getId(), chunk.getContent(), Map.of("document_id", documentId));
+            document.setEmbedding(chunk.getEmbedding());
+            return document;
+        }).toList();
+    }
+
+    @Test
+    public void testDeleteDocumentRemovesAllItsChunks() throws Exception {
+        List<Document> chunks = List.of(
+                chunk("lease-1", "Rent is due monthly", 1.0, 0.0, 0.0),
+                chunk("lease-2", "Termination clause", 0.9, 0.1, 0.0),
+                chunk("lease-3", "Security deposit", 0.8, 0.2, 0.0),
+                chunk("invoice-1", "Invoice total", 0.7, 0.3, 0.0),
+                chunk("invoice-2", "Payment terms", 0.6, 0.4, 0.0));
+        try (MappedVectorStore store = new MappedVectorStore(storeDir, mock(EmbeddingClient.class),
+                new VectorStoreOptions())) {
+            store.add(documentChunks("lease", chunks.subList(0, 3)));
+            store.add(documentChunks("invoice", chunks.subList(3, 5)));
+
+            assertEquals(3, store.deleteDocument("lease"));
+            assertEquals(0, store.deleteDocument("lease"));
+            assertTrue(store.chunkIds("lease").isEmpty());
+            assertEquals(List.of("invoice-1", "invoice-2"), store.chunkIds("invoice").stream().sorted().toList());
+            assertEquals(3, store.stats().get("deleted"));
+            assertEquals(List.of("invoice-1", "invoice-2"), store.similaritySearch(List.of(1.0, 0.0, 0.0), 5, 0, null)
+                    .stream().map(Document::getId).toList());
+        }
+    }
+
+    @Test
+    public void testReclaimDropsDeletedChunksAndSurvivesReopen() throws Exception {
+        VectorStoreOptions options = new VectorStoreOptions();
+        options.setCompactionIntervalSeconds(0);
+        options.setCompactionReclaimRatio(0.5);
+        List<Document> chunks = randomChunks(200, 16);
+        List<Double> target = chunks.get(120).getEmbedding();
+
+        try (MappedVectorStore store = new MappedVectorStore(storeDir, mock(EmbeddingClient.class), options)) {
+            store.add(documentChunks("superseded", chunks.subList(0, 50)));
+            store.add(documentChunks("current", chunks.subList(50, 200)));
+            assertEquals(50, store.deleteDocument("superseded"));
+
+            // A quarter deleted is below the ratio; forcing reclaims anyway
+            assertFalse(store.reclaim(false));
+            assertTrue(store.reclaim(true));
+            assertFalse(store.reclaim(true));
+
+            assertEquals(150, store.size());
+            assertEquals(0, store.stats().get("deleted"));
+            assertEquals(1, store.stats().get("segments"));
+            assertEquals("doc-120", store.similaritySearch(target, 1, 0, null).get(0).getId());
+
+            // Ids resolve to the renumbered records
+            assertTrue(store.delete(List.of("doc-120")).orElse(false));
+            assertEquals("doc-121", store.similaritySearch(chunks.get(121).getEmbedding(), 1, 0, null).get(0).getId());
+        }
+
+        try (MappedVectorStore store = new MappedVectorStore(storeDir, mock(EmbeddingClient.class), options)) {
+            assertEquals(150, store.size());
+            assertEquals(149, store.chunkIds("current").size());
+            assertTrue(store.chunkIds("superseded").isEmpty());
+            assertTrue(store.similaritySearch(target, 5, 0, null).stream()
+                    .noneMatch(document -> document.getId().equals("doc-120")));
+        }
+    }
+}
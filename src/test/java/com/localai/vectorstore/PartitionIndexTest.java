@@ -0,0 +1,95 @@
+package com.localai.vectorstore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PartitionIndexTest {
+
+    private final PartitionIndex index = new PartitionIndex();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        String[] metadata = {
+                "{\"namespace\": \"finance\", \"document_id\": \"d1\"}",
+                "{\"namespace\": \"legal\", \"document_id\": \"d2\"}",
+                "{\"document_id\": \"d3\"}", // written before namespaces existed
+                "{\"namespace\": \"finance\", \"document_id\": \"d4\"}",
+                "{\"namespace\": \"legal\"}" };
+        for (int ordinal = 0; ordinal < metadata.length; ordinal++) {
+            index.add(ordinal, objectMapper.readTree(metadata[ordinal]));
+        }
+    }
+
+    private static Filter.Expression expression(Filter.ExpressionType type, String key, Object value) {
+        return new Filter.Expression(type, new Filter.Key(key), new Filter.Value(value));
+    }
+
+    private List<Integer> select(Filter.Operand filter, int size) {
+        OrdinalSet selected = index.select(filter, size);
+        List<Integer> ordinals = new ArrayList<>();
+        for (int run = 0; run < selected.runCount(); run++) {
+            for (int ordinal = selected.runStart(run); ordinal < selected.runEnd(run); ordinal++) {
+                ordinals.add(ordinal);
+            }
+        }
+        assertEquals(ordinals.size(), selected.cardinality());
+        return ordinals;
+    }
+
+    private List<Integer> select(Filter.Operand filter) {
+        return select(filter, 5);
+    }
+
+    @Test
+    public void testEqualAndNotEqual() {
+        assertEquals(List.of(0, 3), select(expression(Filter.ExpressionType.EQ, "namespace", "finance")));
+        assertEquals(List.of(2), select(expression(Filter.ExpressionType.EQ, "namespace", "default")));
+        assertEquals(List.of(1), select(expression(Filter.ExpressionType.EQ, "document_id", "d2")));
+        assertEquals(List.of(), select(expression(Filter.ExpressionType.EQ, "namespace", "health")));
+        // Ordinals at or past the size are not selected, nor are they by the complement
+        assertEquals(List.of(1), select(expression(Filter.ExpressionType.EQ, "namespace", "legal"), 3));
+        assertEquals(List.of(1, 2, 4), select(expression(Filter.ExpressionType.NE, "namespace", "finance")));
+        assertEquals(List.of(0, 2), select(expression(Filter.ExpressionType.NE, "namespace", "legal"), 3));
+    }
+
+    @Test
+    public void testInAndNotIn() {
+        assertEquals(List.of(1, 2, 4), select(expression(Filter.ExpressionType.IN, "namespace",
+                List.of("legal", "default"))));
+        assertEquals(List.of(0, 3), select(expression(Filter.ExpressionType.IN, "document_id",
+                List.of("d1", "d4", "d9"))));
+        // A chunk without a document id is outside every document
+        assertEquals(List.of(2, 3, 4), select(expression(Filter.ExpressionType.NIN, "document_id",
+                List.of("d1", "d2"))));
+    }
+
+    @Test
+    public void testNotAndCombinations() {
+        Filter.Expression legal = expression(Filter.ExpressionType.EQ, "namespace", "legal");
+        Filter.Expression finance = expression(Filter.ExpressionType.EQ, "namespace", "finance");
+        Filter.Expression d4 = expression(Filter.ExpressionType.EQ, "document_id", "d4");
+
+        assertEquals(List.of(0, 2, 3), select(new Filter.Expression(Filter.ExpressionType.NOT, legal)));
+        assertEquals(List.of(3), select(new Filter.Expression(Filter.ExpressionType.AND, finance, d4)));
+        assertEquals(List.of(0, 1, 3, 4), select(new Filter.Expression(Filter.ExpressionType.OR, finance, legal)));
+        assertEquals(List.of(1, 2, 4), select(new Filter.Expression(Filter.ExpressionType.NOT,
+                new Filter.Group(finance))));
+    }
+
+    @Test
+    public void testUnsupportedFiltersAreRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> select(expression(Filter.ExpressionType.EQ, "filename", "lease.pdf")));
+        assertThrows(IllegalArgumentException.class,
+                () -> select(expression(Filter.ExpressionType.GT, "namespace", "finance")));
+    }
+}